@@ -0,0 +1,123 @@
+package net.sargue.mailgun;
+
+import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import org.glassfish.jersey.message.internal.FormProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encoding of the request bodies, without any network involved.
+ * <p>
+ * {@code form} and {@code multipart} encode a freshly built body each time,
+ * as the first send of a mail does. {@code formVariant} encodes a variant
+ * of an already encoded prototype. {@code jerseyForm} is the generic Jersey
+ * provider on the same parameters, for comparison with {@code formEncoder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+    private static final OutputStream SINK = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private Configuration configuration;
+    private Parameters parameters;
+    private Parameters overlay;
+    private List<MultipartBody.Part> parts;
+    private FormBody prototype;
+    private Form form;
+    private FormProvider formProvider;
+
+    @Setup
+    public void setup() {
+        configuration = new Configuration("example.org", "key", "sender@example.org")
+            .addDefaultParameter("o:tracking", "yes")
+            .addDefaultParameter("h:Reply-To", "support@example.org");
+        parameters = new Parameters();
+        parameters.add("from", "Sender Name <sender@example.org>");
+        for (int i = 0; i < 10; i++)
+            parameters.add("to", "Recipient " + i + " <recipient" + i + "@example.org>");
+        parameters.add("subject", "Your invoice for March \u2014 100% paid");
+        parameters.add("text", text(2048));
+        parameters.add("html", "<p>" + text(4096) + "</p>");
+        overlay = new Parameters(1);
+        overlay.add("to", "Another <another@example.org>");
+
+        final byte[] attachment = text(65536).getBytes(UTF_8);
+        parts = Collections.singletonList(
+            new MultipartBody.Part("attachment", "invoice.txt", "text/plain",
+                                   () -> new ByteArrayInputStream(attachment)));
+
+        prototype = FormBody.build(configuration, parameters);
+        prototype.bytes();
+
+        form = new Form();
+        for (int i = 0; i < parameters.size(); i++)
+            form.param(parameters.name(i), parameters.value(i));
+        formProvider = new FormProvider();
+    }
+
+    @TearDown
+    public void tearDown() {
+        configuration.close();
+    }
+
+    @Benchmark
+    public byte[] form() {
+        return FormBody.build(configuration, parameters).bytes();
+    }
+
+    @Benchmark
+    public byte[] formVariant() {
+        return FormBody.variant(prototype, overlay).bytes();
+    }
+
+    @Benchmark
+    public void multipart() throws IOException {
+        MultipartBody.build(configuration, parameters, parts).encode(SINK);
+    }
+
+    @Benchmark
+    public long formEncoder() throws IOException {
+        FormEncoder encoder = new FormEncoder(SINK);
+        for (int i = 0; i < parameters.size(); i++)
+            encoder.parameter(parameters.name(i), parameters.value(i));
+        encoder.finish();
+        return encoder.size();
+    }
+
+    @Benchmark
+    public void jerseyForm() throws IOException {
+        formProvider.writeTo(form, Form.class, Form.class, null,
+                             MediaType.APPLICATION_FORM_URLENCODED_TYPE,
+                             new MultivaluedHashMap<>(), SINK);
+    }
+
+    private static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+            sb.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit. ");
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
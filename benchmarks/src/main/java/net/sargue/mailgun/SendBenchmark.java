@@ -0,0 +1,109 @@
+package net.sargue.mailgun;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * End to end sends against an in-process stub of the Mailgun API, which
+ * reads the whole request and answers right away. It measures the client
+ * overhead: request setup, encoding, the local round trip and the response
+ * handling.
+ * <p>
+ * Each send uses a new mail, so the body is encoded every time. The stub
+ * disables Nagle's algorithm, otherwise delayed acknowledgements dominate.
+ * Both connectors are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class SendBenchmark {
+    private static final byte[] RESPONSE =
+        "{\"id\":\"<20200101000000.1.ABCDEF@example.org>\",\"message\":\"Queued. Thank you.\"}"
+            .getBytes(UTF_8);
+
+    @Param({"jersey", "jdkhttp"})
+    public String connector;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private MailgunTransport transport;
+    private Configuration configuration;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v3", exchange -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read(buffer) >= 0) {
+                    // drain
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+        transport = new MailgunTransport(connector);
+        configuration = new Configuration(transport)
+            .domain("example.org")
+            .apiKey("key")
+            .from("sender@example.org")
+            .apiUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v3");
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int send() {
+        return mail().send().responseCode();
+    }
+
+    @Benchmark
+    public int sendAsync() {
+        final CompletableFuture<Response> done = new CompletableFuture<>();
+        mail().sendAsync(new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+        });
+        return done.join().responseCode();
+    }
+
+    private Mail mail() {
+        return Mail.using(configuration)
+                   .to("recipient@example.org")
+                   .subject("Benchmark")
+                   .text("Hello world!")
+                   .build();
+    }
+}
@@ -0,0 +1,125 @@
+package net.sargue.mailgun;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.InputStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup costs, each measured once on a fresh JVM: creating a
+ * configuration, the first send, and the first send after a
+ * {@link Configuration#warmUp()}. The {@code loadedClasses} counter is the
+ * number of classes loaded by the measured code, summed over all the forks
+ * like any JMH event counter. Both connectors are measured.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Classes {
+        private final ClassLoadingMXBean bean = ManagementFactory.getClassLoadingMXBean();
+        private long before;
+        public long loadedClasses;
+
+        void start() {
+            before = bean.getTotalLoadedClassCount();
+        }
+
+        void stop() {
+            loadedClasses = bean.getTotalLoadedClassCount() - before;
+        }
+    }
+
+    @Param({"jersey", "jdkhttp"})
+    public String connector;
+
+    private HttpServer server;
+    private String apiUrl;
+    private MailgunTransport warm;
+
+    @Setup
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v3", exchange -> {
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                while (in.read(buffer) >= 0) {
+                    // drain
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/v3";
+    }
+
+    @Setup(Level.Iteration)
+    public void warmUp(BenchmarkParams params) throws Exception {
+        if (params.getBenchmark().endsWith("firstSendAfterWarmUp")) {
+            warm = new MailgunTransport(connector);
+            configuration(warm).warmUp().get();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (warm != null)
+            warm.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public Configuration newConfiguration(Classes classes) {
+        classes.start();
+        Configuration configuration = configuration(new MailgunTransport(connector));
+        classes.stop();
+        return configuration;
+    }
+
+    @Benchmark
+    public int firstSend(Classes classes) {
+        classes.start();
+        MailgunTransport transport = new MailgunTransport(connector);
+        int code = send(configuration(transport));
+        classes.stop();
+        transport.close();
+        return code;
+    }
+
+    @Benchmark
+    public int firstSendAfterWarmUp(Classes classes) {
+        classes.start();
+        int code = send(configuration(warm));
+        classes.stop();
+        return code;
+    }
+
+    private Configuration configuration(MailgunTransport transport) {
+        return new Configuration(transport)
+            .domain("example.org")
+            .apiKey("key")
+            .from("sender@example.org")
+            .apiUrl(apiUrl);
+    }
+
+    private static int send(Configuration configuration) {
+        return Mail.using(configuration)
+                   .to("recipient@example.org")
+                   .subject("Startup")
+                   .text("Hello world!")
+                   .build()
+                   .send()
+                   .responseCode();
+    }
+}
@@ -0,0 +1,44 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link HtmlMinifier} on a rendered table. The
+ * {@code charsIn} and {@code charsSaved} counters give the saved ratio.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MinifyBenchmark {
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Chars {
+        public long charsIn;
+        public long charsSaved;
+    }
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        Builder builder = Body.builder(new Configuration()).h1("Invoices").table();
+        for (int i = 0; i < 200; i++)
+            builder.row(i, "Customer " + i, BigDecimal.valueOf(i * 1234L, 2));
+        html = builder.end().p("  Thank you   for\n\n   your business.  ").build().html();
+    }
+
+    @Benchmark
+    public String minify(Chars chars) {
+        String minified = HtmlMinifier.minify(html);
+        chars.charsIn += html.length();
+        chars.charsSaved += html.length() - minified.length();
+        return minified;
+    }
+}
@@ -0,0 +1,94 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering costs of the content {@link Builder}: whole tables, the XML
+ * escaper every text goes through and the converter lookup done per value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+    public static final class Invoice {
+        final int number;
+        final String customer;
+        final LocalDate date;
+        final BigDecimal amount;
+
+        Invoice(int number, String customer, LocalDate date, BigDecimal amount) {
+            this.number = number;
+            this.customer = customer;
+            this.date = date;
+            this.amount = amount;
+        }
+    }
+
+    @Param({"10", "1000"})
+    int rows;
+
+    private Configuration configuration;
+    private List<Invoice> invoices;
+    private Column<Invoice, ?>[] columns;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        configuration = new Configuration()
+            .registerConverter(Converters.date(FormatStyle.SHORT, Locale.US),
+                               LocalDate.class)
+            .registerConverter(Converters.currency(Locale.US), BigDecimal.class);
+        invoices = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++)
+            invoices.add(new Invoice(i,
+                                     "Customer <" + i + "> & Sons",
+                                     LocalDate.of(2020, 1, 1).plusDays(i),
+                                     BigDecimal.valueOf(i * 1234L, 2)));
+        columns = new Column[] {
+            Column.<Invoice, Integer>of("Number", invoice -> invoice.number),
+            Column.<Invoice, String>of("Customer", invoice -> invoice.customer),
+            Column.<Invoice, LocalDate>of("Date", invoice -> invoice.date),
+            Column.<Invoice, BigDecimal>of("Amount", invoice -> invoice.amount)
+        };
+    }
+
+    @Benchmark
+    public Body table() {
+        return Body.builder(configuration)
+                   .h1("Invoices")
+                   .table(invoices, columns)
+                   .build();
+    }
+
+    @Benchmark
+    public Body rows() {
+        Builder builder = Body.builder(configuration).h1("Invoices").table();
+        for (Invoice invoice : invoices)
+            builder.row(invoice.number, invoice.customer, invoice.date, invoice.amount);
+        return builder.end().build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String escape() {
+        return Util.escapeXml("Customer <42> & Sons");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public ContentConverter<BigDecimal> converter() {
+        return configuration.converter(BigDecimal.class);
+    }
+}
@@ -0,0 +1,810 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.content.ContentConverter;
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Holds the configuration parameters needed by the library. This is a mutable
+ * class.
+ * <p>
+ * Here you configure the Mailgun properties and credentials and some defaults
+ * like the {@code From} address for the emails, so you don't have to set it
+ * everytime.
+ * <p>
+ * This class is designed to be built once and used everywhere on your
+ * application unless you require different settings. Internally it has
+ * a single HTTP client for all associated requests, which can also be
+ * shared with other configurations, see {@link MailgunTransport}.
+ * <p>
+ * This class is thread safe.
+ * <p>
+ * Remember to close it when you don't need it anymore to free up resources.
+ */
+public class Configuration {
+    private String apiUrl = "https://api.mailgun.net/v3";
+    private String domain;
+    private String apiKey;
+    private volatile String authorization;
+    private int connectTimeout = 0;
+    private int readTimeout = 0;
+    private boolean minifyHtml = false;
+    private int spoolThreshold = 1024 * 1024;
+    private Map<String, List<String>> defaultParameters = new HashMap<>();
+    private final Map<String, EncodedDefault> encodedDefaults = new ConcurrentHashMap<>();
+
+    private final MailgunTransport transport;
+    private final boolean ownTransport;
+    private MailRequestCallbackFactory mailRequestCallbackFactory = null;
+    private MailSendFilter mailSendFilter = defaultFilter;
+    private MailMetrics mailMetrics = null;
+    private Executor ioExecutor = null;
+    private Executor callbackExecutor = null;
+    private MailLanes mailLanes = null;
+    private MailScheduler mailScheduler = null;
+    private volatile MailSendInterceptor[] interceptors = NO_INTERCEPTORS;
+    private final List<Converter<?>> converters =
+        Collections.synchronizedList(new ArrayList<>());
+    // the converter of each class looked up, cleared on every registration
+    private final Map<Class<?>, ContentConverter<?>> convertersByClass =
+        new ConcurrentHashMap<>();
+
+    private static final ContentConverter<Object> defaultConverter = Object::toString;
+
+    private static final MailSendFilter defaultFilter = mail -> true;
+
+    private static final MailSendInterceptor[] NO_INTERCEPTORS = {};
+
+    private static final class Converter<T> {
+        private final Class<T> classOfConverter;
+        private final ContentConverter<? super T> contentConverter;
+
+        Converter(Class<T> classOfConverter,
+                  ContentConverter<? super T> contentConverter)
+        {
+            this.classOfConverter = classOfConverter;
+            this.contentConverter = contentConverter;
+        }
+    }
+
+    private static final class EncodedDefault {
+        private final List<String> values;
+        private final byte[] bytes;
+
+        EncodedDefault(String name, List<String> values) {
+            this.values = new ArrayList<>(values);
+            this.bytes = FormEncoder.encode(name, this.values);
+        }
+    }
+
+    /**
+     * Constructs an empy configuration.
+     */
+    public Configuration() {
+        this(new MailgunTransport(), true);
+    }
+
+    /**
+     * Constructs an empty configuration sending through a shared transport.
+     * <p>
+     * Use it to send for many domains or accounts without a client for
+     * each one. Closing this configuration doesn't close the transport.
+     *
+     * @param transport the transport to use
+     */
+    public Configuration(MailgunTransport transport) {
+        this(Objects.requireNonNull(transport), false);
+    }
+
+    private Configuration(MailgunTransport transport, boolean ownTransport) {
+        this.transport = transport;
+        this.ownTransport = ownTransport;
+    }
+
+    /**
+     * Constructs a basic configuration with the provided parameters.
+     *
+     * @param domain the Mailgun domain
+     * @param apiKey the Mailgun api key
+     * @param from   the default From address
+     */
+    public Configuration(String domain, String apiKey, String from) {
+        this();
+        this.domain = domain;
+        this.apiKey = apiKey;
+        from(from);
+    }
+
+    /**
+     * Creates a copy of this configuration.
+     *
+     * @return a copy of this configuration
+     * @deprecated it's not clear what a 'copy' is so this method will be removed
+     */
+    @Deprecated
+    public Configuration copy() {
+        Configuration copy = ownTransport ? new Configuration() : new Configuration(transport);
+        copy.apiUrl = apiUrl;
+        copy.domain = domain;
+        copy.apiKey = apiKey;
+        copy.mailRequestCallbackFactory = mailRequestCallbackFactory;
+        copy.mailSendFilter = mailSendFilter;
+        copy.mailMetrics = mailMetrics;
+        copy.ioExecutor = ioExecutor;
+        copy.callbackExecutor = callbackExecutor;
+        copy.mailLanes = mailLanes;
+        copy.mailScheduler = mailScheduler;
+        copy.interceptors = interceptors;
+        copy.minifyHtml = minifyHtml;
+        copy.spoolThreshold = spoolThreshold;
+        for (Map.Entry<String, List<String>> entry : defaultParameters.entrySet())
+            copy.defaultParameters.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        copy.converters.addAll(converters);
+        return copy;
+    }
+
+    /**
+     * Sets de Mailgun domain for this configuration.
+     *
+     * @param domain the Mailgun domain
+     * @return this configuration
+     */
+    public Configuration domain(String domain) {
+        this.domain = domain;
+        return this;
+    }
+
+    /**
+     * Sets the Mailgun api key for this configuration.
+     *
+     * @param apiKey the Mailgun api key
+     * @return this configuration
+     */
+    public Configuration apiKey(String apiKey) {
+        this.apiKey = apiKey;
+        authorization = null;
+        return this;
+    }
+
+    /**
+     * Sets the default sender address for messages that do not specify a
+     * {@code From} address themselves.
+     * <p>
+     * The address can be a simple email address ({@code doc@delorean.com}) or
+     * a full address with a name ({@code Emmet Brown <doc@delorean.com>}).
+     * The latter form can also be achieved using the
+     * {@link #from(String, String)} method.
+     * <p>
+     * Note that this value is treated as a single value as opposed to the
+     * general default parameters stored in this configuration.
+     *
+     * @param from the default sender address
+     * @return this configuration
+     */
+    public Configuration from(String from) {
+        List<String> values = new ArrayList<>(1);
+        values.add(from);
+        defaultParameters.put("from", values);
+        return this;
+    }
+
+    /**
+     * Sets the default sender address for messages that do not specify a
+     * {@code From} address themselves.
+     *
+     * @param name  the default sender name
+     * @param email the default sender email address
+     * @return this configuration
+     */
+    public Configuration from(String name, String email) {
+        return from(MailBuilder.email(name, email));
+    }
+
+    /**
+     * Sets the mailgun API endpoint. If not set defaults to the latest public
+     * one. This override is useful for mock testing.
+     *
+     * @param apiUrl    the mailgun API URL
+     * @return this configuration
+     */
+    public Configuration apiUrl(String apiUrl) {
+        this.apiUrl = apiUrl;
+        return this;
+    }
+
+    /**
+     * Connect timeout interval, in milliseconds.
+     * <p>
+     * A value of zero (0) is equivalent to an interval of infinity.
+     * </p>
+     * <p>
+     * The default value is infinity (0).
+     * </p>
+     *
+     * @param connectTimeout connect timeout interval, in milliseconds
+     * @return this configuration
+     */
+    public Configuration connectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Read timeout interval, in milliseconds.
+     * <p>
+     * A value of zero (0) is equivalent to an interval of infinity.
+     * </p>
+     * <p>
+     * The default value is infinity (0).
+     * </p>
+     *
+     * @param readTimeout the read timeout interval, in milliseconds
+     * @return this configuration
+     */
+    public Configuration readTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Enables or disables the minification of the HTML content of the
+     * messages. See {@link net.sargue.mailgun.content.HtmlMinifier} for
+     * the details.
+     * <p>
+     * It applies to the HTML set using {@link MailBuilder#html(String)} and
+     * to the output of the content {@link net.sargue.mailgun.content.Builder}.
+     * <p>
+     * The default value is false.
+     *
+     * @param minifyHtml true to minify the HTML content
+     * @return this configuration
+     */
+    public Configuration minifyHtml(boolean minifyHtml) {
+        this.minifyHtml = minifyHtml;
+        return this;
+    }
+
+    /**
+     * Sets the size beyond which stream attachments are spooled to disk.
+     * <p>
+     * Streams can be read only once, so the first time a mail is sent the
+     * content of its stream attachments is copied. That way the mail can
+     * be sent again, for instance on a retry, without rebuilding it. The
+     * copy is kept in memory, along with the whole encoded request, while
+     * the attachment is smaller than this threshold. Bigger ones are
+     * copied to a temporary file and streamed from there on every send.
+     * <p>
+     * The default value is 1 MiB.
+     *
+     * @param spoolThreshold the threshold, in bytes
+     * @return this configuration
+     */
+    public Configuration spoolThreshold(int spoolThreshold) {
+        this.spoolThreshold = spoolThreshold;
+        return this;
+    }
+
+    /**
+     * Adds a new value to the specified default parameter.
+     * <p>
+     * This is only used if the parameter is not specified when building
+     * the specific mail. Default parameters are resolved when the mail is
+     * built, so later changes don't affect mails already built.
+     * <p>
+     * Please note that parameters are multivalued. This method adds a new
+     * value. To set a new value you need to clear the default parameter first.
+     *
+     * @param name the name of the parameter
+     * @param value the new value to add to the parameter
+     * @return this configuration
+     * @see #clearDefaultParameter(String)
+     */
+    public Configuration addDefaultParameter(String name, String value) {
+        defaultParameters.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+        return this;
+    }
+
+    /**
+     * Removes all the values of the specified default parameter.
+     *
+     * @param name the name of the parameter
+     * @return this configuration
+     */
+    public Configuration clearDefaultParameter(String name) {
+        defaultParameters.remove(name);
+        return this;
+    }
+
+    /**
+     * Registers a {@link MailRequestCallbackFactory} to use when sending the
+     * message asynchronously without specifying a callback. See
+     * {@link Mail#sendAsync()}
+     *
+     * @param factory a factory for creating default request callbacks
+     * @return this configuration
+     */
+    public Configuration registerMailRequestCallbackFactory(MailRequestCallbackFactory factory) {
+        mailRequestCallbackFactory = factory;
+        return this;
+    }
+
+    /**
+     * Removes the default request callback, if any.
+     *
+     * @return this configuration
+     */
+    public Configuration unregisterMailRequestCallbackFactory() {
+        mailRequestCallbackFactory = null;
+        return this;
+    }
+
+    /**
+     * Registers a filter to decide if a mail should be sent or not.
+     * <p>
+     * This filter acts upon invokation of the different send methods in the
+     * {@link Mail} class preventing the actual request to Mailgun if the
+     * filter returns false.
+     *
+     * @param mailSendFilter the filter to apply to all messages
+     * @return this configuration
+     */
+    public Configuration registerMailSendFilter(MailSendFilter mailSendFilter) {
+        this.mailSendFilter = mailSendFilter;
+        return this;
+    }
+
+    /**
+     * Registers a listener for the timings and outcomes of the mails built
+     * and sent with this configuration.
+     * <p>
+     * There is none by default, and then nothing is measured.
+     *
+     * @param mailMetrics the listener, see {@link MailMetricsRecorder}
+     * @return this configuration
+     */
+    public Configuration registerMailMetrics(MailMetrics mailMetrics) {
+        this.mailMetrics = mailMetrics;
+        return this;
+    }
+
+    /**
+     * Removes the metrics listener, if any.
+     *
+     * @return this configuration
+     */
+    public Configuration unregisterMailMetrics() {
+        mailMetrics = null;
+        return this;
+    }
+
+    /**
+     * Sets the executor making the requests of the asynchronous sends.
+     * <p>
+     * By default they are made by the connector on its own threads, which
+     * with Jersey are unbounded. With an executor, like a
+     * {@link MailExecutor}, the pending sends are bounded by its queue. When
+     * it rejects a send the callback fails with the
+     * {@link java.util.concurrent.RejectedExecutionException} on the
+     * calling thread.
+     * <p>
+     * The executor is not closed with this configuration.
+     *
+     * @param executor the executor for the requests, or null to use the
+     *                 threads of the connector
+     * @return this configuration
+     */
+    public Configuration ioExecutor(Executor executor) {
+        this.ioExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the executor running the {@link MailRequestCallback callbacks} of
+     * the asynchronous sends.
+     * <p>
+     * By default callbacks run on the thread which made the request, so a
+     * slow callback, like one writing to a database, holds it and delays
+     * other sends. With an executor the request thread reads the response
+     * and hands it over. A callback the executor rejects runs on the
+     * request thread anyway, it is never lost.
+     * <p>
+     * The executor is not closed with this configuration.
+     *
+     * @param executor the executor for the callbacks, or null to run them
+     *                 on the request threads
+     * @return this configuration
+     */
+    public Configuration callbackExecutor(Executor executor) {
+        this.callbackExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Sets the priority lanes of the sends, so the mails of some lanes keep
+     * a low latency while others use whatever is left.
+     * <p>
+     * Both the blocking and the asynchronous sends wait their turn on the
+     * lanes, and the requests of the asynchronous ones are made on the
+     * threads of the lanes instead of the io executor. The same lanes can
+     * be shared among configurations to bound the requests of all of them.
+     * <p>
+     * The lanes are not closed with this configuration.
+     *
+     * @param lanes the lanes, or null to send right away
+     * @return this configuration
+     */
+    public Configuration mailLanes(MailLanes lanes) {
+        this.mailLanes = lanes;
+        return this;
+    }
+
+    /**
+     * Sets the scheduler of the mails sent with
+     * {@link Mail#sendAt(java.time.Instant)}.
+     * <p>
+     * The scheduler is not closed with this configuration.
+     *
+     * @param scheduler the scheduler, or null to disable scheduled sends
+     * @return this configuration
+     */
+    public Configuration mailScheduler(MailScheduler scheduler) {
+        this.mailScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Adds an interceptor at the end of the chain run around every send.
+     * See {@link MailSendInterceptor} for the order of the hooks.
+     *
+     * @param interceptor the interceptor to add
+     * @return this configuration
+     */
+    public synchronized Configuration addMailSendInterceptor(MailSendInterceptor interceptor) {
+        Objects.requireNonNull(interceptor);
+        MailSendInterceptor[] chain = Arrays.copyOf(interceptors, interceptors.length + 1);
+        chain[interceptors.length] = interceptor;
+        interceptors = chain;
+        return this;
+    }
+
+    /**
+     * Removes an interceptor from the chain, if present.
+     *
+     * @param interceptor the interceptor to remove
+     * @return this configuration
+     */
+    public synchronized Configuration removeMailSendInterceptor(MailSendInterceptor interceptor) {
+        List<MailSendInterceptor> chain = new ArrayList<>(Arrays.asList(interceptors));
+        if (chain.remove(interceptor))
+            interceptors = chain.toArray(NO_INTERCEPTORS);
+        return this;
+    }
+
+    /**
+     * Returns the configured Mailgun domain.
+     *
+     * @return the configured Mailgun domain
+     */
+    public String domain() {
+        return domain;
+    }
+
+    /**
+     * Returns the configured Mailgun api key.
+     *
+     * @return the configured Mailgun api key
+     */
+    public String apiKey() {
+        return apiKey;
+    }
+
+    /**
+     * Returns the configured default sender address.
+     *
+     * @return the configured default sender address
+     */
+    public String from() {
+        List<String> values = defaultParameters.get("from");
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Returns the configured mailgun API URL endpoint.
+     *
+     * @return the configured mailgun API URL endpoint.
+     */
+    public String apiUrl() {
+        return apiUrl;
+    }
+
+    /**
+     * Returns the configured connect timeout.
+     *
+     * @return the configured connect timeout, in milliseconds
+     */
+    public int connectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Returns the configured read timeout.
+     *
+     * @return the configured read timeout, in milliseconds
+     */
+    public int readTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Tells if the HTML content of the messages is minified.
+     *
+     * @return true if the HTML content is minified
+     */
+    public boolean minifyHtml() {
+        return minifyHtml;
+    }
+
+    /**
+     * Returns the size beyond which stream attachments are spooled to disk.
+     *
+     * @return the spool threshold, in bytes
+     */
+    public int spoolThreshold() {
+        return spoolThreshold;
+    }
+
+    /**
+     * Returns the internal map of default parameters.
+     * <p>
+     * This is not a copy. Changes to this map are persistent.
+     *
+     * @return the internal map of default parameters
+     */
+    public Map<String, List<String>> defaultParameters() {
+        return defaultParameters;
+    }
+
+    /**
+     * Returns the configured default request callback factory.
+     *
+     * @return the configured default request callback factory
+     *         or null if there is none configured
+     */
+    public MailRequestCallbackFactory mailRequestCallbackFactory() {
+        return mailRequestCallbackFactory;
+    }
+
+    /**
+     * Returns the registered metrics listener.
+     *
+     * @return the registered metrics listener or null if there is none
+     */
+    public MailMetrics mailMetrics() {
+        return mailMetrics;
+    }
+
+    /**
+     * Returns the executor for the requests of the asynchronous sends.
+     *
+     * @return the executor or null if the connector threads are used
+     */
+    public Executor ioExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Returns the executor for the callbacks of the asynchronous sends.
+     *
+     * @return the executor or null if callbacks run on the request threads
+     */
+    public Executor callbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Returns the priority lanes of the sends.
+     *
+     * @return the lanes or null if mails are sent right away
+     */
+    public MailLanes mailLanes() {
+        return mailLanes;
+    }
+
+    /**
+     * Returns the scheduler of the mails sent at a given time.
+     *
+     * @return the scheduler or null if there is none
+     */
+    public MailScheduler mailScheduler() {
+        return mailScheduler;
+    }
+
+    /**
+     * Returns the registered interceptors, in order.
+     *
+     * @return an unmodifiable list of the registered interceptors
+     */
+    public List<MailSendInterceptor> mailSendInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    /**
+     * Retrieves this configuration's filter.
+     *
+     * @return this configuration's filter
+     */
+    public MailSendFilter mailSendFilter() {
+        return mailSendFilter;
+    }
+
+    /**
+     * Registers a converter.
+     * <p>
+     * Converters are used mainly by the
+     * {@link net.sargue.mailgun.content.Builder#text(Object)} method.
+     * <p>
+     * They are matched in declaration order checking for assignability
+     * (inheritance). So you can have a {@link java.util.Date} converter
+     * which will be applied to a {@link java.sql.Timestamp} object. You will
+     * want to register the more specific converters first.
+     *
+     * @param <T>            the type parameter
+     * @param converter      the converter
+     * @param classToConvert the class to convert
+     * @return the configuration
+     */
+    public <T> Configuration registerConverter(ContentConverter<? super T> converter,
+                                               Class<T> classToConvert)
+    {
+        synchronized (converters) {
+            converters.add(new Converter<>(classToConvert, converter));
+            convertersByClass.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the converter that would be used to convert the given class to
+     * a String.
+     * <p>
+     * The converters are matched in registered order checking for assignability
+     * (inheritance). If no converter is found the default converter
+     * ({@link Object#toString()} is returned.
+     *
+     * @param classToConvert the class of the object to convert
+     * @param <T> the type of the class
+     * @return the converter that would be used to process objects of the given
+     *         class
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ContentConverter<T> converter(Class<T> classToConvert) {
+        ContentConverter<?> found = convertersByClass.get(classToConvert);
+        if (found == null) {
+            // locked with the registrations, not to cache a stale one
+            synchronized (converters) {
+                found = defaultConverter;
+                for (Converter<?> converter : converters) {
+                    if (converter.classOfConverter.isAssignableFrom(classToConvert)) {
+                        found = converter.contentConverter;
+                        break;
+                    }
+                }
+                convertersByClass.put(classToConvert, found);
+            }
+        }
+        return (ContentConverter<T>) found;
+    }
+
+    /**
+     * Tells if there is a registered converter that would be used to convert
+     * the given class, as opposed to the default one.
+     *
+     * @param classToConvert the class of the object to convert
+     * @return true if a registered converter matches the given class
+     * @see #converter(Class)
+     */
+    public boolean hasConverter(Class<?> classToConvert) {
+        return converter(classToConvert) != defaultConverter;
+    }
+
+    /**
+     * Prepares the transport in the background, so the first send doesn't
+     * pay for it.
+     * <p>
+     * The JAX-RS client is created on the first send otherwise. This
+     * creates it on a background thread and makes a request to the API URL,
+     * which initializes the client runtime and leaves a connection open for
+     * the sends to reuse. Sends don't wait for it to finish, although a send
+     * started while the client is being created waits for that part.
+     * <p>
+     * The returned future completes when done. It completes exceptionally
+     * if the request fails, the service can't be reached for example, but
+     * the transport can be used anyway.
+     *
+     * @return a future completed when the transport is ready
+     */
+    public CompletableFuture<Void> warmUp() {
+        return transport.warmUp(apiUrl);
+    }
+
+    /**
+     * Closes configuration and associated resources. Mainly the HTTP client.
+     * <p>
+     * Don't use this configuration after closing it. A shared
+     * {@link MailgunTransport} is not closed.
+     */
+    public void close() {
+        if (ownTransport)
+            transport.close();
+    }
+
+    private String authorization() {
+        String value = authorization;
+        if (value == null) {
+            String credentials = "api:" + apiKey;
+            value = "Basic " + Base64.getEncoder()
+                                     .encodeToString(credentials.getBytes(ISO_8859_1));
+            authorization = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the form encoded values of a default parameter. They are
+     * cached, checking that the values didn't change since
+     * {@link #defaultParameters()} gives access to the live map.
+     */
+    byte[] encodedDefault(String name, List<String> values) {
+        EncodedDefault encoded = encodedDefaults.get(name);
+        if (encoded == null || !encoded.values.equals(values)) {
+            encoded = new EncodedDefault(name, values);
+            encodedDefaults.put(name, encoded);
+        }
+        return encoded.bytes;
+    }
+
+    /**
+     * Returns the interceptor chain without copying it. The array is
+     * replaced, never modified, when the chain changes.
+     */
+    MailSendInterceptor[] interceptors() {
+        return interceptors;
+    }
+
+    /**
+     * Returns the connector of the transport, creating it if needed.
+     */
+    HttpConnector connector() {
+        return transport.connector();
+    }
+
+    /**
+     * Creates a request to a resource of the configured domain. The
+     * credentials and the timeouts go on the request, so the connector can
+     * be shared.
+     */
+    HttpRequest request(String resource, RequestBody body) {
+        StringBuilder url = new StringBuilder(apiUrl.length() + domain.length()
+                                              + resource.length() + 2);
+        url.append(apiUrl);
+        if (url.charAt(url.length() - 1) != '/')
+            url.append('/');
+        url.append(domain).append('/').append(resource);
+        return new MailgunRequest(url.toString(), authorization(),
+                                  connectTimeout, readTimeout, body);
+    }
+}
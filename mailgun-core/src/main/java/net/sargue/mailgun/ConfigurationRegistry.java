@@ -0,0 +1,148 @@
+package net.sargue.mailgun;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of configurations by key, usually one per customer domain, which
+ * evicts the ones not used for a while.
+ * <p>
+ * Configurations are created on first use by the given factory. To keep
+ * them light the factory should build them on a shared
+ * {@link MailgunTransport}, for example:
+ * <pre>{@code
+ * MailgunTransport transport = new MailgunTransport();
+ * ConfigurationRegistry registry = new ConfigurationRegistry(
+ *     domain -> new Configuration(transport)
+ *                   .domain(domain)
+ *                   .apiKey(keys.get(domain))
+ *                   .from("Notifications", "noreply@" + domain),
+ *     30, TimeUnit.MINUTES);
+ *
+ * Mail.using(registry.get("example.com"))
+ *     ...
+ * }</pre>
+ * Idle configurations are evicted and closed while looking up others, or
+ * when calling {@link #evictIdle()}. A configuration being used when it is
+ * evicted can still finish its sends, as closing it leaves the shared
+ * transport open, and the next lookup creates a new one. Lookups and
+ * evictions of a key are atomic, so a lookup never returns a configuration
+ * already evicted.
+ * <p>
+ * This class is thread safe.
+ */
+public final class ConfigurationRegistry implements AutoCloseable {
+    private static final class Entry {
+        final Configuration configuration;
+        volatile long lastUsed;
+
+        Entry(Configuration configuration, long now) {
+            this.configuration = configuration;
+            this.lastUsed = now;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Function<String, Configuration> factory;
+    private final long idleNanos;
+    private final LongSupplier nanoTime;
+    private volatile long nextSweep;
+
+    /**
+     * Creates a registry.
+     *
+     * @param factory     creates the configuration for a key
+     * @param idleTimeout how long a configuration can stay unused before
+     *                    being evicted
+     * @param unit        the unit of the idle timeout
+     */
+    public ConfigurationRegistry(Function<String, Configuration> factory,
+                                 long idleTimeout, TimeUnit unit)
+    {
+        this(factory, idleTimeout, unit, System::nanoTime);
+    }
+
+    /**
+     * Creates a registry on the given clock, for the tests.
+     */
+    ConfigurationRegistry(Function<String, Configuration> factory,
+                          long idleTimeout, TimeUnit unit, LongSupplier nanoTime)
+    {
+        this.factory = Objects.requireNonNull(factory);
+        if (idleTimeout <= 0)
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        this.idleNanos = unit.toNanos(idleTimeout);
+        this.nanoTime = nanoTime;
+        this.nextSweep = nanoTime.getAsLong() + idleNanos;
+    }
+
+    /**
+     * Returns the configuration for a key, creating it if needed.
+     *
+     * @param key the key, the domain for example
+     * @return the configuration for the key
+     */
+    public Configuration get(String key) {
+        long now = nanoTime.getAsLong();
+        if (now - nextSweep >= 0)
+            evictIdle(now);
+        // touched within the lock of the key, so it can't be evicted meanwhile
+        return entries.compute(key, (k, entry) -> {
+            if (entry == null)
+                return new Entry(factory.apply(k), now);
+            entry.lastUsed = now;
+            return entry;
+        }).configuration;
+    }
+
+    /**
+     * Returns the number of configurations cached.
+     *
+     * @return the number of configurations cached
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts and closes the configurations not used within the idle timeout.
+     */
+    public void evictIdle() {
+        evictIdle(nanoTime.getAsLong());
+    }
+
+    private void evictIdle(long now) {
+        nextSweep = now + idleNanos / 2;
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            if (now - mapEntry.getValue().lastUsed < idleNanos)
+                continue;
+            // checked again within the lock of the key, it may be in use now
+            Entry[] evicted = new Entry[1];
+            entries.computeIfPresent(mapEntry.getKey(), (key, entry) -> {
+                if (now - entry.lastUsed < idleNanos)
+                    return entry;
+                evicted[0] = entry;
+                return null;
+            });
+            if (evicted[0] != null)
+                evicted[0].configuration.close();
+        }
+    }
+
+    /**
+     * Closes all the cached configurations and empties the registry. The
+     * shared transport, if any, is not closed.
+     */
+    @Override
+    public void close() {
+        for (String key : entries.keySet()) {
+            Entry entry = entries.remove(key);
+            if (entry != null)
+                entry.configuration.close();
+        }
+    }
+}
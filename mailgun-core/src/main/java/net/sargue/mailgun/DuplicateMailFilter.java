@@ -0,0 +1,358 @@
+package net.sargue.mailgun;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * A {@link MailSendFilter} that stops the same mail from being sent twice
+ * within a time window, for example when upstream events are replayed.
+ * It is also a {@link MailSendInterceptor}: a mail is remembered once the
+ * service accepts it, so a mail sent again after a failure is not taken as
+ * a repeat. It must be registered as both, see
+ * {@link #register(Configuration)}, otherwise it stops nothing.
+ * <p>
+ * Mails are the same when they have the same recipients ({@code to},
+ * {@code cc} and {@code bcc}), subject, template and variables
+ * ({@code h:X-Mailgun-Variables}, {@code t:variables}, every {@code v:}
+ * parameter and {@code recipient-variables}). The text and the attachments
+ * are not compared, so two mails differing only on those are the same
+ * mail.
+ * <p>
+ * The mails seen are remembered on two rotating Bloom filters, which take
+ * a fixed amount of memory whatever the traffic. New mails are added to the
+ * current filter and, at the end of every window, the previous filter is
+ * cleared and becomes the current one. So a repeat is stopped if it comes
+ * within the window, and maybe up to another window later. Being
+ * probabilistic, a few new mails are taken as repeats, at the given rate
+ * when the expected number of mails is not exceeded. An exact
+ * check, like a lookup of the {@link #fingerprint(Mail) fingerprints}
+ * stored with the sent mails, can confirm the repeats:
+ * <pre>{@code
+ * DuplicateMailFilter duplicates =
+ *     new DuplicateMailFilter(1, TimeUnit.HOURS, 5_000_000, 0.0001);
+ * duplicates.exactCheck(mail -> sentMails.contains(duplicates.fingerprint(mail)));
+ * duplicates.register(configuration);
+ * }</pre>
+ * As mails are remembered when sent, not when filtered, a repeat sent
+ * while the first mail is still on its way is not stopped.
+ * A configuration has one filter, to combine it with another one register
+ * {@code mail -> other.filter(mail) && duplicates.filter(mail)}.
+ * <p>
+ * This class is thread safe.
+ */
+public final class DuplicateMailFilter implements MailSendFilter, MailSendInterceptor {
+    private static final int FILTERS = 2;
+
+    private static final String[] FIELDS = {
+        "to", "cc", "bcc", "subject", "template", "h:X-Mailgun-Variables", "t:variables",
+        "recipient-variables"
+    };
+
+    private final long windowNanos;
+    private final long[][] bits = new long[FILTERS][];
+    private final long[] bitsSet = new long[FILTERS];
+    private final int bitCount;
+    private final int hashes;
+    private final LongSupplier nanoTime;
+    private final long start;
+    private Predicate<Mail> exactCheck;
+    private long generation;
+    private long checked;
+    private long suppressed;
+    private long falsePositives;
+
+    /**
+     * Creates a filter.
+     *
+     * @param window            how long a mail is remembered
+     * @param unit              the unit of the window
+     * @param expectedPerWindow the number of mails expected within a window
+     * @param falsePositiveRate the rate of new mails taken as repeats
+     *                          when the expected number is not exceeded
+     */
+    public DuplicateMailFilter(long window, TimeUnit unit, long expectedPerWindow,
+                               double falsePositiveRate)
+    {
+        this(window, unit, expectedPerWindow, falsePositiveRate, System::nanoTime);
+    }
+
+    /**
+     * Creates a filter on the given clock, for the tests.
+     */
+    DuplicateMailFilter(long window, TimeUnit unit, long expectedPerWindow,
+                        double falsePositiveRate, LongSupplier nanoTime)
+    {
+        if (window <= 0 || expectedPerWindow <= 0
+            || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException(
+                "window and expectedPerWindow must be positive and falsePositiveRate within (0, 1)");
+        windowNanos = unit.toNanos(window);
+        this.nanoTime = nanoTime;
+        start = nanoTime.getAsLong();
+        // a mail is looked up on both filters, so their rates add up
+        double n = expectedPerWindow;
+        double p = falsePositiveRate / FILTERS;
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        if (m > Integer.MAX_VALUE - 63)
+            throw new IllegalArgumentException("Too many mails per window");
+        bitCount = (int) ((m + 63) & ~63L);
+        hashes = Math.max(1, (int) Math.round(bitCount / n * Math.log(2)));
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = new long[bitCount / 64];
+    }
+
+    /**
+     * Sets a check to confirm a mail taken as a repeat was really sent.
+     * It is only called for those mails, so it can be slower than the
+     * filter itself.
+     *
+     * @param check tells if the mail was sent before
+     * @return this filter
+     */
+    public synchronized DuplicateMailFilter exactCheck(Predicate<Mail> check) {
+        this.exactCheck = check;
+        return this;
+    }
+
+    /**
+     * Registers this filter on a configuration, as its send filter and as
+     * an interceptor.
+     *
+     * @param configuration the configuration
+     * @return this filter
+     */
+    public DuplicateMailFilter register(Configuration configuration) {
+        configuration.registerMailSendFilter(this).addMailSendInterceptor(this);
+        return this;
+    }
+
+    /**
+     * Tells if a mail is new, not sent within the window.
+     *
+     * @param mail the mail to send
+     * @return false if it is a repeat
+     */
+    @Override
+    public boolean filter(Mail mail) {
+        long[] hash = hash(mail);
+        Predicate<Mail> check;
+        synchronized (this) {
+            rotate();
+            checked++;
+            if (!contains(hash[0], hash[1]))
+                return true;
+            check = exactCheck;
+            if (check == null) {
+                suppressed++;
+                return false;
+            }
+        }
+        boolean repeated = check.test(mail);
+        synchronized (this) {
+            if (repeated) {
+                suppressed++;
+                return false;
+            }
+            falsePositives++;
+            return true;
+        }
+    }
+
+    /**
+     * Remembers a mail accepted by the service.
+     *
+     * @param mail     the mail sent
+     * @param response the response of the service
+     */
+    @Override
+    public void completed(Mail mail, Response response) {
+        if (!response.isOk())
+            return;
+        long[] hash = hash(mail);
+        synchronized (this) {
+            rotate();
+            add(hash[0], hash[1]);
+        }
+    }
+
+    /**
+     * Returns the fingerprint of a mail, the same for mails this filter
+     * takes as the same.
+     *
+     * @param mail the mail
+     * @return 32 hexadecimal digits
+     */
+    public String fingerprint(Mail mail) {
+        long[] hash = hash(mail);
+        return String.format("%016x%016x", hash[0], hash[1]);
+    }
+
+    /**
+     * Returns the number of mails filtered.
+     *
+     * @return the number of mails filtered
+     */
+    public synchronized long checked() {
+        return checked;
+    }
+
+    /**
+     * Returns the number of mails stopped as repeats.
+     *
+     * @return the number of mails not sent
+     */
+    public synchronized long suppressed() {
+        return suppressed;
+    }
+
+    /**
+     * Returns the number of mails taken as repeats that the exact check
+     * found new, and were sent.
+     *
+     * @return the number of false positives caught
+     */
+    public synchronized long falsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * Estimates the rate of new mails that would be taken as repeats now,
+     * from how full the filters are. It grows above the configured rate
+     * when there are more mails than expected.
+     *
+     * @return the estimated false positive rate
+     */
+    public synchronized double falsePositiveRate() {
+        rotate();
+        double negative = 1;
+        for (long set : bitsSet)
+            negative *= 1 - Math.pow((double) set / bitCount, hashes);
+        return 1 - negative;
+    }
+
+    /**
+     * Returns the memory taken by the filters, which doesn't change.
+     *
+     * @return the size of the filters in bytes
+     */
+    public long memoryBytes() {
+        return (long) bits.length * bitCount / 8;
+    }
+
+    /**
+     * Clears the previous filter at the start of every window, both if
+     * more than one window passed.
+     */
+    private void rotate() {
+        long current = (nanoTime.getAsLong() - start) / windowNanos;
+        for (long g = Math.max(generation + 1, current - FILTERS + 1); g <= current; g++) {
+            int index = (int) (g % bits.length);
+            Arrays.fill(bits[index], 0);
+            bitsSet[index] = 0;
+        }
+        generation = Math.max(generation, current);
+    }
+
+    private boolean contains(long h1, long h2) {
+        for (long[] filter : bits) {
+            if (contains(filter, h1, h2))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean contains(long[] filter, long h1, long h2) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void add(long h1, long h2) {
+        int current = (int) (generation % bits.length);
+        long[] filter = bits[current];
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1, h2, i);
+            long mask = 1L << bit;
+            if ((filter[bit >>> 6] & mask) == 0) {
+                filter[bit >>> 6] |= mask;
+                bitsSet[current]++;
+            }
+        }
+    }
+
+    /**
+     * Picks the bits of a mail by double hashing.
+     */
+    private int index(long h1, long h2, int i) {
+        return (int) (((h1 + i * h2) & Long.MAX_VALUE) % bitCount);
+    }
+
+    /**
+     * Hashes the compared fields with two different 64 bit hashes, FNV-1a
+     * and a rotate, xor and multiply one, each with a final mix.
+     */
+    private static long[] hash(Mail mail) {
+        long[] hash = { 0xcbf29ce484222325L, 0x84222325cbf29ce4L };
+        for (String field : FIELDS)
+            field(hash, field, mail.getValues(field));
+        // the custom variables, by name as their order doesn't matter
+        Parameters parameters = mail.body().parameters();
+        TreeMap<String, List<String>> variables = null;
+        for (int i = 0; i < parameters.size(); i++) {
+            String name = parameters.name(i);
+            if (name.startsWith("v:")) {
+                if (variables == null)
+                    variables = new TreeMap<>();
+                variables.computeIfAbsent(name, n -> new ArrayList<>(1))
+                         .add(parameters.value(i));
+            }
+        }
+        if (variables != null) {
+            for (Map.Entry<String, List<String>> variable : variables.entrySet()) {
+                update(hash, variable.getKey(), '\ufdd0');
+                field(hash, variable.getKey(), variable.getValue());
+            }
+        }
+        return new long[] { mix(hash[0]), mix(hash[1]) };
+    }
+
+    private static void field(long[] hash, String field, List<String> values) {
+        for (String value : values)
+            update(hash, value, '\uffff');
+        update(hash, "", '\ufffe');
+    }
+
+    /**
+     * Adds the characters of a value and then a separator, which is not a
+     * valid character, to the two hashes.
+     */
+    private static void update(long[] hash, String value, char separator) {
+        long h1 = hash[0];
+        long h2 = hash[1];
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : separator;
+            h1 = (h1 ^ c) * 0x100000001b3L;
+            h2 = (Long.rotateLeft(h2, 5) ^ c) * 0x9e3779b97f4a7c15L;
+        }
+        hash[0] = h1;
+        hash[1] = h2;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,149 @@
+package net.sargue.mailgun;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The body of a form mail: its own parameters plus the defaults from the
+ * configuration that it doesn't override, resolved once when the mail is
+ * built.
+ * <p>
+ * The default parameters are also kept pre-encoded, so only the parameters
+ * specific to this mail are encoded when sending.
+ * <p>
+ * A body can also be a variant of a prototype body, see
+ * {@link MailBuilder#fromPrototype(Mail)}. Then it only holds the
+ * parameters that changed and, when encoded, copies the ranges of the
+ * encoded prototype that are still valid.
+ */
+final class FormBody extends RequestBody {
+    private static final byte[][] NO_CHUNKS = new byte[0][];
+
+    private final Parameters parameters;
+    private final int ownSize;
+    private final byte[][] encodedDefaults;
+    private final FormBody base;
+    // end offset of every parameter in the encoded body, once encoded
+    private int[] ends;
+
+    private FormBody(Parameters parameters, int ownSize, byte[][] encodedDefaults,
+                     FormBody base)
+    {
+        this.parameters = parameters;
+        this.ownSize = ownSize;
+        this.encodedDefaults = encodedDefaults;
+        this.base = base;
+    }
+
+    /**
+     * Merges the given parameters with the configured defaults. The given
+     * parameters are not modified.
+     */
+    static FormBody build(Configuration configuration, Parameters own) {
+        Parameters parameters = own.snapshot();
+        List<byte[]> chunks = null;
+        Map<String, List<String>> defaults = configuration.defaultParameters();
+        for (Map.Entry<String, List<String>> entry : defaults.entrySet()) {
+            String name = entry.getKey();
+            if (own.contains(name) || entry.getValue().isEmpty())
+                continue;
+            for (String value : entry.getValue())
+                parameters.add(name, value);
+            if (chunks == null)
+                chunks = new ArrayList<>(defaults.size());
+            chunks.add(configuration.encodedDefault(name, entry.getValue()));
+        }
+        return new FormBody(parameters, own.size(),
+                            chunks == null ? NO_CHUNKS : chunks.toArray(NO_CHUNKS),
+                            null);
+    }
+
+    /**
+     * Creates a variant of a body replacing the parameters present on the
+     * overlay. A variant of a variant is based on the same prototype.
+     */
+    static FormBody variant(FormBody prototype, Parameters overlay) {
+        if (prototype.base == null)
+            return new FormBody(overlay.snapshot(), overlay.size(), NO_CHUNKS,
+                                prototype);
+        Parameters changes = Parameters.overlay(prototype.parameters, overlay);
+        return new FormBody(changes, changes.size(), NO_CHUNKS, prototype.base);
+    }
+
+    /**
+     * Returns all the parameters of this body.
+     */
+    @Override
+    Parameters parameters() {
+        return base == null ? parameters
+                            : Parameters.overlay(base.parameters, parameters);
+    }
+
+    @Override
+    String getFirst(String name) {
+        if (base == null || parameters.contains(name))
+            return parameters.getFirst(name);
+        return base.getFirst(name);
+    }
+
+    @Override
+    List<String> getAll(String name) {
+        if (base == null || parameters.contains(name))
+            return parameters.getAll(name);
+        return base.getAll(name);
+    }
+
+    @Override
+    String contentType() {
+        return "application/x-www-form-urlencoded";
+    }
+
+    @Override
+    void encode(OutputStream out) throws IOException {
+        FormEncoder encoder = new FormEncoder(out);
+        if (base != null)
+            encodeBase(encoder);
+        int[] offsets = base == null ? new int[parameters.size()] : null;
+        for (int i = 0; i < ownSize; i++) {
+            encoder.parameter(parameters.name(i), parameters.value(i));
+            if (offsets != null)
+                offsets[i] = (int) encoder.size();
+        }
+        int index = ownSize;
+        for (byte[] chunk : encodedDefaults) {
+            encoder.encoded(chunk);
+            // a chunk holds all the values of one parameter
+            String name = parameters.name(index);
+            do {
+                offsets[index++] = (int) encoder.size();
+            } while (index < parameters.size() && parameters.name(index).equals(name));
+        }
+        encoder.finish();
+        ends = offsets;
+    }
+
+    /**
+     * Copies the runs of parameters of the prototype that are not replaced.
+     */
+    private void encodeBase(FormEncoder encoder) throws IOException {
+        byte[] bytes = base.bytes();
+        int[] baseEnds = base.ends;
+        Parameters baseParameters = base.parameters;
+        int i = 0;
+        while (i < baseParameters.size()) {
+            if (parameters.contains(baseParameters.name(i))) {
+                i++;
+                continue;
+            }
+            // skip the separator
+            int start = i == 0 ? 0 : baseEnds[i - 1] + 1;
+            while (i < baseParameters.size()
+                   && !parameters.contains(baseParameters.name(i)))
+                i++;
+            encoder.encoded(bytes, start, baseEnds[i - 1] - start);
+        }
+    }
+}
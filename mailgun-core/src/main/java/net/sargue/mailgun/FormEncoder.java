@@ -0,0 +1,160 @@
+package net.sargue.mailgun;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encodes parameters as {@code application/x-www-form-urlencoded} straight
+ * into an output stream.
+ * <p>
+ * The output is the same as {@link java.net.URLEncoder} with UTF-8: ASCII
+ * letters, digits and {@code .-*_} are kept, spaces become {@code +} and
+ * everything else is percent-encoded from its UTF-8 bytes. The decision
+ * and the hex digits come from precomputed tables and the bytes are
+ * gathered on a reusable buffer, so no intermediate strings are created.
+ */
+final class FormEncoder {
+    private static final boolean[] UNRESERVED = new boolean[128];
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) UNRESERVED[c] = true;
+        for (char c = 'A'; c <= 'Z'; c++) UNRESERVED[c] = true;
+        for (char c = '0'; c <= '9'; c++) UNRESERVED[c] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private long flushed;
+    private boolean first = true;
+
+    FormEncoder(OutputStream out) {
+        this(out, 8192);
+    }
+
+    FormEncoder(OutputStream out, int bufferSize) {
+        this.out = out;
+        // room for the worst case of a code point: 4 bytes percent-encoded
+        buffer = new byte[Math.max(bufferSize, 32)];
+    }
+
+    /**
+     * Encodes all the values of a parameter as a standalone chunk.
+     */
+    static byte[] encode(String name, List<String> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            FormEncoder encoder = new FormEncoder(out, 256);
+            for (String value : values)
+                encoder.parameter(name, value);
+            encoder.finish();
+        } catch (IOException e) {
+            throw new MailgunException("Problem encoding parameter " + name, e);
+        }
+        return out.toByteArray();
+    }
+
+    FormEncoder parameter(String name, String value) throws IOException {
+        if (!first)
+            put('&');
+        first = false;
+        encode(name);
+        put('=');
+        encode(value);
+        return this;
+    }
+
+    /**
+     * Appends an already encoded chunk of parameters, as returned by
+     * {@link #encode(String, List)}.
+     */
+    FormEncoder encoded(byte[] chunk) throws IOException {
+        return encoded(chunk, 0, chunk.length);
+    }
+
+    /**
+     * Appends a range of an already encoded form, holding one or more
+     * complete parameters.
+     */
+    FormEncoder encoded(byte[] bytes, int offset, int length) throws IOException {
+        if (!first)
+            put('&');
+        first = false;
+        if (length > buffer.length - position) {
+            finish();
+            out.write(bytes, offset, length);
+            flushed += length;
+        } else {
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes encoded so far.
+     */
+    long size() {
+        return flushed + position;
+    }
+
+    void finish() throws IOException {
+        if (position > 0)
+            out.write(buffer, 0, position);
+        flushed += position;
+        position = 0;
+    }
+
+    private void encode(String s) throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (position > buffer.length - 12)
+                finish();
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (UNRESERVED[c])
+                    buffer[position++] = (byte) c;
+                else if (c == ' ')
+                    buffer[position++] = '+';
+                else
+                    percent(c);
+            } else if (c < 0x800) {
+                percent(0xC0 | (c >> 6));
+                percent(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                       && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                percent(0xF0 | (cp >> 18));
+                percent(0x80 | ((cp >> 12) & 0x3F));
+                percent(0x80 | ((cp >> 6) & 0x3F));
+                percent(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced like the JDK encoder does
+                percent('?');
+            } else {
+                percent(0xE0 | (c >> 12));
+                percent(0x80 | ((c >> 6) & 0x3F));
+                percent(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (position == buffer.length)
+            finish();
+        buffer[position++] = (byte) c;
+    }
+
+    private void percent(int b) {
+        buffer[position++] = '%';
+        buffer[position++] = HEX[(b >> 4) & 0xF];
+        buffer[position++] = HEX[b & 0xF];
+    }
+}
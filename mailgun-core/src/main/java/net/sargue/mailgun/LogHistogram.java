@@ -0,0 +1,57 @@
+package net.sargue.mailgun;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of positive values with log-linear buckets, in the
+ * style of HdrHistogram.
+ * <p>
+ * Every power of two is split in {@value #SUB_BUCKETS} linear buckets, so
+ * the values are recorded with a relative error below 2^-{@value #SUB_BITS},
+ * about 3%. Values below {@value #SUB_BUCKETS} are exact and values beyond
+ * 2^{@value #MAX_BITS}, about 17 minutes in nanoseconds, are clamped.
+ */
+final class LogHistogram {
+    static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int MAX_BITS = 40;
+
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    private final AtomicLongArray counts =
+        new AtomicLongArray((MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS);
+
+    void record(long value) {
+        counts.incrementAndGet(index(Math.min(Math.max(value, 0), MAX_VALUE)));
+    }
+
+    /**
+     * Returns a copy of the bucket counts, for a consistent view of them.
+     */
+    long[] counts() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++)
+            copy[i] = counts.get(i);
+        return copy;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns a value representative of the bucket, its middle point.
+     */
+    static long value(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) - 1) / 2;
+    }
+}
@@ -0,0 +1,457 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpRequest;
+import net.sargue.mailgun.spi.HttpResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Representation of a Mailgun's mail request.
+ * <p>
+ * It must be built using a {@link MailBuilder}.
+ * <p>
+ * A mail is immutable once built. The same instance can be sent many times,
+ * even concurrently, and its request body is encoded only the first time.
+ * <p>
+ * Attachments read from streams are copied, to temporary files when they
+ * are big, see {@link Configuration#spoolThreshold(int)}. {@link #close()}
+ * the mail once sent to remove those files.
+ */
+public abstract class Mail implements Closeable {
+    private static final MailRequestCallback IGNORE_OUTCOME = new MailRequestCallback() {
+        @Override
+        public void completed(Response response) {
+            // ignored
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            // ignored
+        }
+    };
+
+    private static final HttpConnector.Callback IGNORE_RESPONSE = new HttpConnector.Callback() {
+        @Override
+        public void completed(HttpResponse response) {
+            try {
+                response.body();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            // ignored
+        }
+    };
+
+    private final Configuration configuration;
+    private final String lane;
+
+    Mail(Configuration configuration, String lane) {
+        this.configuration = configuration;
+        this.lane = lane;
+    }
+
+    /**
+     * Convenience shortcut to {@code MailBuilder.using(configuration)}
+     *
+     * @param configuration the configuration to use
+     * @return a new {@link MailBuilder} which uses the specified configuration
+     */
+    public static MailBuilder using(Configuration configuration) {
+        return new MailBuilder(configuration);
+    }
+
+    /**
+     * Retrieves the value of a given mail parameter. If there are multiple
+     * values the first one is returned. If the parameter hasn't been set
+     * null is returned.
+     * <p>
+     * Can only be used on simple parameters (String). So don't use it on
+     * <i>attachment</i> for example. Doing so will throw a
+     * {@link IllegalStateException}.
+     *
+     * @param param the name of the parameter
+     * @return the first value of the parameter, if any, null otherwise
+     * @throws IllegalStateException if the parameter is not a simple (basic text) one
+     */
+    public abstract String getFirstValue(String param);
+
+    /**
+     * Retrieves the values of a given mail parameter. If the parameter hasn't
+     * been set an empty list is returned.
+     * <p>
+     * Can only be used on simple parameters (String). So don't use it on
+     * <i>attachment</i> for example. Doing so will throw a
+     * {@link IllegalStateException}.
+     *
+     * @param param the name of the parameter
+     * @return the list of values for the parameter or an empty list
+     * @throws IllegalStateException if the parameter is not a simple (basic text) one
+     */
+    public abstract List<String> getValues(String param);
+
+    /**
+     * Sends the email.
+     * <p>
+     * This method send the request to the Mailgun service. It is a
+     * <strong>blocking</strong> method, so it will return upon request
+     * completion.
+     *
+     * @return the response from the Mailgun service or null if the message
+     *         is not sent (filtered by {@link MailSendFilter}
+     */
+    public Response send() {
+        if (!filter()) return null;
+        MailLanes lanes = configuration.mailLanes();
+        if (lanes == null)
+            return sendNow();
+        MailLanes.Lane lane = lanes.laneOf(this);
+        lanes.acquire(lane);
+        try {
+            return sendNow();
+        } finally {
+            lanes.release(lane);
+        }
+    }
+
+    private Response sendNow() {
+        MailSendInterceptor[] interceptors = configuration.interceptors();
+        MailMetrics metrics = configuration.mailMetrics();
+        boolean timed = metrics != null || MailSendEvent.enabled();
+        if (!timed && interceptors.length == 0)
+            return new Response(post(body()));
+
+        beforeSend(interceptors);
+        SendTimer timer = timed ? new SendTimer(metrics, configuration.domain()) : null;
+        HttpResponse response;
+        try {
+            response = post(body(timer, interceptors));
+        } catch (RuntimeException e) {
+            failed(timer, interceptors, e);
+            throw e;
+        }
+        return completed(timer, interceptors, response);
+    }
+
+    /**
+     * Sends the email asynchronously.
+     * <p>
+     * This method returns immediately, sending the request to the Mailgun
+     * service in the background. It is a <strong>non-blocking</strong>
+     * method. The request and the callback run on the executors of the
+     * configuration, see {@link Configuration#ioExecutor(java.util.concurrent.Executor)}
+     * and {@link Configuration#callbackExecutor(java.util.concurrent.Executor)},
+     * or on the {@link Configuration#mailLanes(MailLanes) lanes}.
+     *
+     * @param callback the callback to be invoked upon completion or failure
+     */
+    public void sendAsync(MailRequestCallback callback) {
+        if (!filter()) return;
+        post(callback);
+    }
+
+    private void post(MailRequestCallback callback) {
+        MailSendInterceptor[] interceptors = configuration.interceptors();
+        MailMetrics metrics = configuration.mailMetrics();
+        beforeSend(interceptors);
+        SendTimer timer = metrics == null && !MailSendEvent.enabled()
+                          ? null
+                          : new SendTimer(metrics, configuration.domain());
+        AsyncSend send;
+        Executor io;
+        try {
+            MailLanes lanes = configuration.mailLanes();
+            io = lanes == null ? configuration.ioExecutor() : lanes.executor(lanes.laneOf(this));
+            send = new AsyncSend(configuration.connector(),
+                                 request(body(timer, interceptors)),
+                                 timer, interceptors, callback,
+                                 callback == IGNORE_OUTCOME
+                                 ? null
+                                 : configuration.callbackExecutor());
+        } catch (RuntimeException e) {
+            failed(timer, interceptors, e);
+            throw e;
+        }
+        if (io == null) {
+            send.connector.postAsync(send.request, send);
+            return;
+        }
+        try {
+            io.execute(send);
+        } catch (RejectedExecutionException e) {
+            failed(timer, interceptors, e);
+            callback.failed(e);
+        }
+    }
+
+    /**
+     * An asynchronous send: the connector callback and, on an I/O executor,
+     * the task making the request.
+     */
+    private final class AsyncSend implements HttpConnector.Callback, Runnable {
+        final HttpConnector connector;
+        final HttpRequest request;
+        private final SendTimer timer;
+        private final MailSendInterceptor[] interceptors;
+        private final MailRequestCallback callback;
+        private final Executor callbacks;
+
+        AsyncSend(HttpConnector connector, HttpRequest request, SendTimer timer,
+                  MailSendInterceptor[] interceptors, MailRequestCallback callback,
+                  Executor callbacks)
+        {
+            this.connector = connector;
+            this.request = request;
+            this.timer = timer;
+            this.interceptors = interceptors;
+            this.callback = callback;
+            this.callbacks = callbacks;
+        }
+
+        @Override
+        public void run() {
+            if (timer != null)
+                timer.requestStarted();
+            HttpResponse raw;
+            try {
+                raw = connector.post(request);
+            } catch (IOException | RuntimeException e) {
+                failed(e);
+                return;
+            }
+            completed(raw);
+        }
+
+        @Override
+        public void completed(HttpResponse raw) {
+            final Response response;
+            try {
+                response = Mail.this.completed(timer, interceptors, raw);
+            } catch (final RuntimeException e) {
+                if (callbacks == null)
+                    callback.failed(e);
+                else
+                    dispatch(callbacks, () -> callback.failed(e));
+                return;
+            }
+            if (callbacks == null)
+                callback.completed(response);
+            else
+                dispatch(callbacks, () -> callback.completed(response));
+        }
+
+        @Override
+        public void failed(final Throwable throwable) {
+            Mail.this.failed(timer, interceptors, throwable);
+            if (callbacks == null)
+                callback.failed(throwable);
+            else
+                dispatch(callbacks, () -> callback.failed(throwable));
+        }
+    }
+
+    /**
+     * Runs a callback on the callback executor, or on this thread if it is
+     * rejected.
+     */
+    private static void dispatch(Executor executor, Runnable callback) {
+        try {
+            executor.execute(callback);
+        } catch (RejectedExecutionException e) {
+            // never lose a callback, run it here
+            callback.run();
+        }
+    }
+
+    /**
+     * Sends the email asynchronously at the given time, with the scheduler
+     * of the configuration. When the time comes it is sent as with
+     * {@link #sendAsync()}. A time already past sends it on the next tick
+     * of the scheduler.
+     *
+     * @param time when to send the mail
+     * @throws IllegalStateException if the configuration has no scheduler
+     * @see MailScheduler
+     */
+    public void sendAt(Instant time) {
+        MailScheduler scheduler = configuration.mailScheduler();
+        if (scheduler == null)
+            throw new IllegalStateException("No mail scheduler, see Configuration.mailScheduler");
+        scheduler.schedule(this, time);
+    }
+
+    /**
+     * Sends the email asynchronously. It uses the configuration provided
+     * default callback if available, ignoring the outcome otherwise.
+     * <p>
+     * If you want to use a specific callback for this call use
+     * {@link #sendAsync(MailRequestCallback)} instead.
+     */
+    public void sendAsync() {
+        if (!filter()) return;
+        MailRequestCallbackFactory factory = configuration.mailRequestCallbackFactory();
+        if (factory != null)
+            post(factory.create(this));
+        else if (configuration.mailMetrics() != null
+                 || configuration.interceptors().length > 0
+                 || configuration.ioExecutor() != null
+                 || configuration.mailLanes() != null
+                 || MailSendEvent.enabled())
+            post(IGNORE_OUTCOME);
+        else
+            configuration.connector().postAsync(request(body()), IGNORE_RESPONSE);
+    }
+
+    /**
+     * Sends the email asynchronously, as {@link #sendAsync()}, and runs the
+     * given task once done: when the request completes or fails, or right
+     * away if the mail is not sent.
+     */
+    void sendAsync(final Runnable done) {
+        boolean posted = false;
+        try {
+            if (!filter()) return;
+            MailRequestCallbackFactory factory = configuration.mailRequestCallbackFactory();
+            final MailRequestCallback callback = factory == null
+                                                 ? IGNORE_OUTCOME
+                                                 : factory.create(this);
+            post(new MailRequestCallback() {
+                @Override
+                public void completed(Response response) {
+                    try {
+                        callback.completed(response);
+                    } finally {
+                        done.run();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    try {
+                        callback.failed(throwable);
+                    } finally {
+                        done.run();
+                    }
+                }
+            });
+            posted = true;
+        } finally {
+            if (!posted)
+                done.run();
+        }
+    }
+
+    /**
+     * Retrieves the configuration associated with this Mail.
+     *
+     * @return the underlying configuration
+     */
+    public Configuration configuration() {
+        return configuration;
+    }
+
+    /**
+     * Retrieves the lane chosen with {@link MailBuilder#lane(String)}.
+     *
+     * @return the name of the lane or null if none was chosen
+     */
+    public String lane() {
+        return lane;
+    }
+
+    /**
+     * Removes the temporary copies of the attachments read from streams.
+     * Those attachments can't be read again after closing, so close the
+     * mail once it is sent, after the callback of an asynchronous send.
+     * Mails made from this one with {@link MailBuilder#fromPrototype(Mail)}
+     * share its attachments, close this one after them. A mail never
+     * closed has its temporary files deleted when the JVM exits.
+     */
+    @Override
+    public void close() {
+        body().close();
+    }
+
+    private boolean filter() {
+        if (!MailFilterEvent.enabled())
+            return configuration.mailSendFilter().filter(this);
+        MailFilterEvent event = new MailFilterEvent();
+        event.begin();
+        boolean accepted = configuration.mailSendFilter().filter(this);
+        if (event.shouldCommit()) {
+            event.domain = configuration.domain();
+            event.accepted = accepted;
+            event.commit();
+        }
+        return accepted;
+    }
+
+    abstract RequestBody body();
+
+    /**
+     * Creates a mail based on this one, see
+     * {@link MailBuilder#fromPrototype(Mail)}. A null lane keeps the lane
+     * of this mail.
+     */
+    abstract Mail variant(Parameters overlay, List<MultipartBody.Part> parts, String lane);
+
+    private void beforeSend(MailSendInterceptor[] interceptors) {
+        for (MailSendInterceptor interceptor : interceptors)
+            interceptor.beforeSend(this);
+    }
+
+    private RequestBody body(SendTimer timer, MailSendInterceptor[] interceptors) {
+        RequestBody body = timer == null ? body() : timer.body(body());
+        if (interceptors.length > 0) {
+            long bytes = body.cacheable() ? body.bytes().length : -1;
+            for (MailSendInterceptor interceptor : interceptors)
+                interceptor.encoded(this, bytes);
+        }
+        return body;
+    }
+
+    private Response completed(SendTimer timer, MailSendInterceptor[] interceptors,
+                               HttpResponse raw)
+    {
+        Response response;
+        try {
+            response = timer == null ? new Response(raw) : timer.completed(raw);
+        } catch (RuntimeException e) {
+            // the timer already knows
+            failed(null, interceptors, e);
+            throw e;
+        }
+        for (int i = interceptors.length - 1; i >= 0; i--)
+            interceptors[i].completed(this, response);
+        return response;
+    }
+
+    private void failed(SendTimer timer, MailSendInterceptor[] interceptors, Throwable error) {
+        if (timer != null)
+            timer.failed(error);
+        for (int i = interceptors.length - 1; i >= 0; i--)
+            interceptors[i].failed(this, error);
+    }
+
+    private HttpRequest request(RequestBody body) {
+        return configuration.request("messages", body);
+    }
+
+    private HttpResponse post(RequestBody body) {
+        HttpConnector connector = configuration.connector();
+        try {
+            return connector.post(request(body));
+        } catch (IOException e) {
+            throw new MailgunException("Problem sending the mail", e);
+        }
+    }
+}
@@ -2,10 +2,13 @@ package net.sargue.mailgun;
 
 import net.sargue.mailgun.content.Body;
 import net.sargue.mailgun.content.Builder;
+import net.sargue.mailgun.content.HtmlMinifier;
 
-import jakarta.ws.rs.core.Form;
+import java.util.Collections;
 import java.util.Objects;
 
+import static net.sargue.mailgun.MailMetrics.Phase.BUILD;
+
 /**
  * A mutable builder for a {@code Mail}. This allows the creation of a
  * {@code Mail} by adding the desired parts in any order.
@@ -16,7 +19,10 @@ import java.util.Objects;
 @SuppressWarnings("unused")
 public class MailBuilder {
     private final Configuration configuration;
-    private final Form form = new Form();
+    private final Parameters parameters = new Parameters();
+    private final Mail prototype;
+    private Body streamedContent;
+    private String lane;
 
     /**
      * Creates a {@code MailBuilder} with the provided configuration.
@@ -28,6 +34,12 @@ public class MailBuilder {
      */
     public MailBuilder(Configuration configuration) {
         this.configuration = configuration;
+        this.prototype = null;
+    }
+
+    private MailBuilder(Mail prototype) {
+        this.configuration = prototype.configuration();
+        this.prototype = prototype;
     }
 
     /**
@@ -40,6 +52,30 @@ public class MailBuilder {
         return new MailBuilder(configuration);
     }
 
+    /**
+     * Creates a {@code MailBuilder} for a variant of the given mail.
+     * <p>
+     * The mail built will have all the parameters of the prototype except
+     * the ones set on this builder, which replace all the values of the
+     * prototype with the same name. For instance, calling {@code to} once
+     * on this builder sends the variant to that single recipient. The
+     * prototype is not modified and it can be sent on its own.
+     * <p>
+     * The variant shares the parameters of the prototype and, for form
+     * mails, also the already encoded request body of the prototype, so
+     * building and sending thousands of variants that differ in a few
+     * parameters costs about the size of those differences.
+     * <p>
+     * Attachments added through {@link #multipart()} are added to the ones
+     * of the prototype.
+     *
+     * @param prototype the mail to use as a base
+     * @return a new builder for a variant of the prototype
+     */
+    public static MailBuilder fromPrototype(Mail prototype) {
+        return new MailBuilder(prototype);
+    }
+
     /**
      * Returns the configuration used by this builder.
      *
@@ -49,8 +85,20 @@ public class MailBuilder {
         return configuration;
     }
 
-    Form form() {
-        return form;
+    Parameters parameters() {
+        return parameters;
+    }
+
+    Body streamedContent() {
+        return streamedContent;
+    }
+
+    Mail prototype() {
+        return prototype;
+    }
+
+    String lane() {
+        return lane;
     }
 
     /**
@@ -195,12 +243,17 @@ public class MailBuilder {
 
     /**
      * Sets the HTML version of the message body.
+     * <p>
+     * The HTML is minified if the configuration says so. See
+     * {@link Configuration#minifyHtml(boolean)}.
      *
      * @param html the body of the message in HTML
      * @return this builder
      */
     public MailBuilder html(String html) {
-        return param("html", html);
+        return param("html", configuration.minifyHtml()
+                             ? HtmlMinifier.minify(html)
+                             : html);
     }
 
     /**
@@ -217,12 +270,21 @@ public class MailBuilder {
 
     /**
      * Sets the content of the message, both the plain text and HTML version.
+     * <p>
+     * If the content is not held in memory (see {@link Body#inMemory()}) it
+     * is streamed from disk when sending, which requires a multipart
+     * request. In that case {@link #build()} returns a multipart mail.
      *
      * @param body the content of the message
      * @return this builder
      */
     public MailBuilder content(Body body) {
-        return text(body.text()).html(body.html());
+        if (!body.inMemory()) {
+            streamedContent = body;
+            return this;
+        }
+        // the content builder already takes care of the minification
+        return text(body.text()).param("html", body.html());
     }
 
     /**
@@ -265,6 +327,18 @@ public class MailBuilder {
         return param(name, value);
     }
 
+    /**
+     * Sets the lane of the mail, overriding the one chosen by its tags.
+     * It is not sent to Mailgun, see {@link MailLanes}.
+     *
+     * @param lane the name of the lane
+     * @return this builder
+     */
+    public MailBuilder lane(String lane) {
+        this.lane = Objects.requireNonNull(lane);
+        return this;
+    }
+
     public MultipartBuilder multipart() {
         return new MultipartBuilder(this);
     }
@@ -277,7 +351,17 @@ public class MailBuilder {
      * @return a {@link Mail} built from this builder
      */
     public Mail build() {
-        return new MailForm(configuration, form);
+        if (streamedContent != null)
+            return multipart().build();
+        MailMetrics metrics = configuration.mailMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        Mail mail = prototype != null
+                    ? prototype.variant(parameters, Collections.emptyList(), lane)
+                    : new MailForm(configuration, FormBody.build(configuration, parameters),
+                                   lane);
+        if (metrics != null)
+            metrics.phase(configuration.domain(), BUILD, System.nanoTime() - start);
+        return mail;
     }
 
     static String email(String name, String email) {
@@ -287,7 +371,7 @@ public class MailBuilder {
     private MailBuilder param(String name, String value) {
         Objects.requireNonNull(name);
         Objects.requireNonNull(value);
-        form.param(name, value);
+        parameters.add(name, value);
         return this;
     }
 }
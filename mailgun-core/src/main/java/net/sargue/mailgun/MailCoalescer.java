@@ -0,0 +1,357 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.content.Body;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Merges the mails sent to the same recipients within a time window into a
+ * single digest mail, to send one request and one mail instead of dozens.
+ * <p>
+ * Mails are grouped by their configuration, sender, recipients ({@code to},
+ * {@code cc} and {@code bcc}) and a coalescing key given by a function, for
+ * example the kind of notification. The window of a group
+ * starts with its first mail. When it ends the mails of the group are
+ * merged by a {@link Combiner} into the body of a digest, a variant of the
+ * last mail, see {@link MailBuilder#fromPrototype(Mail)}, and the digest is
+ * sent with {@link Mail#sendAsync()}. A group with a single mail sends it
+ * as it is, and so do mails without a coalescing key, right away:
+ * <pre>{@code
+ * MailCoalescer coalescer = MailCoalescer.create(
+ *     mail -> mail.getFirstValue("o:tag"),
+ *     mails -> Body.builder()
+ *                  .h1(mails.size() + " new comments")
+ *                  ...
+ *                  .build(),
+ *     1, TimeUnit.HOURS, 100_000);
+ *
+ * coalescer.send(Mail.using(configuration)
+ *                    .to(user.email())
+ *                    .subject("New comment")
+ *                    .parameter("o:tag", "comments")
+ *                    ...
+ *                    .build());
+ * }</pre>
+ * The mails waiting are bounded: when there are {@code capacity} of them the
+ * oldest group is sent before its window ends. Closing the coalescer sends
+ * all the groups waiting. A thread sends the groups as their windows end,
+ * and if the combiner fails the mails of the group are sent one by one.
+ * The body made by the combiner is closed once the digest is sent, so it
+ * can be spilled to disk, see {@link net.sargue.mailgun.content.Builder#spillToDisk(int)}.
+ * <p>
+ * The failures of the combiner and the mails that can't be sent are
+ * counted, see {@link #failures()}, and given to the
+ * {@link #failureListener(BiConsumer) failure listener}. The outcome of the
+ * requests goes to the callbacks of the configuration as usual.
+ * <p>
+ * This class is thread safe.
+ */
+public final class MailCoalescer implements AutoCloseable {
+    /**
+     * Merges the mails of a group into the content of a digest.
+     */
+    @FunctionalInterface
+    public interface Combiner {
+        /**
+         * Creates the content of the digest.
+         *
+         * @param mails the mails of the group, in the order they were sent
+         * @return the body of the digest
+         */
+        Body combine(List<Mail> mails);
+
+        /**
+         * Creates the subject of the digest. The subject of the last mail
+         * by default.
+         *
+         * @param mails the mails of the group, in the order they were sent
+         * @return the subject of the digest
+         */
+        default String subject(List<Mail> mails) {
+            return mails.get(mails.size() - 1).getFirstValue("subject");
+        }
+    }
+
+    private static final class Group {
+        final long deadline;
+        final List<Mail> mails = new ArrayList<>(4);
+
+        Group(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    private final Function<Mail, String> key;
+    private final Combiner combiner;
+    private final long windowNanos;
+    private final int capacity;
+    private final Thread thread;
+    // in order of creation, which is also the order of their deadlines
+    private final Map<List<Object>, Group> groups = new LinkedHashMap<>();
+    private int waiting;
+    private long received;
+    private long sent;
+    private long failures;
+    private BiConsumer<List<Mail>, RuntimeException> failureListener;
+    private boolean closed;
+
+    private MailCoalescer(Function<Mail, String> key, Combiner combiner,
+                          long window, TimeUnit unit, int capacity)
+    {
+        if (window <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("window and capacity must be positive");
+        this.key = key;
+        this.combiner = combiner;
+        this.windowNanos = unit.toNanos(window);
+        this.capacity = capacity;
+        this.thread = new Thread(this::run, "mailgun-coalescer");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param key      gives the coalescing key of a mail, or null to send
+     *                 it right away
+     * @param combiner merges the mails of a group
+     * @param window   how long the mails of a group wait for others
+     * @param unit     the unit of the window
+     * @param capacity the maximum number of mails waiting
+     * @return a new coalescer, already running
+     */
+    public static MailCoalescer create(Function<Mail, String> key, Combiner combiner,
+                                       long window, TimeUnit unit, int capacity)
+    {
+        MailCoalescer coalescer = new MailCoalescer(key, combiner, window, unit, capacity);
+        coalescer.thread.start();
+        return coalescer;
+    }
+
+    /**
+     * Sets a listener for the failures: the mails of a group when the
+     * combiner fails, before they are sent one by one, or a mail that
+     * couldn't be sent. It runs on the thread sending the mails and must not
+     * throw.
+     *
+     * @param listener gets the mails and the error
+     * @return this coalescer
+     */
+    public synchronized MailCoalescer failureListener(
+        BiConsumer<List<Mail>, RuntimeException> listener)
+    {
+        this.failureListener = listener;
+        return this;
+    }
+
+    /**
+     * Sends a mail, merged with the others of its group at the end of the
+     * window.
+     *
+     * @param mail the mail to send
+     * @throws IllegalStateException if the coalescer has been closed
+     */
+    public void send(Mail mail) {
+        String coalescingKey = key.apply(mail);
+        if (coalescingKey == null) {
+            synchronized (this) {
+                if (closed)
+                    throw new IllegalStateException("The coalescer has been closed");
+                received++;
+            }
+            flush(Collections.singletonList(mail));
+            return;
+        }
+        // configurations are compared by identity
+        List<Object> groupKey = Arrays.asList(mail.configuration(),
+                                              mail.getValues("from"),
+                                              mail.getValues("to"),
+                                              mail.getValues("cc"),
+                                              mail.getValues("bcc"),
+                                              coalescingKey);
+        List<Mail> oldest = null;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The coalescer has been closed");
+            received++;
+            if (waiting == capacity)
+                oldest = removeOldest();
+            Group group = groups.get(groupKey);
+            if (group == null) {
+                group = new Group(System.nanoTime() + windowNanos);
+                groups.put(groupKey, group);
+                if (groups.size() == 1)
+                    notifyAll();
+            }
+            group.mails.add(mail);
+            waiting++;
+        }
+        if (oldest != null)
+            flush(oldest);
+    }
+
+    /**
+     * Returns the number of mails waiting for the end of their window.
+     *
+     * @return the number of mails waiting
+     */
+    public synchronized int waiting() {
+        return waiting;
+    }
+
+    /**
+     * Returns the number of mails given to {@link #send(Mail)}.
+     *
+     * @return the number of mails received
+     */
+    public synchronized long received() {
+        return received;
+    }
+
+    /**
+     * Returns the number of mails sent, digests or not. Compared with
+     * {@link #received()} it tells the requests saved.
+     *
+     * @return the number of mails sent
+     */
+    public synchronized long sent() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of failures, of the combiner or sending a mail.
+     *
+     * @return the number of failures
+     */
+    public synchronized long failures() {
+        return failures;
+    }
+
+    /**
+     * Sends all the groups waiting, on this thread, and stops accepting
+     * mails.
+     */
+    @Override
+    public void close() {
+        List<List<Mail>> all;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            all = new ArrayList<>(groups.size());
+            for (Group group : groups.values())
+                all.add(group.mails);
+            groups.clear();
+            waiting = 0;
+            notifyAll();
+        }
+        for (List<Mail> mails : all)
+            flush(mails);
+    }
+
+    private void run() {
+        List<List<Mail>> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed && due.isEmpty()) {
+                        long now = System.nanoTime();
+                        Iterator<Group> iterator = groups.values().iterator();
+                        while (iterator.hasNext()) {
+                            Group group = iterator.next();
+                            if (group.deadline - now > 0)
+                                break;
+                            iterator.remove();
+                            waiting -= group.mails.size();
+                            due.add(group.mails);
+                        }
+                        if (!due.isEmpty())
+                            break;
+                        if (groups.isEmpty())
+                            wait();
+                        else
+                            TimeUnit.NANOSECONDS.timedWait(
+                                this, groups.values().iterator().next().deadline - now);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed && due.isEmpty())
+                    return;
+            }
+            for (List<Mail> mails : due)
+                flush(mails);
+            due.clear();
+        }
+    }
+
+    private List<Mail> removeOldest() {
+        Iterator<Group> iterator = groups.values().iterator();
+        Group group = iterator.next();
+        iterator.remove();
+        waiting -= group.mails.size();
+        return group.mails;
+    }
+
+    private void flush(List<Mail> mails) {
+        if (mails.size() > 1) {
+            Body body = null;
+            Mail digest = null;
+            try {
+                body = combiner.combine(mails);
+                MailBuilder builder = MailBuilder.fromPrototype(mails.get(mails.size() - 1))
+                                                 .content(body);
+                String subject = combiner.subject(mails);
+                if (subject != null)
+                    builder.subject(subject);
+                digest = builder.build();
+            } catch (RuntimeException e) {
+                if (body != null)
+                    body.close();
+                // sent one by one
+                failed(mails, e);
+            }
+            if (digest != null) {
+                synchronized (this) {
+                    sent++;
+                }
+                try {
+                    // a body spilled to disk is read until the request is written
+                    digest.sendAsync(body::close);
+                } catch (RuntimeException e) {
+                    failed(mails, e);
+                }
+                return;
+            }
+        }
+        synchronized (this) {
+            sent += mails.size();
+        }
+        for (Mail mail : mails) {
+            try {
+                mail.sendAsync();
+            } catch (RuntimeException e) {
+                // a failing mail doesn't stop the others
+                failed(Collections.singletonList(mail), e);
+            }
+        }
+    }
+
+    private void failed(List<Mail> mails, RuntimeException error) {
+        BiConsumer<List<Mail>, RuntimeException> listener;
+        synchronized (this) {
+            failures++;
+            listener = failureListener;
+        }
+        if (listener != null)
+            listener.accept(mails, error);
+    }
+}
@@ -0,0 +1,142 @@
+package net.sargue.mailgun;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads for the asynchronous sends or their callbacks,
+ * see {@link Configuration#ioExecutor(Executor)} and
+ * {@link Configuration#callbackExecutor(Executor)}.
+ * <p>
+ * Tasks wait on a queue of fixed capacity when all the threads are busy.
+ * When it is full the {@link Rejection} policy applies. The queue depth and
+ * the rejections can be read at any time, to be exported as metrics. For
+ * example, to keep slow callbacks away from the request threads:
+ * <pre>{@code
+ * MailExecutor io = new MailExecutor("mailgun-io", 8, 1000, Rejection.CALLER_RUNS);
+ * MailExecutor callbacks = new MailExecutor("mailgun-callback", 2, 10000, Rejection.ABORT);
+ * configuration.ioExecutor(io).callbackExecutor(callbacks);
+ * }</pre>
+ * Threads are daemons and stop after a minute idle. Close the executor to
+ * stop it, the tasks already queued still run.
+ * <p>
+ * This class is thread safe.
+ */
+public final class MailExecutor implements Executor, AutoCloseable {
+    /**
+     * What to do with a task when the queue is full.
+     */
+    public enum Rejection {
+        /**
+         * Throw a {@link RejectedExecutionException}. A rejected send fails,
+         * a rejected callback runs on the request thread.
+         */
+        ABORT,
+        /**
+         * Run the task on the thread submitting it, which slows down the
+         * submitter until the queue drains.
+         */
+        CALLER_RUNS
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates an executor.
+     *
+     * @param name          the prefix of the thread names
+     * @param threads       the maximum number of threads
+     * @param queueCapacity the maximum number of tasks waiting
+     * @param rejection     what to do with a task when the queue is full
+     */
+    public MailExecutor(final String name, int threads, int queueCapacity,
+                        final Rejection rejection)
+    {
+        if (threads <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("threads and queueCapacity must be positive");
+        final AtomicInteger count = new AtomicInteger();
+        RejectedExecutionHandler handler = (task, pool) -> {
+            rejected.incrementAndGet();
+            if (rejection == Rejection.CALLER_RUNS && !pool.isShutdown())
+                task.run();
+            else
+                throw new RejectedExecutionException("Mail executor " + name + " is full");
+        };
+        executor = new ThreadPoolExecutor(
+            threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> {
+                Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            handler);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the number of tasks waiting for a thread.
+     *
+     * @return the queue depth
+     */
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of tasks that can still be queued.
+     *
+     * @return the remaining capacity of the queue
+     */
+    public int remainingCapacity() {
+        return executor.getQueue().remainingCapacity();
+    }
+
+    /**
+     * Returns the number of threads running a task.
+     *
+     * @return the number of busy threads
+     */
+    public int activeThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of tasks that found the queue full, whether they
+     * were run by the caller or refused.
+     *
+     * @return the number of rejections
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the approximate number of tasks completed.
+     *
+     * @return the number of tasks completed
+     */
+    public long completed() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Stops accepting tasks. The ones already queued still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
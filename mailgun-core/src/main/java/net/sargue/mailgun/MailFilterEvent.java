@@ -0,0 +1,31 @@
+package net.sargue.mailgun;
+
+/**
+ * Flight recorder event for a {@link MailSendFilter} call.
+ * <p>
+ * This is the Java 8 version, which does nothing. The actual event is in
+ * the Java 11 section of the multi-release jar.
+ */
+final class MailFilterEvent {
+    String domain;
+    boolean accepted;
+
+    void begin() {
+        // no-op
+    }
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return false;
+    }
+
+    boolean shouldCommit() {
+        return false;
+    }
+
+    void commit() {
+        // no-op
+    }
+}
@@ -0,0 +1,37 @@
+package net.sargue.mailgun;
+
+import java.util.List;
+
+class MailForm extends Mail {
+    private final FormBody body;
+
+    MailForm(Configuration configuration, FormBody body, String lane) {
+        super(configuration, lane);
+        this.body = body;
+    }
+
+    @Override
+    public String getFirstValue(String param) {
+        return body.getFirst(param);
+    }
+
+    @Override
+    public List<String> getValues(String param) {
+        return body.getAll(param);
+    }
+
+    @Override
+    RequestBody body() {
+        return body;
+    }
+
+    @Override
+    Mail variant(Parameters overlay, List<MultipartBody.Part> parts, String lane) {
+        if (lane == null)
+            lane = lane();
+        if (parts.isEmpty())
+            return new MailForm(configuration(), FormBody.variant(body, overlay), lane);
+        return new MailMultipart(configuration(),
+                                 MultipartBody.variant(body, overlay, parts), lane);
+    }
+}
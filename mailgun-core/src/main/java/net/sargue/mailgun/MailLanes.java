@@ -0,0 +1,348 @@
+package net.sargue.mailgun;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Priority lanes for the sends, so a campaign doesn't delay the password
+ * resets, see {@link Configuration#mailLanes(MailLanes)}.
+ * <p>
+ * At most {@code concurrency} requests are made at the same time. Every
+ * mail goes to a lane, where it waits for its turn: the one chosen with
+ * {@link MailBuilder#lane(String)}, otherwise the first lane named like one
+ * of its {@code o:tag} values, otherwise the default lane. When a request
+ * ends the next one comes from the lanes with mails waiting in proportion to
+ * their weights. Some of the concurrency can be reserved to a lane, the
+ * other lanes never use it, so its mails start right away even when the
+ * bulk lane is full:
+ * <pre>{@code
+ * MailLanes lanes = new MailLanes("mailgun-lane", 16, 10000)
+ *     .lane("transactional", 4, 4)
+ *     .lane("bulk", 1, 0)
+ *     .defaultLane("bulk");
+ * configuration.mailLanes(lanes);
+ * }</pre>
+ * Here the bulk mails use at most 12 requests, and when both lanes have
+ * mails waiting 4 out of 5 new requests are transactional.
+ * <p>
+ * Blocking sends wait on the calling thread. Asynchronous sends wait on a
+ * lane queue of fixed capacity, a send finding it full fails with a
+ * {@link RejectedExecutionException}, and their requests are made on the
+ * threads of the lanes instead of the {@link Configuration#ioExecutor()}.
+ * Set a {@link Configuration#callbackExecutor(Executor)} too, or the
+ * callbacks hold the request slots while they run.
+ * <p>
+ * This class is thread safe. Add the lanes before using it.
+ */
+public final class MailLanes implements AutoCloseable {
+    private final String name;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+    private final ThreadPoolExecutor threads;
+    private Lane defaultLane;
+    private int inFlight;
+    private int reserved;
+    private double virtualTime;
+    private boolean closed;
+
+    /**
+     * Creates lanes without any lane yet.
+     *
+     * @param name          the prefix of the thread names
+     * @param concurrency   the maximum number of requests at the same time
+     * @param queueCapacity the maximum number of asynchronous sends waiting
+     *                      on each lane
+     */
+    public MailLanes(final String name, int concurrency, int queueCapacity) {
+        if (concurrency <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("concurrency and queueCapacity must be positive");
+        this.name = name;
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        final AtomicInteger count = new AtomicInteger();
+        // the lanes never hand over more tasks than the concurrency
+        threads = new ThreadPoolExecutor(
+            concurrency, concurrency, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            task -> {
+                Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        threads.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Adds a lane. The first one added is the default lane unless another
+     * one is chosen with {@link #defaultLane(String)}.
+     *
+     * @param lane     the name of the lane
+     * @param weight   the share of the requests for this lane when others
+     *                 have mails waiting too
+     * @param reserved the number of requests only this lane can make
+     * @return these lanes
+     */
+    public synchronized MailLanes lane(String lane, int weight, int reserved) {
+        if (weight <= 0 || reserved < 0)
+            throw new IllegalArgumentException("weight must be positive and reserved not negative");
+        if (lanes.containsKey(lane))
+            throw new IllegalArgumentException("Duplicated lane: " + lane);
+        int total = this.reserved + reserved;
+        if (total > concurrency)
+            throw new IllegalArgumentException("The reserved requests exceed the concurrency");
+        if (total - reserved >= concurrency)
+            throw new IllegalArgumentException("The reserved requests leave none for lane " + lane);
+        for (Lane other : lanes.values()) {
+            if (total - other.reserved >= concurrency)
+                throw new IllegalArgumentException("The reserved requests leave none for lane "
+                                                   + other.name);
+        }
+        Lane added = new Lane(lane, weight, reserved);
+        lanes.put(lane, added);
+        this.reserved = total;
+        if (defaultLane == null)
+            defaultLane = added;
+        return this;
+    }
+
+    /**
+     * Sets the lane of the mails without an explicit lane nor a tag naming
+     * one.
+     *
+     * @param lane the name of an already added lane
+     * @return these lanes
+     */
+    public synchronized MailLanes defaultLane(String lane) {
+        defaultLane = get(lane);
+        return this;
+    }
+
+    /**
+     * Returns the number of sends waiting on a lane.
+     *
+     * @param lane the name of the lane
+     * @return the number of blocking and asynchronous sends waiting
+     */
+    public synchronized int queued(String lane) {
+        return get(lane).waiting.size();
+    }
+
+    /**
+     * Returns the number of requests a lane is making.
+     *
+     * @param lane the name of the lane
+     * @return the number of requests in flight
+     */
+    public synchronized int inFlight(String lane) {
+        return get(lane).inFlight;
+    }
+
+    /**
+     * Returns the number of asynchronous sends that found a lane full.
+     *
+     * @param lane the name of the lane
+     * @return the number of rejections
+     */
+    public synchronized long rejected(String lane) {
+        return get(lane).rejected;
+    }
+
+    /**
+     * Stops accepting asynchronous sends. The ones already waiting still
+     * run.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (inFlight == 0)
+            threads.shutdown();
+    }
+
+    /**
+     * Waits, after {@link #close()}, for the requests in flight and the
+     * asynchronous sends waiting to end.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if they ended, false if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Returns the lane of a mail.
+     */
+    synchronized Lane laneOf(Mail mail) {
+        if (mail.lane() != null) {
+            Lane lane = lanes.get(mail.lane());
+            if (lane == null)
+                throw new MailgunException("Mail lane not found: " + mail.lane());
+            return lane;
+        }
+        for (String tag : mail.getValues("o:tag")) {
+            Lane lane = lanes.get(tag);
+            if (lane != null)
+                return lane;
+        }
+        if (defaultLane == null)
+            throw new IllegalStateException("No mail lanes, add one first");
+        return defaultLane;
+    }
+
+    /**
+     * Waits for the turn of a blocking send. Call {@link #release(Lane)}
+     * when the request ends.
+     */
+    void acquire(Lane lane) {
+        Ticket ticket = new Ticket(lane, null);
+        synchronized (this) {
+            lane.enqueue(ticket);
+            schedule();
+            try {
+                while (!ticket.started)
+                    wait();
+            } catch (InterruptedException e) {
+                if (ticket.started)
+                    release(lane);
+                else
+                    lane.waiting.remove(ticket);
+                Thread.currentThread().interrupt();
+                throw new MailgunException("Interrupted waiting on mail lane " + lane.name, e);
+            }
+        }
+    }
+
+    synchronized void release(Lane lane) {
+        lane.inFlight--;
+        inFlight--;
+        schedule();
+        if (closed && inFlight == 0)
+            threads.shutdown();
+    }
+
+    /**
+     * Returns an executor queueing the requests on a lane.
+     */
+    Executor executor(final Lane lane) {
+        return task -> {
+            synchronized (this) {
+                if (closed)
+                    throw new RejectedExecutionException("Mail lanes " + name + " are closed");
+                if (lane.waitingAsync == queueCapacity) {
+                    lane.rejected++;
+                    throw new RejectedExecutionException("Mail lane " + lane.name + " is full");
+                }
+                lane.enqueue(new Ticket(lane, task));
+                schedule();
+            }
+        };
+    }
+
+    /**
+     * Starts the waiting sends while there are free requests, picking the
+     * lane with the lowest virtual start time among the ones allowed to
+     * start one.
+     */
+    private void schedule() {
+        while (inFlight < concurrency) {
+            Lane next = null;
+            for (Lane lane : lanes.values()) {
+                if (!lane.waiting.isEmpty() && mayStart(lane)
+                    && (next == null || lane.start < next.start))
+                    next = lane;
+            }
+            if (next == null)
+                return;
+            start(next.waiting.poll());
+        }
+    }
+
+    /**
+     * Tells if a lane can start a request without using the free requests
+     * reserved to the other lanes.
+     */
+    private boolean mayStart(Lane lane) {
+        int free = concurrency - inFlight;
+        int reservedForOthers = 0;
+        for (Lane other : lanes.values()) {
+            if (other != lane)
+                reservedForOthers += Math.max(0, other.reserved - other.inFlight);
+        }
+        return free > reservedForOthers;
+    }
+
+    private void start(final Ticket ticket) {
+        final Lane lane = ticket.lane;
+        virtualTime = lane.start;
+        lane.start += 1.0 / lane.weight;
+        lane.inFlight++;
+        inFlight++;
+        ticket.started = true;
+        if (ticket.task == null) {
+            notifyAll();
+            return;
+        }
+        lane.waitingAsync--;
+        threads.execute(() -> {
+            try {
+                ticket.task.run();
+            } finally {
+                release(lane);
+            }
+        });
+    }
+
+    private Lane get(String lane) {
+        Lane found = lanes.get(lane);
+        if (found == null)
+            throw new IllegalArgumentException("Mail lane not found: " + lane);
+        return found;
+    }
+
+    final class Lane {
+        private final String name;
+        private final int weight;
+        private final int reserved;
+        private final ArrayDeque<Ticket> waiting = new ArrayDeque<>();
+        private int waitingAsync;
+        private int inFlight;
+        private long rejected;
+        private double start;
+
+        private Lane(String name, int weight, int reserved) {
+            this.name = name;
+            this.weight = weight;
+            this.reserved = reserved;
+        }
+
+        private void enqueue(Ticket ticket) {
+            // an idle lane doesn't keep credit for the time it was idle
+            if (waiting.isEmpty())
+                start = Math.max(start, virtualTime);
+            waiting.add(ticket);
+            if (ticket.task != null)
+                waitingAsync++;
+        }
+    }
+
+    private static final class Ticket {
+        private final Lane lane;
+        private final Runnable task;
+        private boolean started;
+
+        private Ticket(Lane lane, Runnable task) {
+            this.lane = lane;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.sargue.mailgun;
+
+/**
+ * A listener for the timings and outcomes of sending mails.
+ * <p>
+ * One implementation can be registered on a {@link Configuration}. All the
+ * methods do nothing by default, so implementations only override what
+ * they need. They are called on the sending threads, including the ones of
+ * the asynchronous sends, so they must be thread safe and fast. See
+ * {@link MailMetricsRecorder} for a ready to use implementation.
+ * <p>
+ * When no listener is registered nothing is measured at all.
+ */
+public interface MailMetrics {
+    /**
+     * The phases of building and sending a mail.
+     */
+    enum Phase {
+        /**
+         * Building the {@link Mail}, on {@link MailBuilder#build()}.
+         */
+        BUILD,
+        /**
+         * Encoding the request body. It happens once per mail, as the
+         * encoded body is reused, and it is not reported for bodies
+         * streamed from disk as they are encoded while being sent.
+         */
+        ENCODE,
+        /**
+         * Waiting on the queue of the I/O executor or the lanes, only
+         * reported for asynchronous sends run on an executor.
+         */
+        QUEUE,
+        /**
+         * From the start of the request until the response status is
+         * received. It includes getting a connection, writing the request
+         * and the latency of the service.
+         */
+        REQUEST,
+        /**
+         * Reading the response body and building the {@link Response}.
+         */
+        RESPONSE,
+        /**
+         * The whole send, from the start of the request to the
+         * {@link Response}, or to the failure. It includes the encoding
+         * and the wait on a queue.
+         */
+        SEND
+    }
+
+    /**
+     * Reports the duration of a phase.
+     *
+     * @param domain the domain of the mail
+     * @param phase  the phase
+     * @param nanos  the duration in nanoseconds
+     */
+    default void phase(String domain, Phase phase, long nanos) {
+        // no-op
+    }
+
+    /**
+     * Reports the size of a request body.
+     *
+     * @param domain the domain of the mail
+     * @param bytes  the size of the request body
+     */
+    default void requestBytes(String domain, long bytes) {
+        // no-op
+    }
+
+    /**
+     * Reports the size of a response body.
+     *
+     * @param domain the domain of the mail
+     * @param bytes  the size of the response body
+     */
+    default void responseBytes(String domain, long bytes) {
+        // no-op
+    }
+
+    /**
+     * A send is starting. It is followed by a call to
+     * {@link #sendCompleted(String, Response.ResponseType)} or
+     * {@link #sendFailed(String, Throwable)}, so the difference is the
+     * number of sends in flight.
+     *
+     * @param domain the domain of the mail
+     */
+    default void sendStarted(String domain) {
+        // no-op
+    }
+
+    /**
+     * A send got a response from the service.
+     *
+     * @param domain the domain of the mail
+     * @param type   the type of the response
+     */
+    default void sendCompleted(String domain, Response.ResponseType type) {
+        // no-op
+    }
+
+    /**
+     * A send failed without a response, for instance on a connection error.
+     *
+     * @param domain the domain of the mail
+     * @param error  the cause of the failure
+     */
+    default void sendFailed(String domain, Throwable error) {
+        // no-op
+    }
+}
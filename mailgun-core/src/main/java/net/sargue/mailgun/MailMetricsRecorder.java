@@ -0,0 +1,300 @@
+package net.sargue.mailgun;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free {@link MailMetrics} implementation that keeps counters and
+ * latency histograms in memory.
+ * <p>
+ * Counters are kept per domain and in total. Latencies are recorded on a
+ * log-linear histogram per phase, with a relative error of about 3%, and
+ * reported as percentiles through a {@link Snapshot}. To keep the memory
+ * per domain small latencies are only tracked in total.
+ * <p>
+ * Register it on the configuration and take snapshots whenever needed:
+ * <pre>{@code
+ * MailMetricsRecorder metrics = new MailMetricsRecorder();
+ * configuration.registerMailMetrics(metrics);
+ * ...
+ * long p99 = metrics.snapshot().latency(Phase.SEND).p99();
+ * }</pre>
+ */
+public final class MailMetricsRecorder implements MailMetrics {
+    private final Counters total = new Counters();
+    private final Map<String, Counters> domains = new ConcurrentHashMap<>();
+    private final LogHistogram[] latencies = new LogHistogram[Phase.values().length];
+
+    /**
+     * Creates an empty recorder.
+     */
+    public MailMetricsRecorder() {
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = new LogHistogram();
+    }
+
+    private static final class Counters {
+        private final LongAdder[] responses =
+            new LongAdder[Response.ResponseType.values().length];
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+
+        Counters() {
+            for (int i = 0; i < responses.length; i++)
+                responses[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void phase(String domain, Phase phase, long nanos) {
+        latencies[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void requestBytes(String domain, long bytes) {
+        total.requestBytes.add(bytes);
+        counters(domain).requestBytes.add(bytes);
+    }
+
+    @Override
+    public void responseBytes(String domain, long bytes) {
+        total.responseBytes.add(bytes);
+        counters(domain).responseBytes.add(bytes);
+    }
+
+    @Override
+    public void sendStarted(String domain) {
+        total.inFlight.increment();
+        counters(domain).inFlight.increment();
+    }
+
+    @Override
+    public void sendCompleted(String domain, Response.ResponseType type) {
+        Counters counters = counters(domain);
+        total.inFlight.decrement();
+        counters.inFlight.decrement();
+        total.responses[type.ordinal()].increment();
+        counters.responses[type.ordinal()].increment();
+    }
+
+    @Override
+    public void sendFailed(String domain, Throwable error) {
+        Counters counters = counters(domain);
+        total.inFlight.decrement();
+        counters.inFlight.decrement();
+        total.failures.increment();
+        counters.failures.increment();
+    }
+
+    private Counters counters(String domain) {
+        Counters counters = domains.get(domain);
+        return counters != null
+               ? counters : domains.computeIfAbsent(domain, d -> new Counters());
+    }
+
+    /**
+     * Returns the domains seen so far.
+     *
+     * @return the domains seen so far
+     */
+    public Set<String> domains() {
+        return Collections.unmodifiableSet(domains.keySet());
+    }
+
+    /**
+     * Takes a snapshot of the totals, including the latencies.
+     *
+     * @return a snapshot of the totals
+     */
+    public Snapshot snapshot() {
+        Map<Phase, Latency> snapshot = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values())
+            snapshot.put(phase, new Latency(latencies[phase.ordinal()].counts()));
+        return new Snapshot(total, snapshot);
+    }
+
+    /**
+     * Takes a snapshot of the counters of a domain. Latencies are not tracked
+     * per domain, so they are empty.
+     *
+     * @param domain the domain
+     * @return a snapshot of the counters of the domain
+     */
+    public Snapshot snapshot(String domain) {
+        Counters counters = domains.get(domain);
+        return new Snapshot(counters == null ? new Counters() : counters,
+                            Collections.emptyMap());
+    }
+
+    /**
+     * A point in time view of the metrics.
+     */
+    public static final class Snapshot {
+        private final long[] responses;
+        private final long failures;
+        private final long inFlight;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final Map<Phase, Latency> latencies;
+
+        private Snapshot(Counters counters, Map<Phase, Latency> latencies) {
+            responses = new long[counters.responses.length];
+            for (int i = 0; i < responses.length; i++)
+                responses[i] = counters.responses[i].sum();
+            failures = counters.failures.sum();
+            inFlight = counters.inFlight.sum();
+            requestBytes = counters.requestBytes.sum();
+            responseBytes = counters.responseBytes.sum();
+            this.latencies = latencies;
+        }
+
+        /**
+         * Returns the number of responses of a type.
+         *
+         * @param type the type of response
+         * @return the number of responses of that type
+         */
+        public long responses(Response.ResponseType type) {
+            return responses[type.ordinal()];
+        }
+
+        /**
+         * Returns the number of sends failed without a response.
+         *
+         * @return the number of failed sends
+         */
+        public long failures() {
+            return failures;
+        }
+
+        /**
+         * Returns the number of sends in flight.
+         *
+         * @return the number of sends in flight
+         */
+        public long inFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Returns the total size of the request bodies.
+         *
+         * @return the total size of the request bodies, in bytes
+         */
+        public long requestBytes() {
+            return requestBytes;
+        }
+
+        /**
+         * Returns the total size of the response bodies.
+         *
+         * @return the total size of the response bodies, in bytes
+         */
+        public long responseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * Returns the latency of a phase.
+         *
+         * @param phase the phase
+         * @return the latency of the phase, empty if not tracked
+         */
+        public Latency latency(Phase phase) {
+            Latency latency = latencies.get(phase);
+            return latency == null ? Latency.EMPTY : latency;
+        }
+    }
+
+    /**
+     * The distribution of the durations of a phase, in nanoseconds.
+     */
+    public static final class Latency {
+        private static final Latency EMPTY = new Latency(new long[0]);
+
+        private final long[] counts;
+        private final long count;
+
+        private Latency(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long c : counts)
+                sum += c;
+            this.count = sum;
+        }
+
+        /**
+         * Returns the number of durations recorded.
+         *
+         * @return the number of durations recorded
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the duration below which the given percentage of the
+         * durations fall.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the duration in nanoseconds, or 0 if there are none
+         */
+        public long percentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return LogHistogram.value(i);
+            }
+            return max();
+        }
+
+        /**
+         * Returns the median duration.
+         *
+         * @return the median duration in nanoseconds
+         */
+        public long p50() {
+            return percentile(50);
+        }
+
+        /**
+         * Returns the 99th percentile duration.
+         *
+         * @return the 99th percentile duration in nanoseconds
+         */
+        public long p99() {
+            return percentile(99);
+        }
+
+        /**
+         * Returns the 99.9th percentile duration.
+         *
+         * @return the 99.9th percentile duration in nanoseconds
+         */
+        public long p999() {
+            return percentile(99.9);
+        }
+
+        /**
+         * Returns the longest duration.
+         *
+         * @return the longest duration in nanoseconds, or 0 if there are none
+         */
+        public long max() {
+            for (int i = counts.length - 1; i >= 0; i--)
+                if (counts[i] > 0)
+                    return LogHistogram.value(i);
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.sargue.mailgun;
+
+import java.util.List;
+
+class MailMultipart extends Mail {
+    private final MultipartBody body;
+
+    MailMultipart(Configuration configuration, MultipartBody body, String lane) {
+        super(configuration, lane);
+        this.body = body;
+    }
+
+    @Override
+    public String getFirstValue(String param) {
+        return body.getFirst(param);
+    }
+
+    @Override
+    public List<String> getValues(String param) {
+        return body.getAll(param);
+    }
+
+    @Override
+    RequestBody body() {
+        return body;
+    }
+
+    @Override
+    Mail variant(Parameters overlay, List<MultipartBody.Part> parts, String lane) {
+        return new MailMultipart(configuration(),
+                                 MultipartBody.variant(body, overlay, parts),
+                                 lane == null ? lane() : lane);
+    }
+}
@@ -0,0 +1,319 @@
+package net.sargue.mailgun;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends mails at a given time, see {@link Mail#sendAt(Instant)} and
+ * {@link Configuration#mailScheduler(MailScheduler)}.
+ * <p>
+ * Mailgun only delivers a few days ahead, this scheduler holds the mails
+ * locally for as long as needed, months if it must. When a mail is due it
+ * is sent with {@link Mail#sendAsync()}, so the send filter, the callback
+ * factory and the lanes of its configuration apply then.
+ * <p>
+ * The pending mails are kept on a hierarchical timing wheel: scheduling and
+ * sending a mail cost the same with a few or with millions pending. Times
+ * are rounded up to the tick, usually a second, and a single thread sends
+ * the due mails. It sleeps until the next mail is due, not every tick.
+ * <p>
+ * The pending mails are lost when the scheduler is closed unless it is
+ * backed by a file. A durable scheduler stores the parameters of every mail
+ * scheduled, so it only accepts mails without attachments, and reads them
+ * back when created again on the same file. Mails due while it was down are
+ * sent right away. A mail is marked as sent after handing it to
+ * {@code sendAsync}, so a crash in between sends it again on restart, and
+ * a mail that {@code sendAsync} rejects is kept on the file to be sent again
+ * on restart:
+ * <pre>{@code
+ * MailScheduler scheduler = MailScheduler.create(
+ *     1, TimeUnit.SECONDS, new File("scheduled-mails.log"),
+ *     domain -> configuration);
+ * configuration.mailScheduler(scheduler);
+ *
+ * Mail.using(configuration)
+ *     .to("marty@mcfly.com")
+ *     .subject("Your subscription ends in a week")
+ *     ...
+ *     .build()
+ *     .sendAt(renewal.minus(7, ChronoUnit.DAYS));
+ * }</pre>
+ * The mails that can't be handed to {@code sendAsync}, and the ones that
+ * can't be marked as sent on the file, are counted, see
+ * {@link #failures()}, and given to the
+ * {@link #failureListener(BiConsumer) failure listener}.
+ * <p>
+ * This class is thread safe.
+ */
+public final class MailScheduler implements AutoCloseable {
+    private final long tickMillis;
+    private final TimingWheel<ScheduleLog.Scheduled> wheel;
+    private final ScheduleLog log;
+    private final LongSupplier clock;
+    private final Thread thread;
+    private long lastId;
+    // rejected by sendAsync, kept on the file for the next restart
+    private final List<ScheduleLog.Scheduled> unsent = new ArrayList<>();
+    // the tick the thread sleeps until, a sooner mail must wake it up
+    private long wakeTick = Long.MAX_VALUE;
+    private long failures;
+    private BiConsumer<List<Mail>, RuntimeException> failureListener;
+    private boolean closed;
+
+    private MailScheduler(long tick, TimeUnit unit, ScheduleLog log, LongSupplier clock) {
+        this.tickMillis = unit.toMillis(tick);
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("The tick must be at least a millisecond");
+        this.wheel = new TimingWheel<>(clock.getAsLong() / tickMillis);
+        this.log = log;
+        this.clock = clock;
+        this.thread = new Thread(this::run, "mailgun-scheduler");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Creates a scheduler keeping the pending mails in memory.
+     *
+     * @param tick the resolution of the send times
+     * @param unit the unit of the tick
+     * @return a new scheduler, already running
+     */
+    public static MailScheduler create(long tick, TimeUnit unit) {
+        return create(tick, unit, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a scheduler in memory on the given clock, in milliseconds
+     * since the epoch, for the tests. The thread still sleeps on the system
+     * clock, as long as the given clock says.
+     */
+    static MailScheduler create(long tick, TimeUnit unit, LongSupplier clock) {
+        MailScheduler scheduler = new MailScheduler(tick, unit, null, clock);
+        scheduler.thread.start();
+        return scheduler;
+    }
+
+    /**
+     * Creates a scheduler keeping the pending mails in a file, and reads the
+     * ones already there. Each mail is built again on the configuration of
+     * its domain.
+     *
+     * @param tick           the resolution of the send times
+     * @param unit           the unit of the tick
+     * @param file           the file with the pending mails
+     * @param configurations gives the configuration of a domain
+     * @return a new scheduler, already running
+     * @throws MailgunException if the file can't be read or written
+     */
+    public static MailScheduler create(long tick, TimeUnit unit, File file,
+                                       Function<String, Configuration> configurations)
+    {
+        return create(tick, unit, file, configurations, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a scheduler backed by a file on the given clock, for the
+     * tests.
+     */
+    static MailScheduler create(long tick, TimeUnit unit, File file,
+                                Function<String, Configuration> configurations,
+                                LongSupplier clock)
+    {
+        MailScheduler scheduler = new MailScheduler(tick, unit, new ScheduleLog(file), clock);
+        try {
+            scheduler.load(configurations);
+        } catch (IOException e) {
+            throw new MailgunException("Problem reading the scheduled mails of " + file, e);
+        }
+        scheduler.thread.start();
+        return scheduler;
+    }
+
+    private void load(Function<String, Configuration> configurations) throws IOException {
+        List<ScheduleLog.Scheduled> pending = new ArrayList<>(log.read(configurations));
+        for (ScheduleLog.Scheduled scheduled : pending) {
+            lastId = Math.max(lastId, scheduled.id);
+            wheel.add(new TimingWheel.Entry<>(deadline(scheduled.time), scheduled));
+        }
+        log.rewrite(pending);
+    }
+
+    /**
+     * Sets a listener for the failures: a mail that couldn't be sent, or
+     * the mails that couldn't be marked as sent on the file, which are sent
+     * again after a restart. It runs on the thread of the scheduler and
+     * must not throw.
+     *
+     * @param listener gets the mails and the error
+     * @return this scheduler
+     */
+    public synchronized MailScheduler failureListener(
+        BiConsumer<List<Mail>, RuntimeException> listener)
+    {
+        this.failureListener = listener;
+        return this;
+    }
+
+    /**
+     * Returns the number of failures, see
+     * {@link #failureListener(BiConsumer)}.
+     *
+     * @return the number of failures
+     */
+    public synchronized long failures() {
+        return failures;
+    }
+
+    /**
+     * Returns the number of mails waiting for their time.
+     *
+     * @return the number of pending mails
+     */
+    public synchronized int pending() {
+        return wheel.size();
+    }
+
+    /**
+     * Stops sending mails, waiting for the due mails being sent. The pending
+     * ones are lost unless the scheduler is backed by a file.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (log != null) {
+            synchronized (this) {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    // every record is flushed already
+                }
+            }
+        }
+    }
+
+    void schedule(Mail mail, Instant time) {
+        long millis = time.toEpochMilli();
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The scheduler has been closed");
+            ScheduleLog.Scheduled scheduled = new ScheduleLog.Scheduled(++lastId, millis, mail);
+            if (log != null) {
+                try {
+                    log.added(scheduled);
+                } catch (IOException e) {
+                    throw new MailgunException("Problem writing the scheduled mail", e);
+                }
+            }
+            if (wheel.size() == 0) {
+                // an empty wheel is not advanced, catch up with the clock
+                wheel.advance(clock.getAsLong() / tickMillis, ignored -> { });
+            }
+            long deadline = deadline(millis);
+            wheel.add(new TimingWheel.Entry<>(deadline, scheduled));
+            if (deadline < wakeTick)
+                notifyAll();
+        }
+    }
+
+    private long deadline(long millis) {
+        return millis / tickMillis + (millis % tickMillis == 0 ? 0 : 1);
+    }
+
+    private void run() {
+        List<ScheduleLog.Scheduled> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed && due.isEmpty()) {
+                        long millis = clock.getAsLong();
+                        wheel.advance(millis / tickMillis, due::add);
+                        if (due.isEmpty()) {
+                            wakeTick = wheel.nextTick();
+                            wait(wakeTick == Long.MAX_VALUE
+                                 ? 0
+                                 : Math.max(1, wakeTick * tickMillis - millis));
+                        }
+                    }
+                    wakeTick = Long.MAX_VALUE;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // the mails already taken from the wheel are sent before closing
+                if (closed && due.isEmpty())
+                    return;
+            }
+            List<ScheduleLog.Scheduled> rejected = null;
+            for (ScheduleLog.Scheduled scheduled : due) {
+                try {
+                    scheduled.mail.sendAsync();
+                } catch (RuntimeException e) {
+                    // a failing mail doesn't stop the others
+                    if (rejected == null)
+                        rejected = new ArrayList<>();
+                    rejected.add(scheduled);
+                    failed(Collections.singletonList(scheduled.mail), e);
+                }
+            }
+            if (log != null) {
+                if (rejected != null)
+                    due.removeAll(rejected);
+                sent(due, rejected);
+            }
+            due.clear();
+        }
+    }
+
+    private void sent(List<ScheduleLog.Scheduled> due, List<ScheduleLog.Scheduled> rejected) {
+        try {
+            synchronized (this) {
+                if (rejected != null)
+                    unsent.addAll(rejected);
+                for (ScheduleLog.Scheduled scheduled : due)
+                    log.sent(scheduled.id);
+                if (log.compactable(wheel.size() + unsent.size())) {
+                    List<ScheduleLog.Scheduled> pending =
+                        new ArrayList<>(wheel.size() + unsent.size());
+                    wheel.forEach(entry -> pending.add(entry.value));
+                    pending.addAll(unsent);
+                    log.rewrite(pending);
+                }
+            }
+        } catch (IOException e) {
+            List<Mail> mails = new ArrayList<>(due.size());
+            for (ScheduleLog.Scheduled scheduled : due)
+                mails.add(scheduled.mail);
+            failed(mails, new MailgunException(
+                "Problem marking the scheduled mails as sent, they are sent again on restart", e));
+        }
+    }
+
+    private void failed(List<Mail> mails, RuntimeException error) {
+        BiConsumer<List<Mail>, RuntimeException> listener;
+        synchronized (this) {
+            failures++;
+            listener = failureListener;
+        }
+        if (listener != null)
+            listener.accept(mails, error);
+    }
+}
@@ -0,0 +1,38 @@
+package net.sargue.mailgun;
+
+/**
+ * Flight recorder event for a send, see {@link Mail#send()}.
+ * <p>
+ * This is the Java 8 version, which does nothing. The actual event is in
+ * the Java 11 section of the multi-release jar.
+ */
+final class MailSendEvent {
+    String domain;
+    int responseCode;
+    long requestBytes;
+    long responseBytes;
+    long encodeTime;
+    long queueTime;
+    long requestTime;
+    long responseTime;
+    String error;
+
+    void begin() {
+        // no-op
+    }
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return false;
+    }
+
+    boolean shouldCommit() {
+        return false;
+    }
+
+    void commit() {
+        // no-op
+    }
+}
@@ -0,0 +1,65 @@
+package net.sargue.mailgun;
+
+/**
+ * Hooks around the sending of a mail, for logging, tracing, auditing and
+ * such.
+ * <p>
+ * Interceptors are registered in order on a {@link Configuration} and apply
+ * to all the send methods of {@link Mail}, synchronous or not. For every
+ * send accepted by the {@link MailSendFilter}, each interceptor sees:
+ * <ol>
+ * <li>{@link #beforeSend(Mail)}, before the request body is encoded</li>
+ * <li>{@link #encoded(Mail, long)}, with the size of the request body</li>
+ * <li>either {@link #completed(Mail, Response)} or
+ * {@link #failed(Mail, Throwable)}</li>
+ * </ol>
+ * The before hooks run in registration order and the after hooks in reverse
+ * order, so the first interceptor wraps all the others.
+ * <p>
+ * All the methods do nothing by default. The before hooks run on the
+ * calling thread. On asynchronous sends the after hooks run on the thread
+ * completing the request, before the callback. Interceptors should not
+ * throw, an exception on a before hook aborts the send.
+ */
+public interface MailSendInterceptor {
+    /**
+     * The mail is about to be sent.
+     *
+     * @param mail the mail
+     */
+    default void beforeSend(Mail mail) {
+        // no-op
+    }
+
+    /**
+     * The request body is ready to be sent.
+     *
+     * @param mail  the mail
+     * @param bytes the size of the request body, or -1 if it is streamed
+     *              from disk and not known until written
+     */
+    default void encoded(Mail mail, long bytes) {
+        // no-op
+    }
+
+    /**
+     * The service answered, successfully or not.
+     *
+     * @param mail     the mail
+     * @param response the response of the service
+     */
+    default void completed(Mail mail, Response response) {
+        // no-op
+    }
+
+    /**
+     * The request failed without an answer, because of a connection error
+     * for example.
+     *
+     * @param mail  the mail
+     * @param error the cause of the failure
+     */
+    default void failed(Mail mail, Throwable error) {
+        // no-op
+    }
+}
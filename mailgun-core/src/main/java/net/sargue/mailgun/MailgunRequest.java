@@ -0,0 +1,62 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.spi.HttpRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request to the Mailgun API with a mail body, handed to the connector.
+ */
+final class MailgunRequest implements HttpRequest {
+    private final String url;
+    private final String authorization;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final RequestBody body;
+
+    MailgunRequest(String url, String authorization,
+                   int connectTimeout, int readTimeout, RequestBody body)
+    {
+        this.url = url;
+        this.authorization = authorization;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.body = body;
+    }
+
+    @Override
+    public String url() {
+        return url;
+    }
+
+    @Override
+    public String authorization() {
+        return authorization;
+    }
+
+    @Override
+    public String contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return body.cacheable() ? body.bytes().length : -1;
+    }
+
+    @Override
+    public int connectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public int readTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        body.writeTo(out);
+    }
+}
@@ -0,0 +1,122 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpConnectorProvider;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The HTTP client used to talk to the Mailgun service.
+ * <p>
+ * Every {@link Configuration} has its own transport by default. When sending
+ * for many domains or accounts create one transport and share it among all
+ * the configurations, see {@link Configuration#Configuration(MailgunTransport)}.
+ * They keep their own credentials, domain and timeouts, which are sent on
+ * every request, while the client, its providers and its connections are
+ * shared.
+ * <p>
+ * The requests are made by a connector, found on the classpath: the
+ * {@code mailgun-jersey} module uses a JAX-RS client and the
+ * {@code mailgun-jdkhttp} module the HTTP client of the JDK. If both are
+ * present Jersey is used unless the connector is chosen by name.
+ * <p>
+ * The connector is created on the first send, so creating a transport is
+ * cheap and loads nothing of the HTTP client. See
+ * {@link Configuration#warmUp()} to prepare it ahead of time.
+ * <p>
+ * This class is thread safe. Close it when no configuration uses it anymore.
+ */
+public final class MailgunTransport implements AutoCloseable {
+    private final Object lock = new Object();
+    private final String name;
+    private volatile HttpConnector connector;
+    private boolean closed;
+
+    /**
+     * Creates a new transport with the connector found on the classpath.
+     */
+    public MailgunTransport() {
+        this.name = null;
+    }
+
+    /**
+     * Creates a new transport with the given connector, when there are
+     * several on the classpath.
+     *
+     * @param connector the name of the connector, {@code "jersey"} or
+     *                  {@code "jdkhttp"}
+     */
+    public MailgunTransport(String connector) {
+        this.name = Objects.requireNonNull(connector);
+    }
+
+    /**
+     * Closes the underlying connector. Don't use this transport, nor any
+     * configuration sharing it, after closing it.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (connector != null)
+                connector.close();
+        }
+    }
+
+    HttpConnector connector() {
+        HttpConnector result = connector;
+        if (result == null) {
+            synchronized (lock) {
+                if (closed)
+                    throw new IllegalStateException("The transport has been closed");
+                result = connector;
+                if (result == null) {
+                    result = provider().create();
+                    connector = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private HttpConnectorProvider provider() {
+        HttpConnectorProvider found = null;
+        for (HttpConnectorProvider provider
+                : ServiceLoader.load(HttpConnectorProvider.class,
+                                     MailgunTransport.class.getClassLoader()))
+        {
+            if (name == null ? found == null || provider.priority() > found.priority()
+                             : name.equals(provider.name()))
+                found = provider;
+        }
+        if (found == null)
+            throw new MailgunException(
+                name == null
+                ? "No HTTP connector found, add mailgun-jersey or mailgun-jdkhttp to the classpath"
+                : "HTTP connector not found: " + name);
+        return found;
+    }
+
+    /**
+     * Creates the connector and makes a request to the given URL on a
+     * background thread. The first request initializes the client runtime
+     * and leaves a connection open for reuse.
+     */
+    CompletableFuture<Void> warmUp(final String url) {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                connector().warmUp(url);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }, "mailgun-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+}
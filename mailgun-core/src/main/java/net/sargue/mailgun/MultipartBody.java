@@ -0,0 +1,291 @@
+package net.sargue.mailgun;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The body of a multipart mail.
+ * <p>
+ * The text parameters are not copied into body parts. They stay on the
+ * {@link Parameters} of the builder and are encoded as parts, straight into
+ * the request stream, when the body is written. Attachments are kept as
+ * {@link Part} descriptors and read only at that moment too.
+ * <p>
+ * The encoded body is kept in memory unless some part is reopened from its
+ * source on every write, like files or streams spooled to disk.
+ */
+final class MultipartBody extends RequestBody {
+    private final Parameters parameters;
+    private final Parameters defaults;
+    private final List<Part> parts;
+    // the first parts belong to the prototype, if any
+    private final int shared;
+    private final String contentType;
+    private final String boundary;
+
+    /**
+     * Source of the content of a part, opened each time the body is written
+     * unless the encoded body is kept in memory.
+     */
+    interface Source {
+        InputStream open() throws IOException;
+
+        /**
+         * Whether the content is in memory. Otherwise the source is opened
+         * on every write instead of keeping the encoded body in memory.
+         */
+        default boolean inMemory() {
+            return true;
+        }
+
+        /**
+         * Releases what the source keeps, like a spooled copy of a stream.
+         */
+        default void close() {
+            // nothing kept
+        }
+    }
+
+    /**
+     * Returns a source reading a file on every open.
+     */
+    static Source of(File file) {
+        return new Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public boolean inMemory() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * A part with binary content: an attachment or a streamed body.
+     */
+    static final class Part {
+        private final String name;
+        private final String filename;
+        private final String mediaType;
+        private final Source source;
+
+        Part(String name, String filename, String mediaType, Source source) {
+            this.name = name;
+            this.filename = filename;
+            this.mediaType = mediaType;
+            this.source = source;
+        }
+    }
+
+    private MultipartBody(Parameters parameters, Parameters defaults,
+                          List<Part> parts, int shared)
+    {
+        this.parameters = parameters;
+        this.defaults = defaults;
+        this.parts = parts;
+        this.shared = shared;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.boundary = "Boundary_" + Long.toHexString(random.nextLong())
+                        + Long.toHexString(random.nextLong());
+        this.contentType = "multipart/form-data;boundary=" + boundary;
+    }
+
+    /**
+     * Creates the body of a mail from a snapshot of the given parameters and
+     * parts, resolving the default parameters not present on them.
+     */
+    static MultipartBody build(Configuration configuration,
+                               Parameters parameters, List<Part> parts)
+    {
+        Parameters defaults = new Parameters(2);
+        Map<String, List<String>> def = configuration.defaultParameters();
+        for (Map.Entry<String, List<String>> entry : def.entrySet())
+            if (!parameters.contains(entry.getKey()) && !isPart(parts, entry.getKey()))
+                for (String value : entry.getValue())
+                    defaults.add(entry.getKey(), value);
+        return new MultipartBody(parameters.snapshot(), defaults,
+                                 Collections.unmodifiableList(new ArrayList<>(parts)), 0);
+    }
+
+    /**
+     * Creates a variant of a body replacing the parameters present on the
+     * overlay and adding some parts. The parts of the prototype are shared.
+     */
+    static MultipartBody variant(MultipartBody prototype, Parameters overlay,
+                                 List<Part> parts)
+    {
+        List<Part> allParts = prototype.parts;
+        if (!parts.isEmpty()) {
+            allParts = new ArrayList<>(prototype.parts);
+            allParts.addAll(parts);
+            allParts = Collections.unmodifiableList(allParts);
+        }
+        return new MultipartBody(Parameters.overlay(prototype.parameters, overlay),
+                                 prototype.defaults.except(overlay), allParts,
+                                 prototype.parts.size());
+    }
+
+    /**
+     * Creates the multipart variant of a form body, which already has the
+     * default parameters resolved.
+     */
+    static MultipartBody variant(FormBody prototype, Parameters overlay,
+                                 List<Part> parts)
+    {
+        return new MultipartBody(Parameters.overlay(prototype.parameters(), overlay),
+                                 new Parameters(0),
+                                 Collections.unmodifiableList(new ArrayList<>(parts)), 0);
+    }
+
+    @Override
+    String contentType() {
+        return contentType;
+    }
+
+    @Override
+    boolean cacheable() {
+        for (Part part : parts)
+            if (!part.source.inMemory())
+                return false;
+        return true;
+    }
+
+    @Override
+    Parameters parameters() {
+        return Parameters.overlay(defaults, parameters);
+    }
+
+    /**
+     * Closes the sources of the parts added by this body, not the ones
+     * shared with its prototype.
+     */
+    @Override
+    void close() {
+        for (int i = shared; i < parts.size(); i++)
+            parts.get(i).source.close();
+    }
+
+    @Override
+    String getFirst(String name) {
+        String value = parameters.getFirst(name);
+        if (value != null)
+            return value;
+        checkNotPart(name);
+        return defaults.getFirst(name);
+    }
+
+    @Override
+    List<String> getAll(String name) {
+        checkNotPart(name);
+        return parameters.contains(name) ? parameters.getAll(name)
+                                         : defaults.getAll(name);
+    }
+
+    private void checkNotPart(String name) {
+        if (isPart(parts, name))
+            throw new IllegalStateException(
+                "Parameter " + name + " is not a simple one");
+    }
+
+    private static boolean isPart(List<Part> parts, String name) {
+        for (Part part : parts)
+            if (part.name.equals(name))
+                return true;
+        return false;
+    }
+
+    @Override
+    void encode(OutputStream entityStream) throws IOException {
+        OutputStream out = new Unflushed(entityStream);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writeFields(writer, parameters);
+        writeFields(writer, defaults);
+        byte[] buffer = parts.isEmpty() ? null : new byte[8192];
+        for (Part part : parts) {
+            writeHeader(writer, part.name, part.filename, part.mediaType);
+            writer.flush();
+            try (InputStream in = part.source.open()) {
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+            writer.write("\r\n");
+        }
+        writer.write("--");
+        writer.write(boundary);
+        writer.write("--\r\n");
+        writer.flush();
+    }
+
+    private void writeFields(Writer writer, Parameters fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            writeHeader(writer, fields.name(i), null,
+                        "text/plain; charset=UTF-8");
+            writeValue(writer, fields.value(i));
+            writer.write("\r\n");
+        }
+    }
+
+    private static void writeValue(Writer writer, String value) throws IOException {
+        // in chunks, the writer copies the whole string otherwise
+        for (int i = 0; i < value.length(); i += 4096)
+            writer.write(value, i, Math.min(4096, value.length() - i));
+    }
+
+    private void writeHeader(Writer writer, String name, String filename,
+                             String mediaType) throws IOException
+    {
+        writer.write("--");
+        writer.write(boundary);
+        writer.write("\r\nContent-Disposition: form-data; name=\"");
+        writer.write(quoted(name));
+        if (filename != null) {
+            writer.write("\"; filename=\"");
+            writer.write(quoted(filename));
+        }
+        writer.write("\"\r\nContent-Type: ");
+        writer.write(mediaType);
+        writer.write("\r\n\r\n");
+    }
+
+    /**
+     * Escapes a header parameter the way browsers do for form data.
+     */
+    private static String quoted(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    /**
+     * Keeps the intermediate flushes from reaching the request stream.
+     */
+    private static final class Unflushed extends FilterOutputStream {
+        Unflushed(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            // the request stream is flushed by the runtime
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.content.Body;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.sargue.mailgun.MailMetrics.Phase.BUILD;
+
+/**
+ * A mutable builder for a MIME multipart message. It has the capability
+ * to handle attachments.
+ * <p>
+ * It is obtained from the main {@link MailBuilder} through the method
+ * {@code multipart()}.
+ */
+@SuppressWarnings("unused")
+public class MultipartBuilder {
+    private static final String ATTACHMENT_NAME = "attachment";
+    private static final String APPLICATION_OCTET_STREAM = "application/octet-stream";
+
+    private final Configuration configuration;
+    private final Mail prototype;
+    private final Parameters parameters;
+    private final String lane;
+    private final List<MultipartBody.Part> parts = new ArrayList<>(4);
+
+    MultipartBuilder(MailBuilder mailBuilder) {
+        configuration = mailBuilder.configuration();
+        prototype = mailBuilder.prototype();
+        lane = mailBuilder.lane();
+        // shared, the text parameters become parts when the body is written
+        parameters = mailBuilder.parameters();
+
+        if (mailBuilder.streamedContent() != null)
+            content(mailBuilder.streamedContent());
+    }
+
+    /**
+     * Sets the content of the message, both the plain text and HTML version.
+     * <p>
+     * Both versions are streamed into the request, so a content stored on
+     * disk (see {@link Body#inMemory()}) is never loaded in memory.
+     *
+     * @param body the content of the message
+     * @return this builder
+     */
+    public MultipartBuilder content(Body body) {
+        part("text", null, "text/plain; charset=UTF-8",
+             source(body::textStream, body.inMemory()));
+        return part("html", null, "text/html; charset=UTF-8",
+                    source(body::htmlStream, body.inMemory()));
+    }
+
+    /**
+     * Adds an attachment from a {@link File}.
+     *
+     * @param file a file to attach
+     * @return this builder
+     */
+    public MultipartBuilder attachment(File file) {
+        String mediaType = URLConnection.guessContentTypeFromName(file.getName());
+        return part(ATTACHMENT_NAME, file.getName(),
+                    mediaType == null ? APPLICATION_OCTET_STREAM : mediaType,
+                    MultipartBody.of(file));
+    }
+
+    /**
+     * Adds an attachment from a {@link InputStream}.
+     *
+     * @param is an stream to read the attachment
+     * @return this builder
+     */
+    public MultipartBuilder attachment(InputStream is) {
+        return part(ATTACHMENT_NAME, null, APPLICATION_OCTET_STREAM, spooled(is));
+    }
+
+    /**
+     * Adds a named attachment.
+     *
+     * @param is       an stream to read the attachment
+     * @param filename the filename to give to the attachment
+     * @return this builder
+     */
+    public MultipartBuilder attachment(InputStream is, String filename) {
+        return part(ATTACHMENT_NAME, filename, APPLICATION_OCTET_STREAM, spooled(is));
+    }
+
+    /**
+     * Adds a named attachment with a custom MIME media type, like
+     * {@code "application/pdf"}.
+     *
+     * @param is        an stream to read the attachment
+     * @param filename  the filename to give to the attachment
+     * @param mediaType the media type of the attachment
+     * @return this builder
+     */
+    public MultipartBuilder attachment(InputStream is, String filename,
+                                       String mediaType) {
+        return part(ATTACHMENT_NAME, filename, mediaType, spooled(is));
+    }
+
+    /**
+     * Adds an attachment directly by content.
+     *
+     * @param content the content of the attachment
+     * @param filename the filename of the attachment
+     * @return this builder
+     */
+    public MultipartBuilder attachment(String content, String filename) {
+        byte[] bytes = content.getBytes();
+        return part(ATTACHMENT_NAME, filename, APPLICATION_OCTET_STREAM,
+                    () -> new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Adds a named inline attachment.
+     *
+     * @param is      an stream to read the attachment
+     * @param cidName the name to give to the attachment as referenced by the HTML email body
+     *                i.e. use cidName sample-image.png for the below example
+     *                <p>
+     *                    <img src="cid:sample-image.png" alt="sample">
+     *                </p>
+     * @return this builder
+     */
+    public MultipartBuilder inline(InputStream is, String cidName) {
+        return part("inline", cidName, APPLICATION_OCTET_STREAM, spooled(is));
+    }
+
+    /**
+     * Finishes the building phase and returns a {@link Mail}.
+     * <p>
+     * This builder should not be used after invoking this method.
+     *
+     * @return a {@link Mail} built from this builder
+     */
+    public Mail build() {
+        MailMetrics metrics = configuration.mailMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
+        Mail mail = prototype != null
+                    ? prototype.variant(parameters, parts, lane)
+                    : new MailMultipart(configuration,
+                                        MultipartBody.build(configuration, parameters, parts),
+                                        lane);
+        if (metrics != null)
+            metrics.phase(configuration.domain(), BUILD, System.nanoTime() - start);
+        return mail;
+    }
+
+    private MultipartBuilder part(String name, String filename, String mediaType,
+                                  MultipartBody.Source source)
+    {
+        parts.add(new MultipartBody.Part(name, filename, mediaType, source));
+        return this;
+    }
+
+    private MultipartBody.Source spooled(InputStream is) {
+        return new SpooledSource(is, configuration.spoolThreshold());
+    }
+
+    private static MultipartBody.Source source(MultipartBody.Source source,
+                                               boolean inMemory)
+    {
+        return inMemory ? source : new MultipartBody.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return source.open();
+            }
+
+            @Override
+            public boolean inMemory() {
+                return false;
+            }
+        };
+    }
+}
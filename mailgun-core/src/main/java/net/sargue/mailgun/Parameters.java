@@ -0,0 +1,136 @@
+package net.sargue.mailgun;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compact multivalued parameter store. Names and values are kept on
+ * parallel arrays in insertion order, which is also the order they are sent.
+ * <p>
+ * Lookups are linear scans. Mails have a few dozen parameters at most, so
+ * that is cheaper than hashing and it allocates nothing.
+ * <p>
+ * Not thread safe. A {@link #snapshot()} can be shared, though, as the
+ * arrays are copied before writing on them once there are snapshots.
+ */
+final class Parameters {
+    private String[] names;
+    private String[] values;
+    private int size;
+    private boolean shared;
+
+    Parameters() {
+        this(16);
+    }
+
+    Parameters(int capacity) {
+        names = new String[capacity];
+        values = new String[capacity];
+    }
+
+    void add(String name, String value) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(value);
+        if (shared || size == names.length) {
+            int capacity = size == names.length ? Math.max(size * 2, 4) : names.length;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            shared = false;
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the current parameters without copying them. Whichever is
+     * written first, this store or the snapshot, gets its own copy of the
+     * arrays.
+     */
+    Parameters snapshot() {
+        Parameters snapshot = new Parameters(0);
+        snapshot.names = names;
+        snapshot.values = values;
+        snapshot.size = size;
+        snapshot.shared = true;
+        shared = true;
+        return snapshot;
+    }
+
+    /**
+     * Returns these parameters without the names present on the given ones.
+     * If none is present this same instance is returned.
+     */
+    Parameters except(Parameters other) {
+        int kept = 0;
+        for (int i = 0; i < size; i++)
+            if (!other.contains(names[i]))
+                kept++;
+        if (kept == size)
+            return this;
+        Parameters result = new Parameters(Math.max(kept, 1));
+        for (int i = 0; i < size; i++)
+            if (!other.contains(names[i]))
+                result.add(names[i], values[i]);
+        return result;
+    }
+
+    /**
+     * Returns the base parameters with the names present on the overlay
+     * replaced by the overlay values, which go last.
+     */
+    static Parameters overlay(Parameters base, Parameters overlay) {
+        if (overlay.size == 0)
+            return base.snapshot();
+        Parameters kept = base.except(overlay);
+        Parameters result = new Parameters(kept.size + overlay.size);
+        for (int i = 0; i < kept.size; i++)
+            result.add(kept.names[i], kept.values[i]);
+        for (int i = 0; i < overlay.size; i++)
+            result.add(overlay.names[i], overlay.values[i]);
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    String value(int index) {
+        return values[index];
+    }
+
+    boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    String getFirst(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    List<String> getAll(String name) {
+        List<String> all = null;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (all == null)
+                    all = new ArrayList<>(2);
+                all.add(values[i]);
+            }
+        }
+        return all == null ? Collections.<String>emptyList() : all;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++)
+            if (names[i].equals(name))
+                return i;
+        return -1;
+    }
+}
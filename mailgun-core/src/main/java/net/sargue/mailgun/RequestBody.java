@@ -0,0 +1,109 @@
+package net.sargue.mailgun;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The encoded body of a mail request.
+ * <p>
+ * Bodies are immutable. Unless {@link #cacheable()} says otherwise, a body
+ * is encoded once, the first time it is written, and the bytes are kept
+ * and written as they are from then on. So a {@link Mail} can be sent
+ * many times, concurrently or by retries, without encoding it again.
+ */
+abstract class RequestBody {
+    private volatile byte[] encoded;
+
+    /**
+     * Encodes the body into the given stream.
+     */
+    abstract void encode(OutputStream out) throws IOException;
+
+    /**
+     * The value of the {@code Content-Type} header for this body.
+     */
+    abstract String contentType();
+
+    abstract String getFirst(String name);
+
+    abstract List<String> getAll(String name);
+
+    /**
+     * Returns the text parameters of the body, the defaults included.
+     */
+    abstract Parameters parameters();
+
+    /**
+     * Whether the encoded bytes are kept in memory. Bodies with big parts
+     * that can be read again from their source, like files, are encoded on
+     * every write instead.
+     */
+    boolean cacheable() {
+        return true;
+    }
+
+    /**
+     * Releases the temporary copies of the parts, if any.
+     */
+    void close() {
+        // nothing kept
+    }
+
+    /**
+     * Returns the encoded body as a read-only buffer, encoding it if it
+     * wasn't yet.
+     */
+    final ByteBuffer encoded() {
+        return ByteBuffer.wrap(bytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Encodes the body if it is cacheable and it wasn't encoded yet.
+     *
+     * @return true if this call encoded the body
+     */
+    final boolean prepare() {
+        if (encoded != null || !cacheable())
+            return false;
+        synchronized (this) {
+            if (encoded != null)
+                return false;
+            bytes();
+            return true;
+        }
+    }
+
+    final void writeTo(OutputStream out) throws IOException {
+        if (cacheable())
+            out.write(bytes());
+        else
+            encode(out);
+    }
+
+    /**
+     * Returns the encoded body, encoding it if it wasn't yet. The array must
+     * not be modified.
+     */
+    final byte[] bytes() {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            // some sources can only be read once, so only one thread encodes
+            synchronized (this) {
+                bytes = encoded;
+                if (bytes == null) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+                    try {
+                        encode(out);
+                    } catch (IOException e) {
+                        throw new MailgunException("Problem encoding the mail", e);
+                    }
+                    encoded = bytes = out.toByteArray();
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -1,9 +1,13 @@
 package net.sargue.mailgun;
 
+import net.sargue.mailgun.spi.HttpResponse;
+
+import java.io.IOException;
+
 /**
  * Represents a response from the Mailgun service.
  * <p>
- * This class encapsulates the {@code javax.ws.rs.core.Response} and extracts
+ * This class encapsulates the HTTP response and extracts
  * some data from it like response status code, mailgun error code and the
  * response message as a String-encoded JSON.
  * <p>
@@ -29,9 +33,13 @@ public class Response {
     private final int responseCode;
     private final String responseMessage;
 
-    Response(jakarta.ws.rs.core.Response response) {
-        responseCode = response.getStatus();
-        responseMessage = response.readEntity(String.class);
+    Response(HttpResponse response) {
+        responseCode = response.status();
+        try {
+            responseMessage = response.body();
+        } catch (IOException e) {
+            throw new MailgunException("Problem reading the response", e);
+        }
         switch (responseCode) {
             case 200:
                 responseType = ResponseType.OK;
@@ -0,0 +1,200 @@
+package net.sargue.mailgun;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The file keeping the pending mails of a durable {@link MailScheduler}.
+ * <p>
+ * It is an append only log of added and sent mails. A mail is stored as its
+ * domain, lane and parameters, and built again on the configuration of its
+ * domain when read, so only form mails can be stored. When the sent mails
+ * outnumber the pending ones the file is rewritten with the pending ones
+ * only, and also when opened, which drops a record half written by a crash.
+ * <p>
+ * Every record is flushed to the operating system, so they survive the
+ * process but not necessarily the machine.
+ * <p>
+ * Not thread safe.
+ */
+final class ScheduleLog implements AutoCloseable {
+    private static final int ADDED = 1;
+    private static final int SENT = 2;
+    private static final int MIN_COMPACTION = 1024;
+
+    static final class Scheduled {
+        final long id;
+        final long time;
+        final Mail mail;
+
+        Scheduled(long id, long time, Mail mail) {
+            this.id = id;
+            this.time = time;
+            this.mail = mail;
+        }
+    }
+
+    private final File file;
+    private DataOutputStream out;
+    private int sent;
+
+    ScheduleLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the pending mails, building them on the configuration of their
+     * domain.
+     */
+    Collection<Scheduled> read(Function<String, Configuration> configurations)
+        throws IOException
+    {
+        Map<Long, Scheduled> pending = new LinkedHashMap<>();
+        if (!file.exists())
+            return pending.values();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file))))
+        {
+            while (true) {
+                int type = in.read();
+                if (type == ADDED) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    Scheduled scheduled = decode(record, configurations);
+                    pending.put(scheduled.id, scheduled);
+                } else if (type == SENT) {
+                    pending.remove(in.readLong());
+                } else if (type == -1) {
+                    break;
+                } else {
+                    throw new IOException("Corrupted schedule file " + file);
+                }
+            }
+        } catch (EOFException e) {
+            // a record half written, the file is rewritten without it
+        }
+        return pending.values();
+    }
+
+    void added(Scheduled scheduled) throws IOException {
+        byte[] record = encode(scheduled);
+        out.write(ADDED);
+        out.writeInt(record.length);
+        out.write(record);
+        out.flush();
+    }
+
+    void sent(long id) throws IOException {
+        out.write(SENT);
+        out.writeLong(id);
+        out.flush();
+        sent++;
+    }
+
+    /**
+     * Tells if the file has more sent mails than pending ones and should be
+     * rewritten.
+     */
+    boolean compactable(int pending) {
+        return sent > MIN_COMPACTION && sent > pending;
+    }
+
+    /**
+     * Replaces the file with one holding only the given mails.
+     */
+    void rewrite(Iterable<Scheduled> pending) throws IOException {
+        close();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream tempOut = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temp))))
+        {
+            for (Scheduled scheduled : pending) {
+                byte[] record = encode(scheduled);
+                tempOut.write(ADDED);
+                tempOut.writeInt(record.length);
+                tempOut.write(record);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        sent = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private static byte[] encode(Scheduled scheduled) throws IOException {
+        if (!(scheduled.mail.body() instanceof FormBody))
+            throw new MailgunException("Only mails without attachments can be scheduled on a file");
+        Parameters parameters = ((FormBody) scheduled.mail.body()).parameters();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(scheduled.id);
+        record.writeLong(scheduled.time);
+        writeString(record, scheduled.mail.configuration().domain());
+        record.writeBoolean(scheduled.mail.lane() != null);
+        if (scheduled.mail.lane() != null)
+            writeString(record, scheduled.mail.lane());
+        record.writeInt(parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            writeString(record, parameters.name(i));
+            writeString(record, parameters.value(i));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Scheduled decode(byte[] bytes,
+                                    Function<String, Configuration> configurations)
+        throws IOException
+    {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        long id = record.readLong();
+        long time = record.readLong();
+        String domain = readString(record);
+        Configuration configuration = configurations.apply(domain);
+        if (configuration == null)
+            throw new MailgunException("No configuration for the scheduled mails of " + domain);
+        MailBuilder builder = new MailBuilder(configuration);
+        if (record.readBoolean())
+            builder.lane(readString(record));
+        int size = record.readInt();
+        for (int i = 0; i < size; i++)
+            builder.parameter(readString(record), readString(record));
+        return new Scheduled(id, time, builder.build());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,168 @@
+package net.sargue.mailgun;
+
+import net.sargue.mailgun.spi.HttpResponse;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static net.sargue.mailgun.MailMetrics.Phase.ENCODE;
+import static net.sargue.mailgun.MailMetrics.Phase.QUEUE;
+import static net.sargue.mailgun.MailMetrics.Phase.REQUEST;
+import static net.sargue.mailgun.MailMetrics.Phase.RESPONSE;
+import static net.sargue.mailgun.MailMetrics.Phase.SEND;
+
+/**
+ * Measures one send for a {@link MailMetrics} and the {@link MailSendEvent}.
+ * Only created when there is a listener registered or the event is enabled.
+ */
+final class SendTimer {
+    private static final MailMetrics NO_METRICS = new MailMetrics() { };
+
+    private final MailMetrics metrics;
+    private final MailSendEvent event;
+    private final String domain;
+    private final long start;
+    private long requestStart;
+    private volatile long requestBytes;
+
+    SendTimer(MailMetrics metrics, String domain) {
+        this.metrics = metrics == null ? NO_METRICS : metrics;
+        this.event = new MailSendEvent();
+        this.domain = domain;
+        event.begin();
+        this.metrics.sendStarted(domain);
+        start = System.nanoTime();
+    }
+
+    /**
+     * Encodes the body, if it wasn't yet, and starts the request.
+     *
+     * @return the body to send
+     */
+    RequestBody body(RequestBody body) {
+        long encodeStart = System.nanoTime();
+        if (body.prepare()) {
+            long encodeTime = System.nanoTime() - encodeStart;
+            metrics.phase(domain, ENCODE, encodeTime);
+            event.encodeTime = encodeTime;
+        }
+        if (body.cacheable()) {
+            requestBytes = body.bytes().length;
+            metrics.requestBytes(domain, requestBytes);
+        } else {
+            body = new CountingBody(body);
+        }
+        requestStart = System.nanoTime();
+        return body;
+    }
+
+    /**
+     * Starts the request again when it leaves the queue of an executor, so
+     * the time waiting there is not taken as request time.
+     */
+    void requestStarted() {
+        long now = System.nanoTime();
+        long queueTime = now - requestStart;
+        metrics.phase(domain, QUEUE, queueTime);
+        event.queueTime = queueTime;
+        requestStart = now;
+    }
+
+    Response completed(HttpResponse raw) {
+        long received = System.nanoTime();
+        metrics.phase(domain, REQUEST, received - requestStart);
+        Response response;
+        try {
+            response = new Response(raw);
+        } catch (RuntimeException e) {
+            failed(e);
+            throw e;
+        }
+        long end = System.nanoTime();
+        metrics.phase(domain, RESPONSE, end - received);
+        metrics.phase(domain, SEND, end - start);
+        long length = raw.contentLength();
+        long responseBytes = length >= 0 ? length : response.responseMessage().length();
+        metrics.responseBytes(domain, responseBytes);
+        metrics.sendCompleted(domain, response.responseType());
+        if (event.shouldCommit()) {
+            event.domain = domain;
+            event.responseCode = response.responseCode();
+            event.requestBytes = requestBytes;
+            event.responseBytes = responseBytes;
+            event.requestTime = received - requestStart;
+            event.responseTime = end - received;
+            event.commit();
+        }
+        return response;
+    }
+
+    void failed(Throwable error) {
+        metrics.phase(domain, SEND, System.nanoTime() - start);
+        metrics.sendFailed(domain, error);
+        if (event.shouldCommit()) {
+            event.domain = domain;
+            event.requestBytes = requestBytes;
+            event.error = error.toString();
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts the bytes of a body that is streamed, not cached.
+     */
+    private final class CountingBody extends RequestBody {
+        private final RequestBody body;
+
+        CountingBody(RequestBody body) {
+            this.body = body;
+        }
+
+        @Override
+        void encode(OutputStream out) throws IOException {
+            long[] count = new long[1];
+            body.encode(new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    count[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    count[0] += len;
+                }
+            });
+            requestBytes = count[0];
+            metrics.requestBytes(domain, count[0]);
+        }
+
+        @Override
+        boolean cacheable() {
+            return false;
+        }
+
+        @Override
+        String contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        String getFirst(String name) {
+            return body.getFirst(name);
+        }
+
+        @Override
+        List<String> getAll(String name) {
+            return body.getAll(name);
+        }
+
+        @Override
+        Parameters parameters() {
+            return body.parameters();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package net.sargue.mailgun;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Makes a stream that can be read only once replayable.
+ * <p>
+ * The first time it is opened the whole stream is read and closed. Its
+ * content is kept in memory while it is smaller than the threshold and
+ * spooled to a temporary file beyond that. The following opens read the
+ * copy. The temporary file is deleted when the source is closed, or when
+ * the JVM exits if it never is.
+ * <p>
+ * If reading the stream fails, the following opens fail too with the
+ * original error as the cause, as the stream can't be read again.
+ */
+final class SpooledSource implements MultipartBody.Source {
+    private final int threshold;
+    private InputStream in;
+    private byte[] bytes;
+    private File file;
+    private Exception failure;
+    private boolean closed;
+
+    SpooledSource(InputStream in, int threshold) {
+        this.in = in;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public synchronized InputStream open() throws IOException {
+        spool();
+        return file == null ? new ByteArrayInputStream(bytes)
+                            : new FileInputStream(file);
+    }
+
+    @Override
+    public synchronized boolean inMemory() {
+        try {
+            spool();
+        } catch (IOException e) {
+            throw new MailgunException("Problem reading attachment", e);
+        }
+        return file == null;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        bytes = null;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // never read, nothing lost
+            }
+            in = null;
+        }
+        if (file != null) {
+            file.delete(); //NOSONAR
+            file = null;
+        }
+    }
+
+    private void spool() throws IOException {
+        if (closed)
+            throw new IOException("The attachment has been closed");
+        if (failure != null)
+            throw new IOException("The attachment stream failed on a previous read", failure);
+        if (in == null)
+            return;
+        try (InputStream source = in) {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream(
+                Math.min(threshold, 8192));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                if (memory.size() + read > threshold) {
+                    spoolToFile(memory, buffer, read, source);
+                    return;
+                }
+                memory.write(buffer, 0, read);
+            }
+            bytes = memory.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            in = null;
+        }
+    }
+
+    private void spoolToFile(ByteArrayOutputStream memory, byte[] buffer,
+                             int read, InputStream source) throws IOException
+    {
+        File spool = File.createTempFile("mailgun-", ".tmp");
+        spool.deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(spool))) {
+            memory.writeTo(out);
+            do {
+                out.write(buffer, 0, read);
+            } while ((read = source.read(buffer)) != -1);
+        } catch (IOException e) {
+            spool.delete(); //NOSONAR
+            throw e;
+        }
+        file = spool;
+    }
+}
@@ -0,0 +1,165 @@
+package net.sargue.mailgun;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel, as in the timers of the Linux kernel.
+ * <p>
+ * Deadlines are counted in ticks. The first wheel has a slot for each of the
+ * next {@value #SLOTS} ticks, the next one a slot for each {@value #SLOTS}
+ * ticks and so on, {@value #LEVELS} wheels in all, which with one second
+ * ticks covers 34 years. Adding an entry is appending it to a slot. When the
+ * first wheel completes a turn the next slot of the second wheel is
+ * cascaded, its entries spread over the first wheel, and so on up. So every
+ * entry is moved at most once per wheel and adding and expiring are O(1)
+ * whatever the number of entries.
+ * <p>
+ * Not thread safe.
+ */
+final class TimingWheel<T> {
+    private static final int BITS = 6;
+    static final int SLOTS = 1 << BITS;
+    static final int LEVELS = 5;
+    private static final int MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    static final class Entry<T> {
+        final long deadline;
+        final T value;
+        private Entry<T> next;
+
+        Entry(long deadline, T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+    }
+
+    private final Entry<T>[] slots = newSlots(SLOTS * LEVELS);
+    private long now;
+    private int size;
+    private boolean cascading;
+
+    TimingWheel(long now) {
+        this.now = now;
+    }
+
+    long now() {
+        return now;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the first tick when an entry expires or is cascaded to a
+     * lower wheel, so advancing before it does nothing, or
+     * {@code Long.MAX_VALUE} if there are no entries.
+     */
+    long nextTick() {
+        if (size == 0)
+            return Long.MAX_VALUE;
+        long next = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long position = now >>> shift;
+            // the slots of a wheel come in turn, the current one last
+            for (int k = 1; k <= SLOTS; k++) {
+                if (slots[level * SLOTS + (int) ((position + k) & MASK)] != null) {
+                    next = Math.min(next, (position + k) << shift);
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Adds an entry. An entry already due expires on the next tick.
+     */
+    void add(Entry<T> entry) {
+        insert(entry);
+        size++;
+    }
+
+    /**
+     * Advances the wheels to the given tick, passing the expired entries to
+     * the consumer tick by tick. Empty wheels jump to the tick.
+     */
+    void advance(long tick, Consumer<T> expired) {
+        while (now < tick) {
+            if (size == 0) {
+                now = tick;
+                return;
+            }
+            now++;
+            int index = (int) (now & MASK);
+            // cascade the upper wheels whose slot starts at this tick
+            cascading = true;
+            for (int level = 1; level < LEVELS && index == 0; level++) {
+                index = (int) ((now >>> (BITS * level)) & MASK);
+                cascade(level * SLOTS + index);
+            }
+            cascading = false;
+            Entry<T> entry = slots[(int) (now & MASK)];
+            slots[(int) (now & MASK)] = null;
+            while (entry != null) {
+                Entry<T> next = entry.next;
+                entry.next = null;
+                if (entry.deadline > now) {
+                    // beyond the last wheel when added
+                    insert(entry);
+                } else {
+                    size--;
+                    expired.accept(entry.value);
+                }
+                entry = next;
+            }
+        }
+    }
+
+    /**
+     * Passes every entry to the consumer, in no particular order.
+     */
+    void forEach(Consumer<Entry<T>> consumer) {
+        for (Entry<T> head : slots) {
+            for (Entry<T> entry = head; entry != null; entry = entry.next)
+                consumer.accept(entry);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newSlots(int length) {
+        return (Entry<T>[]) new Entry<?>[length];
+    }
+
+    private void cascade(int slot) {
+        Entry<T> entry = slots[slot];
+        slots[slot] = null;
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            entry.next = null;
+            insert(entry);
+            entry = next;
+        }
+    }
+
+    private void insert(Entry<T> entry) {
+        long deadline = entry.deadline;
+        long delta = deadline - now;
+        if (delta <= 0) {
+            // the slot of this tick runs after cascading, otherwise it has run
+            delta = cascading ? 0 : 1;
+            deadline = now + delta;
+        } else if (delta > MAX_DELTA) {
+            deadline = now + MAX_DELTA;
+            delta = MAX_DELTA;
+        }
+        int level = 0;
+        while (delta >= 1L << (BITS * (level + 1)))
+            level++;
+        int slot = level * SLOTS + (int) ((deadline >>> (BITS * level)) & MASK);
+        entry.next = slots[slot];
+        slots[slot] = entry;
+    }
+}
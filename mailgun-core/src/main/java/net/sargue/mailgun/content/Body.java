@@ -0,0 +1,208 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.MailgunException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The body of an email message represented in two versions: HTML and plain
+ * text.
+ * <p>
+ * Usually you don't build this class directly but using a {@link Builder}
+ * helper. You get the reference to a builder using one of the static factory
+ * methods on this class.
+ * <p>
+ * A body built with the streaming mode of the {@link Builder} (see
+ * {@link Builder#spillToDisk(int)}) may keep its content on temporary files
+ * instead of the heap. Use the stream accessors to read it without loading it
+ * in memory and {@link #close()} it when you are done to remove those files.
+ * A closed body can't be read anymore.
+ */
+public class Body implements Closeable {
+    private String html;
+    private String text;
+    private File htmlFile;
+    private File textFile;
+    private boolean closed;
+
+    /**
+     * Directly creates an email body given both HTML and plain text content.
+     *
+     * @param html the HTML representation of this email body content
+     * @param text the plain text representation of this email body content
+     */
+    public Body(String html, String text) {
+        this.html = html;
+        this.text = text;
+    }
+
+    Body(MessageBuilder html, MessageBuilder text) {
+        if (html.spilled())
+            htmlFile = html.finish();
+        else
+            this.html = html.toString();
+        if (text.spilled())
+            textFile = text.finish();
+        else
+            this.text = text.toString();
+    }
+
+    /**
+     * @return a new builder with the basic default configuration
+     */
+    public static Builder builder() {
+        return builder(new Configuration());
+    }
+
+    /**
+     * @param configuration a configuration to be used by the builder
+     * @return a new builder using the given configuration
+     */
+    public static Builder builder(Configuration configuration) {
+        return new Builder(configuration);
+    }
+
+    /**
+     * Returns the HTML representation of this email body content.
+     * <p>
+     * If the content is stored on disk it gets loaded in memory. Use
+     * {@link #htmlStream()} to avoid that.
+     *
+     * @return the HTML representation of this email body content
+     * @throws IllegalStateException if the body has been closed
+     */
+    public String html() {
+        checkOpen();
+        return htmlFile == null ? html : read(htmlFile);
+    }
+
+    /**
+     * Sets the HTML representation of this email body content.
+     *
+     * @param html the new HTML representation of this email body content
+     * @return this same Body object for call chaining
+     * @throws IllegalStateException if the body has been closed
+     */
+    public Body html(String html) {
+        checkOpen();
+        this.html = html;
+        htmlFile = delete(htmlFile);
+        return this;
+    }
+
+    /**
+     * Returns the plain text representation of this email body content.
+     * <p>
+     * If the content is stored on disk it gets loaded in memory. Use
+     * {@link #textStream()} to avoid that.
+     *
+     * @return the plain text representation of this email body content
+     * @throws IllegalStateException if the body has been closed
+     */
+    public String text() {
+        checkOpen();
+        return textFile == null ? text : read(textFile);
+    }
+
+    /**
+     * Sets the plain text representation of this email body content.
+     *
+     * @param text the new plain text representation of this email body content
+     * @return this same Body object for call chaining
+     * @throws IllegalStateException if the body has been closed
+     */
+    public Body text(String text) {
+        checkOpen();
+        this.text = text;
+        textFile = delete(textFile);
+        return this;
+    }
+
+    /**
+     * Tells if both representations of this email body content are held in
+     * memory, as opposed to being stored on temporary files.
+     *
+     * @return true if no content is stored on disk
+     * @throws IllegalStateException if the body has been closed
+     */
+    public boolean inMemory() {
+        checkOpen();
+        return htmlFile == null && textFile == null;
+    }
+
+    /**
+     * Opens a stream over the HTML representation of this email body
+     * content, encoded as UTF-8.
+     *
+     * @return a new stream over the HTML content
+     * @throws IllegalStateException if the body has been closed
+     */
+    public InputStream htmlStream() {
+        checkOpen();
+        return stream(htmlFile, html);
+    }
+
+    /**
+     * Opens a stream over the plain text representation of this email body
+     * content, encoded as UTF-8.
+     *
+     * @return a new stream over the plain text content
+     * @throws IllegalStateException if the body has been closed
+     */
+    public InputStream textStream() {
+        checkOpen();
+        return stream(textFile, text);
+    }
+
+    /**
+     * Removes the temporary files backing this content, if any. The content
+     * is no longer available after closing, reading it throws an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        htmlFile = delete(htmlFile);
+        textFile = delete(textFile);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("The body has been closed");
+    }
+
+    private static InputStream stream(File file, String content) {
+        if (file == null)
+            return new ByteArrayInputStream(
+                content == null ? new byte[0] : content.getBytes(UTF_8));
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            throw new MailgunException("Content file not available: " + file, e);
+        }
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), UTF_8);
+        } catch (IOException e) {
+            throw new MailgunException("Problem reading content from " + file, e);
+        }
+    }
+
+    private static File delete(File file) {
+        if (file != null && !file.delete())
+            file.deleteOnExit();
+        return null;
+    }
+}
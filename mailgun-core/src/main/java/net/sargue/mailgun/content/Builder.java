@@ -4,9 +4,12 @@ import net.sargue.mailgun.Configuration;
 import net.sargue.mailgun.MailBuilder;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * A helper designed to build easily basic dual content type HTML and plain
@@ -19,8 +22,8 @@ import java.util.List;
  * by an empty String, no NPE or "null" text.
  * <p>
  * This class supports converters to format objects into text. It has some
- * basic built-in ones (for numbers, dates, etc.) and and extension mechanism
- * to add your own.
+ * basic built-in ones (for numbers, dates, etc. See {@link Converters}) and
+ * an extension mechanism to add your own.
  */
 public class Builder {
     private static final String PRE_HTML =
@@ -35,11 +38,14 @@ public class Builder {
         "</table>", "</thead>", "</tbody>", "</tfoot>", "</tr>"
     );
 
-    private final MessageBuilder html = new MessageBuilder().a(PRE_HTML);
+    private final MessageBuilder html = new MessageBuilder();
     private final MessageBuilder text = new MessageBuilder();
     private final Deque<String> ends = new ArrayDeque<>();
 
     private final Configuration configuration;
+    private final boolean fragmentBuilder;
+    // times the rendering, from here to build()
+    private final MailRenderEvent event;
     private MailBuilder mailBuilder;
 
     /**
@@ -55,12 +61,48 @@ public class Builder {
      * @param configuration the configuration to use
      */
     public Builder(Configuration configuration) {
-        this.configuration = configuration;
+        this(configuration, false);
     }
 
     public Builder(MailBuilder mailBuilder) {
+        this(mailBuilder.configuration(), false);
         this.mailBuilder = mailBuilder;
-        configuration = mailBuilder.configuration();
+    }
+
+    Builder(Configuration configuration, boolean fragment) {
+        this.configuration = configuration;
+        this.fragmentBuilder = fragment;
+        if (!fragment && MailRenderEvent.enabled()) {
+            event = new MailRenderEvent();
+            event.begin();
+        } else {
+            event = null;
+        }
+        if (configuration.minifyHtml())
+            html.minify();
+        if (!fragmentBuilder)
+            html.a(PRE_HTML);
+    }
+
+    /**
+     * Enables the streaming mode for very large contents.
+     * <p>
+     * Once either the HTML or the plain text version grows over the given
+     * number of characters its content is moved to a temporary file and
+     * everything added afterwards is written there. The resulting
+     * {@link Body} exposes that content as streams and the mail builders
+     * send it without loading it back in memory.
+     * <p>
+     * Remember to {@link Body#close()} the body after sending to remove the
+     * temporary files.
+     *
+     * @param threshold the number of characters to keep in memory
+     * @return this builder
+     */
+    public Builder spillToDisk(int threshold) {
+        html.spillAbove(threshold);
+        text.spillAbove(threshold);
+        return this;
     }
 
     /**
@@ -74,11 +116,45 @@ public class Builder {
      * @throws IllegalStateException if there are pending tags to close
      */
     public Body build() {
-        if (!ends.isEmpty())
+        if (fragmentBuilder)
             throw new IllegalStateException(
-                "Pending some closing. Some end() missing. ends=" + ends);
-        html.a(POST_HTML);
-        return new Body(html, text);
+                "This is a fragment builder. Use buildFragment().");
+        checkPendingEnds();
+        Body body;
+        try {
+            html.a(POST_HTML);
+            body = new Body(html, text);
+        } catch (RuntimeException e) {
+            html.discard();
+            text.discard();
+            throw e;
+        }
+        if (event != null && event.shouldCommit()) {
+            event.htmlLength = html.length();
+            event.textLength = text.length();
+            event.spilled = !body.inMemory();
+            event.commit();
+        }
+        return body;
+    }
+
+    /**
+     * Ends this fragment builder and returns a {@link Fragment}. Checks about
+     * the closing tags throwing and {@link IllegalStateException} if there
+     * are any pending.
+     * <p>
+     * Only available on builders obtained from {@link Fragment#builder()}.
+     *
+     * @return the fragment
+     * @throws IllegalStateException if there are pending tags to close or
+     *                               this is not a fragment builder
+     */
+    public Fragment buildFragment() {
+        if (!fragmentBuilder)
+            throw new IllegalStateException(
+                "Not a fragment builder. Use Fragment.builder().");
+        checkPendingEnds();
+        return Fragment.of(html.toString(), text.toString());
     }
 
     /**
@@ -100,6 +176,19 @@ public class Builder {
             return MailBuilder.using(configuration).content(build());
     }
 
+    /**
+     * Adds a pre-rendered fragment to both the HTML and the plain text
+     * version. The fragment content is not copied until the body is built.
+     *
+     * @param fragment the fragment to add
+     * @return this builder
+     */
+    public Builder fragment(Fragment fragment) {
+        html.ref(fragment.html());
+        text.ref(fragment.text());
+        return this;
+    }
+
     /**
      * Closes the last opened tag or section.
      *
@@ -118,6 +207,12 @@ public class Builder {
         return this;
     }
 
+    private void checkPendingEnds() {
+        if (!ends.isEmpty())
+            throw new IllegalStateException(
+                "Pending some closing. Some end() missing. ends=" + ends);
+    }
+
     /*
      *
      *
@@ -161,6 +256,119 @@ public class Builder {
         return text(converter.toString(value));
     }
 
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Byte} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(byte value) {
+        if (configuration.hasConverter(Byte.class))
+            return text((Byte) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Short} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(short value) {
+        if (configuration.hasConverter(Short.class))
+            return text((Short) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Integer} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(int value) {
+        if (configuration.hasConverter(Integer.class))
+            return text((Integer) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Long} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(long value) {
+        if (configuration.hasConverter(Long.class))
+            return text((Long) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Float} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(float value) {
+        if (configuration.hasConverter(Float.class))
+            return text((Float) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a number to both the HTML and the plain text version.
+     * <p>
+     * The digits are appended directly, without boxing, unless there is a
+     * converter registered for {@link Double} on the configuration.
+     *
+     * @param value the number to append
+     * @return this builder
+     */
+    public Builder text(double value) {
+        if (configuration.hasConverter(Double.class))
+            return text((Double) value);
+        html.a(value);
+        text.a(value);
+        return this;
+    }
+
+    /**
+     * Adds a single character to both the HTML and the plain text version.
+     * The HTML version is escaped.
+     *
+     * @param value the character to append
+     * @return this builder
+     */
+    public Builder text(char value) {
+        return text((Character) value);
+    }
+
     /*
      *
      *
@@ -523,6 +731,82 @@ public class Builder {
         return cell(content, true);
     }
 
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(byte)
+     */
+    public Builder cell(byte content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(short)
+     */
+    public Builder cell(short content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(int)
+     */
+    public Builder cell(int content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(long)
+     */
+    public Builder cell(long content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(float)
+     */
+    public Builder cell(float content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a number, appended without boxing.
+     *
+     * @param content the number to show inside the cell
+     * @return this builder
+     * @see #text(double)
+     */
+    public Builder cell(double content) {
+        return cell().text(content).end();
+    }
+
+    /**
+     * Adds a new cell with a single character.
+     *
+     * @param content the character to show inside the cell
+     * @return this builder
+     */
+    public Builder cell(char content) {
+        return cell().text(content).end();
+    }
+
     /**
      * Adds a new cell header with text content.
      *
@@ -547,6 +831,121 @@ public class Builder {
         text.a(',');
         return this;
     }
+
+    /**
+     * Adds a whole table, one row per element, with the given columns.
+     * <p>
+     * If any column has a header a first row of header cells is added. The
+     * plain text version gets one line per row with the cells separated by
+     * commas, as with the {@code row} methods.
+     *
+     * @param <R>     the type of the rows
+     * @param rows    the rows to render
+     * @param columns the columns to render for each row
+     * @return this builder
+     */
+    @SafeVarargs
+    public final <R> Builder table(Iterable<? extends R> rows,
+                                   Column<R, ?>... columns)
+    {
+        // the columns are only read, never stored nor passed on as an array
+        List<BoundColumn<R, ?>> bound = new ArrayList<>(columns.length);
+        for (Column<R, ?> column : columns)
+            bound.add(new BoundColumn<>(column));
+        return table(rows.iterator(), bound);
+    }
+
+    /**
+     * Adds a whole table, one row per element, with the given columns.
+     * <p>
+     * The rows are pulled from the stream one at a time while rendering, so
+     * the stream is never collected. The stream is not closed.
+     *
+     * @param <R>     the type of the rows
+     * @param rows    the rows to render
+     * @param columns the columns to render for each row
+     * @return this builder
+     * @see #table(Iterable, Column[])
+     */
+    @SafeVarargs
+    public final <R> Builder table(Stream<? extends R> rows,
+                                   Column<R, ?>... columns)
+    {
+        List<BoundColumn<R, ?>> bound = new ArrayList<>(columns.length);
+        for (Column<R, ?> column : columns)
+            bound.add(new BoundColumn<>(column));
+        return table(rows.iterator(), bound);
+    }
+
+    private <R> Builder table(Iterator<? extends R> rows, List<BoundColumn<R, ?>> columns) {
+        boolean headers = false;
+        for (BoundColumn<R, ?> column : columns)
+            headers |= column.column.header != null;
+
+        table();
+        if (headers) {
+            row();
+            for (int i = 0; i < columns.size(); i++) {
+                cellHeader().text(columns.get(i).column.header).end();
+                if (i < columns.size() - 1)
+                    text.a(',');
+            }
+            end();
+        }
+        while (rows.hasNext()) {
+            R row = rows.next();
+            row();
+            for (int i = 0; i < columns.size(); i++) {
+                cell().text(columns.get(i).format(row)).end();
+                if (i < columns.size() - 1)
+                    text.a(',');
+            }
+            end();
+        }
+        return end();
+    }
+
+    /**
+     * A column bound to this builder configuration for the duration of a
+     * table. Caches the converter for the last seen class of values.
+     */
+    private final class BoundColumn<R, T> {
+        private final Column<R, T> column;
+        private ClassConverter<?> classConverter;
+
+        BoundColumn(Column<R, T> column) {
+            this.column = column;
+        }
+
+        String format(R row) {
+            T value = column.accessor.apply(row);
+            if (value == null)
+                return null;
+            if (column.converter != null)
+                return column.converter.toString(value);
+            if (classConverter == null || classConverter.type != value.getClass())
+                classConverter = new ClassConverter<>(value.getClass());
+            return classConverter.format(value);
+        }
+    }
+
+    /**
+     * The configured converter of a class, applied to values of exactly
+     * that class.
+     */
+    private final class ClassConverter<V> {
+        private final Class<V> type;
+        private final ContentConverter<V> converter;
+
+        ClassConverter(Class<V> type) {
+            this.type = type;
+            this.converter = configuration.converter(type);
+        }
+
+        String format(Object value) {
+            return converter.toString(type.cast(value));
+        }
+    }
     
    /*
     *
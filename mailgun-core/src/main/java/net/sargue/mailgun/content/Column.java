@@ -0,0 +1,106 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.MailgunException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A column definition for rendering tables from a sequence of rows. See
+ * {@link Builder#table(Iterable, Column[])}.
+ * <p>
+ * A column extracts the value of a cell from each row using an accessor,
+ * usually a lambda or a method reference, and converts it to text. If no
+ * converter is given, the one registered on the builder configuration for
+ * the class of the values is used. It is looked up once per table, not once
+ * per cell.
+ * <p>
+ * Columns are immutable and can be reused across tables and threads.
+ *
+ * @param <R> the type of the rows
+ * @param <T> the type of the values of this column
+ */
+public final class Column<R, T> {
+    final String header;
+    final Function<? super R, ? extends T> accessor;
+    final ContentConverter<? super T> converter;
+
+    private Column(String header,
+                   Function<? super R, ? extends T> accessor,
+                   ContentConverter<? super T> converter)
+    {
+        this.header = header;
+        this.accessor = Objects.requireNonNull(accessor);
+        this.converter = converter;
+    }
+
+    /**
+     * Creates a column without header using the configured converters.
+     *
+     * @param accessor the function extracting the cell value from a row
+     * @param <R>      the type of the rows
+     * @param <T>      the type of the values of this column
+     * @return a new column
+     */
+    public static <R, T> Column<R, T> of(Function<? super R, ? extends T> accessor) {
+        return new Column<>(null, accessor, null);
+    }
+
+    /**
+     * Creates a column using the configured converters.
+     *
+     * @param header   the text of the header cell, may be null
+     * @param accessor the function extracting the cell value from a row
+     * @param <R>      the type of the rows
+     * @param <T>      the type of the values of this column
+     * @return a new column
+     */
+    public static <R, T> Column<R, T> of(String header,
+                                         Function<? super R, ? extends T> accessor)
+    {
+        return new Column<>(header, accessor, null);
+    }
+
+    /**
+     * Creates a column with a specific converter.
+     *
+     * @param header    the text of the header cell, may be null
+     * @param accessor  the function extracting the cell value from a row
+     * @param converter the converter to apply to every value of this column
+     * @param <R>       the type of the rows
+     * @param <T>       the type of the values of this column
+     * @return a new column
+     */
+    public static <R, T> Column<R, T> of(String header,
+                                         Function<? super R, ? extends T> accessor,
+                                         ContentConverter<? super T> converter)
+    {
+        return new Column<>(header, accessor, Objects.requireNonNull(converter));
+    }
+
+    /**
+     * Creates a column from a method handle, like a getter obtained through
+     * {@link java.lang.invoke.MethodHandles.Lookup#findVirtual}. The handle
+     * must accept a row as its only argument.
+     *
+     * @param header the text of the header cell, may be null
+     * @param getter the method handle extracting the cell value from a row
+     * @param <R>    the type of the rows
+     * @return a new column
+     */
+    public static <R> Column<R, Object> of(String header, MethodHandle getter) {
+        final MethodHandle handle =
+            getter.asType(MethodType.methodType(Object.class, Object.class));
+        return new Column<>(header, row -> {
+            try {
+                return handle.invokeExact((Object) row);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new MailgunException("Problem accessing column value", t);
+            }
+        }, null);
+    }
+}
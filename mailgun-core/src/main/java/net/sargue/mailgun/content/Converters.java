@@ -0,0 +1,192 @@
+package net.sargue.mailgun.content;
+
+import java.text.DecimalFormat;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.TemporalAccessor;
+import java.util.Currency;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Ready to use converters for numbers, currencies and dates.
+ * <p>
+ * All of them are thread safe and precompiled: the underlying
+ * {@link DateTimeFormatter} is immutable and shared, while each
+ * {@link NumberFormat} is created once and then cloned once per thread. So
+ * they can be registered on a shared {@link net.sargue.mailgun.Configuration}
+ * and used for every cell of a big report without creating a formatter each
+ * time.
+ * <p>
+ * For example:
+ * <pre>{@code
+ * configuration
+ *     .registerConverter(Converters.currency(Locale.US), BigDecimal.class)
+ *     .registerConverter(Converters.number(Locale.US), Number.class)
+ *     .registerConverter(Converters.date(FormatStyle.MEDIUM, Locale.US),
+ *                        LocalDate.class);
+ * }</pre>
+ */
+public final class Converters {
+    private Converters() {}
+
+    /**
+     * A general purpose number converter for the given locale, with
+     * grouping separators.
+     *
+     * @param locale the locale of the format
+     * @return a number converter
+     */
+    public static ContentConverter<Number> number(Locale locale) {
+        return new FormatConverter<>(NumberFormat.getNumberInstance(locale));
+    }
+
+    /**
+     * A number converter using a {@link DecimalFormat} pattern, like
+     * {@code "#,##0.00"}.
+     *
+     * @param pattern the decimal format pattern
+     * @param locale  the locale of the format symbols
+     * @return a number converter
+     */
+    public static ContentConverter<Number> number(String pattern, Locale locale) {
+        NumberFormat format = NumberFormat.getNumberInstance(locale);
+        ((DecimalFormat) format).applyPattern(pattern);
+        return new FormatConverter<>(format);
+    }
+
+    /**
+     * A number converter rounding to integers for the given locale.
+     *
+     * @param locale the locale of the format
+     * @return an integer number converter
+     */
+    public static ContentConverter<Number> integer(Locale locale) {
+        return new FormatConverter<>(NumberFormat.getIntegerInstance(locale));
+    }
+
+    /**
+     * A percentage converter for the given locale. A value of {@code 0.5} is
+     * converted to {@code 50%}.
+     *
+     * @param locale the locale of the format
+     * @return a percentage converter
+     */
+    public static ContentConverter<Number> percent(Locale locale) {
+        return new FormatConverter<>(NumberFormat.getPercentInstance(locale));
+    }
+
+    /**
+     * A currency converter using the currency of the given locale.
+     *
+     * @param locale the locale of the format
+     * @return a currency converter
+     */
+    public static ContentConverter<Number> currency(Locale locale) {
+        return new FormatConverter<>(NumberFormat.getCurrencyInstance(locale));
+    }
+
+    /**
+     * A currency converter for a specific currency formatted for the given
+     * locale.
+     *
+     * @param currency the currency
+     * @param locale   the locale of the format
+     * @return a currency converter
+     */
+    public static ContentConverter<Number> currency(Currency currency,
+                                                    Locale locale)
+    {
+        NumberFormat format = NumberFormat.getCurrencyInstance(locale);
+        format.setCurrency(currency);
+        return new FormatConverter<>(format);
+    }
+
+    /**
+     * A converter for the {@code java.time} types using the given formatter.
+     *
+     * @param formatter the formatter to use
+     * @return a {@code java.time} converter
+     */
+    public static ContentConverter<TemporalAccessor> temporal(DateTimeFormatter formatter) {
+        return formatter::format;
+    }
+
+    /**
+     * A converter for the {@code java.time} types using the given pattern,
+     * like {@code "dd/MM/yyyy HH:mm"}.
+     *
+     * @param pattern the pattern, as accepted by {@link DateTimeFormatter}
+     * @param locale  the locale of the format
+     * @return a {@code java.time} converter
+     */
+    public static ContentConverter<TemporalAccessor> temporal(String pattern,
+                                                              Locale locale)
+    {
+        return temporal(DateTimeFormatter.ofPattern(pattern, locale));
+    }
+
+    /**
+     * A converter for dates ({@link java.time.LocalDate} or anything with
+     * a date) using a localized style.
+     *
+     * @param style  the format style
+     * @param locale the locale of the format
+     * @return a {@code java.time} converter
+     */
+    public static ContentConverter<TemporalAccessor> date(FormatStyle style,
+                                                          Locale locale)
+    {
+        return temporal(DateTimeFormatter.ofLocalizedDate(style)
+                                         .withLocale(locale));
+    }
+
+    /**
+     * A converter for date and times ({@link java.time.LocalDateTime} or
+     * anything with a date and a time) using a localized style.
+     *
+     * @param style  the format style
+     * @param locale the locale of the format
+     * @return a {@code java.time} converter
+     */
+    public static ContentConverter<TemporalAccessor> dateTime(FormatStyle style,
+                                                              Locale locale)
+    {
+        return temporal(DateTimeFormatter.ofLocalizedDateTime(style)
+                                         .withLocale(locale));
+    }
+
+    /**
+     * A converter for legacy {@link Date} objects, including its
+     * {@code java.sql} subclasses, using the given pattern on a time zone.
+     *
+     * @param pattern the pattern, as accepted by {@link DateTimeFormatter}
+     * @param locale  the locale of the format
+     * @param zone    the time zone to represent the dates on
+     * @return a date converter
+     */
+    public static ContentConverter<Date> date(String pattern, Locale locale,
+                                              ZoneId zone)
+    {
+        final DateTimeFormatter formatter =
+            DateTimeFormatter.ofPattern(pattern, locale).withZone(zone);
+        return value -> formatter.format(Instant.ofEpochMilli(value.getTime()));
+    }
+
+    private static final class FormatConverter<T> implements ContentConverter<T> {
+        private final ThreadLocal<Format> format;
+
+        FormatConverter(final Format prototype) {
+            format = ThreadLocal.withInitial(() -> (Format) prototype.clone());
+        }
+
+        @Override
+        public String toString(T value) {
+            return format.get().format(value);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.Configuration;
+
+import java.util.Objects;
+
+/**
+ * A finished piece of content, in both HTML and plain text versions, to be
+ * reused on many messages. Typical examples are branded headers, footers or
+ * legal blocks.
+ * <p>
+ * The content is rendered and escaped only once, when the fragment is
+ * created. Adding it to a {@link Builder} using
+ * {@link Builder#fragment(Fragment)} just keeps a reference to it, so it is
+ * copied only when the final body is built.
+ * <p>
+ * This class is immutable and thread safe. Build the fragments once and share
+ * them everywhere.
+ */
+public final class Fragment {
+    private final String html;
+    private final String text;
+
+    private Fragment(String html, String text) {
+        this.html = Objects.requireNonNull(html);
+        this.text = Objects.requireNonNull(text);
+    }
+
+    /**
+     * Creates a fragment from already rendered content. The HTML version is
+     * used as is, so it must be properly escaped.
+     *
+     * @param html the HTML representation of this fragment
+     * @param text the plain text representation of this fragment
+     * @return a new fragment
+     */
+    public static Fragment of(String html, String text) {
+        return new Fragment(html, text);
+    }
+
+    /**
+     * @return a new fragment builder with the basic default configuration
+     */
+    public static Builder builder() {
+        return builder(new Configuration());
+    }
+
+    /**
+     * Returns a builder for a fragment. It works as a regular {@link Builder}
+     * but without the HTML document envelope. Finish it using
+     * {@link Builder#buildFragment()}.
+     *
+     * @param configuration a configuration to be used by the builder
+     * @return a new fragment builder using the given configuration
+     */
+    public static Builder builder(Configuration configuration) {
+        return new Builder(configuration, true);
+    }
+
+    /**
+     * @return the HTML representation of this fragment
+     */
+    public String html() {
+        return html;
+    }
+
+    /**
+     * @return the plain text representation of this fragment
+     */
+    public String text() {
+        return text;
+    }
+}
@@ -0,0 +1,313 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.MailgunException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A streaming HTML minifier tuned to be safe for mail clients.
+ * <p>
+ * It is a {@link Writer} that minifies everything written to it on the fly
+ * and passes the result to another writer. It keeps no more state than the
+ * tag being processed, so it can handle contents of any size. Use
+ * {@link #minify(String)} for the simple case.
+ * <p>
+ * These are the rules applied:
+ * <ul>
+ *     <li>Runs of whitespace are collapsed to a single character: a new
+ *     line if the run had one, so lines stay short, or a space otherwise.</li>
+ *     <li>Whitespace between two block level tags (tables, paragraphs,
+ *     headings...) is removed.</li>
+ *     <li>Tags are normalized, collapsing the whitespace between attributes
+ *     and removing it before the tag end. Quoted values are not touched.</li>
+ *     <li>Comments are removed, except for conditional comments
+ *     ({@code <!--[if mso]>...<![endif]-->}) as some mail clients rely on
+ *     them.</li>
+ *     <li>The content of {@code <pre>}, {@code <textarea>}, {@code <script>}
+ *     and {@code <style>} is left as is.</li>
+ * </ul>
+ * <p>
+ * Leading and trailing whitespace of the whole document is removed.
+ */
+public final class HtmlMinifier extends Writer {
+    private static final Set<String> RAW_TAGS = new HashSet<>(Arrays.asList(
+        "pre", "textarea", "script", "style"
+    ));
+    private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList(
+        "!doctype", "html", "head", "body", "meta", "link", "title", "base",
+        "table", "thead", "tbody", "tfoot", "tr", "td", "th", "caption",
+        "colgroup", "col", "div", "p", "h1", "h2", "h3", "h4", "h5", "h6",
+        "ul", "ol", "li", "dl", "dt", "dd", "br", "hr", "center",
+        "blockquote", "pre", "style", "script", "textarea"
+    ));
+
+    private enum State { TEXT, TAG, COMMENT, CONDITIONAL_COMMENT, RAW }
+
+    private final Writer out;
+    private final StringBuilder tag = new StringBuilder();
+    private State state = State.TEXT;
+    private char pendingSpace;
+    private boolean started;
+    private boolean afterBlockTag;
+    private char quote;
+    private String rawEnd;
+    private int rawMatch;
+    private int commentDashes;
+
+    /**
+     * Creates a minifier writing the minified HTML to the given writer.
+     *
+     * @param out the writer receiving the minified HTML
+     */
+    public HtmlMinifier(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Minifies an HTML document or fragment.
+     *
+     * @param html the HTML to minify, may be null
+     * @return the minified HTML, or null if the input was null
+     */
+    public static String minify(String html) {
+        if (html == null)
+            return null;
+        StringWriter writer = new StringWriter(html.length());
+        try (HtmlMinifier minifier = new HtmlMinifier(writer)) {
+            minifier.write(html);
+        } catch (IOException e) {
+            throw new MailgunException("Problem minifying HTML", e);
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        process((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            process(cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            process(str.charAt(i));
+    }
+
+    /**
+     * Flushes the underlying writer. Pending whitespace and unfinished tags
+     * are kept until more content arrives or this writer is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes any unfinished tag as is and closes the underlying writer.
+     * Pending trailing whitespace is dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        if (state == State.TAG || state == State.RAW)
+            out.append(tag);
+        tag.setLength(0);
+        out.close();
+    }
+
+    private void process(char c) throws IOException {
+        switch (state) {
+            case TEXT:
+                text(c);
+                break;
+            case TAG:
+                tag(c);
+                break;
+            case COMMENT:
+            case CONDITIONAL_COMMENT:
+                comment(c);
+                break;
+            case RAW:
+                raw(c);
+                break;
+        }
+    }
+
+    private void text(char c) throws IOException {
+        if (Character.isWhitespace(c)) {
+            if (c == '\n' || pendingSpace == '\n')
+                pendingSpace = '\n';
+            else
+                pendingSpace = ' ';
+        } else if (c == '<') {
+            tag.setLength(0);
+            tag.append(c);
+            quote = 0;
+            state = State.TAG;
+        } else {
+            emitPendingSpace();
+            out.write(c);
+            afterBlockTag = false;
+        }
+    }
+
+    private void tag(char c) throws IOException {
+        tag.append(c);
+        if (tag.length() == 2 && !isTagStart(c)) {
+            // not a tag, just a lonely '<' on the text
+            emitPendingSpace();
+            out.write('<');
+            afterBlockTag = false;
+            tag.setLength(0);
+            state = State.TEXT;
+            text(c);
+        } else if (tag.length() == 4 && tag.indexOf("<!--") == 0) {
+            commentDashes = 0;
+            state = State.COMMENT;
+        } else if (quote != 0) {
+            if (c == quote)
+                quote = 0;
+        } else if (c == '"' || c == '\'') {
+            quote = c;
+        } else if (c == '>') {
+            endTag();
+        }
+    }
+
+    private void comment(char c) throws IOException {
+        if (tag.length() == 4) {
+            // decide on the first character after "<!--"
+            tag.append(c);
+            if (c == '[' || c == '<') {
+                if (afterBlockTag)
+                    pendingSpace = 0;
+                emitPendingSpace();
+                out.append(tag);
+                state = State.CONDITIONAL_COMMENT;
+            }
+        } else if (state == State.CONDITIONAL_COMMENT) {
+            out.write(c);
+        }
+
+        if (c == '>' && commentDashes >= 2) {
+            if (state == State.CONDITIONAL_COMMENT)
+                afterBlockTag = false;
+            tag.setLength(0);
+            state = State.TEXT;
+        }
+        commentDashes = c == '-' ? commentDashes + 1 : 0;
+    }
+
+    private void raw(char c) throws IOException {
+        if (Character.toLowerCase(c) == rawEnd.charAt(rawMatch)) {
+            tag.append(c);
+            if (++rawMatch == rawEnd.length()) {
+                quote = 0;
+                state = State.TAG;
+            }
+        } else {
+            out.append(tag);
+            tag.setLength(0);
+            rawMatch = 0;
+            if (c == '<') {
+                tag.append(c);
+                rawMatch = 1;
+            } else {
+                out.write(c);
+            }
+        }
+    }
+
+    private void endTag() throws IOException {
+        String name = tagName();
+        boolean block = BLOCK_TAGS.contains(name.startsWith("/")
+                                            ? name.substring(1) : name);
+        if (!(block && afterBlockTag))
+            emitPendingSpace();
+        pendingSpace = 0;
+        started = true;
+        boolean selfClosing = tag.charAt(tag.length() - 2) == '/';
+        writeNormalizedTag();
+        afterBlockTag = block;
+        tag.setLength(0);
+
+        if (RAW_TAGS.contains(name) && !selfClosing) {
+            rawEnd = "</" + name;
+            rawMatch = 0;
+            state = State.RAW;
+        } else {
+            state = State.TEXT;
+        }
+    }
+
+    private String tagName() {
+        int end = 1;
+        while (end < tag.length() && isNameChar(tag.charAt(end), end == 1))
+            end++;
+        return tag.substring(1, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the buffered tag collapsing the whitespace outside quotes and
+     * dropping it around '=' and before the tag end.
+     */
+    private void writeNormalizedTag() throws IOException {
+        StringBuilder normalized = new StringBuilder(tag.length());
+        char inQuote = 0;
+        boolean space = false;
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (inQuote != 0) {
+                normalized.append(c);
+                if (c == inQuote)
+                    inQuote = 0;
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && !dropSpaceBefore(c, i, normalized))
+                    normalized.append(' ');
+                space = false;
+                normalized.append(c);
+                if (c == '"' || c == '\'')
+                    inQuote = c;
+            }
+        }
+        out.append(normalized);
+    }
+
+    private boolean dropSpaceBefore(char c, int i, StringBuilder normalized) {
+        char last = normalized.charAt(normalized.length() - 1);
+        if (c == '=' || c == '>' || last == '=')
+            return true;
+        // before "/>" only after a quoted value, as an unquoted one would
+        // swallow the slash
+        return c == '/' && i + 1 < tag.length() && tag.charAt(i + 1) == '>'
+               && (last == '"' || last == '\'');
+    }
+
+    private void emitPendingSpace() throws IOException {
+        if (pendingSpace != 0 && started)
+            out.write(pendingSpace);
+        pendingSpace = 0;
+        started = true;
+    }
+
+    private static boolean isTagStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    private static boolean isNameChar(char c, boolean first) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':'
+               || (first && (c == '/' || c == '!' || c == '?'));
+    }
+}
@@ -0,0 +1,33 @@
+package net.sargue.mailgun.content;
+
+/**
+ * Flight recorder event for the rendering of a body, from the creation of
+ * the {@link Builder} to {@link Builder#build()}.
+ * <p>
+ * This is the Java 8 version, which does nothing. The actual event is in
+ * the Java 11 section of the multi-release jar.
+ */
+final class MailRenderEvent {
+    long htmlLength;
+    long textLength;
+    boolean spilled;
+
+    void begin() {
+        // no-op
+    }
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return false;
+    }
+
+    boolean shouldCommit() {
+        return false;
+    }
+
+    void commit() {
+        // no-op
+    }
+}
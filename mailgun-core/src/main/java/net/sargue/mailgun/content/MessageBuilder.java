@@ -0,0 +1,199 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.MailgunException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+class MessageBuilder {
+    private static final String CRLF = "\r\n";
+
+    private StringBuilder sb = new StringBuilder();
+    private final List<CharSequence> segments = new ArrayList<>();
+    private int segmentsLength;
+    private long spilledLength;
+
+    private boolean minify;
+    private int spillThreshold = -1;
+    private File file;
+    private Writer writer;
+
+    MessageBuilder a(String str) {
+        sb.append(str == null ? "" : str);
+        return checkSpill();
+    }
+
+    MessageBuilder a(char c) {
+        sb.append(c);
+        return checkSpill();
+    }
+
+    MessageBuilder a(int i) {
+        sb.append(i);
+        return checkSpill();
+    }
+
+    MessageBuilder a(long l) {
+        sb.append(l);
+        return checkSpill();
+    }
+
+    MessageBuilder a(float f) {
+        sb.append(f);
+        return checkSpill();
+    }
+
+    MessageBuilder a(double d) {
+        sb.append(d);
+        return checkSpill();
+    }
+
+    /**
+     * Appends a string by reference. It is not copied until the final
+     * {@link #toString()}, which makes sense for big immutable chunks.
+     */
+    MessageBuilder ref(String str) {
+        if (sb.length() > 0) {
+            segments.add(sb);
+            segmentsLength += sb.length();
+            sb = new StringBuilder();
+        }
+        segments.add(str);
+        segmentsLength += str.length();
+        return checkSpill();
+    }
+
+    MessageBuilder sp() {
+        return a(' ');
+    }
+
+    MessageBuilder nl() {
+        sb.append(CRLF);
+        return checkSpill();
+    }
+
+    /**
+     * Once the buffered content grows over the given number of characters it
+     * is moved to a temporary file and the buffer is reused from there on.
+     */
+    void spillAbove(int threshold) {
+        spillThreshold = threshold;
+        checkSpill();
+    }
+
+    /**
+     * Minifies the HTML content on the way out, whether rendered in memory
+     * or spilled to disk. Must be set before any content is spilled.
+     */
+    void minify() {
+        minify = true;
+    }
+
+    /**
+     * Returns the number of characters appended so far, before any
+     * minification.
+     */
+    long length() {
+        return spilledLength + segmentsLength + sb.length();
+    }
+
+    boolean spilled() {
+        return file != null;
+    }
+
+    /**
+     * Flushes any pending content and returns the backing file. Only valid
+     * if the content has been spilled.
+     */
+    File finish() {
+        try {
+            flush();
+            writer.close();
+            return file;
+        } catch (IOException e) {
+            throw new MailgunException("Problem writing content to " + file, e);
+        }
+    }
+
+    /**
+     * Drops the spilled content, if any, removing its file.
+     */
+    void discard() {
+        if (file == null)
+            return;
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            writer = null;
+        }
+        // it is deleted on exit otherwise
+        file.delete();
+        file = null;
+    }
+
+    @Override
+    public String toString() {
+        if (minify)
+            return minified();
+        if (segments.isEmpty())
+            return sb.toString();
+        StringBuilder all = new StringBuilder(segmentsLength + sb.length());
+        for (CharSequence segment : segments)
+            all.append(segment);
+        return all.append(sb).toString();
+    }
+
+    private String minified() {
+        StringWriter out = new StringWriter(segmentsLength + sb.length());
+        try (Writer minifier = new HtmlMinifier(out)) {
+            for (CharSequence segment : segments)
+                minifier.append(segment);
+            minifier.append(sb);
+        } catch (IOException e) {
+            throw new MailgunException("Problem minifying HTML", e);
+        }
+        return out.toString();
+    }
+
+    private MessageBuilder checkSpill() {
+        if (spillThreshold >= 0 && segmentsLength + sb.length() > spillThreshold) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new MailgunException("Problem spilling content to disk", e);
+            }
+        }
+        return this;
+    }
+
+    private void flush() throws IOException {
+        if (writer == null) {
+            file = File.createTempFile("mailgun-", ".tmp");
+            // in case the body is never closed
+            file.deleteOnExit();
+            writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+            if (minify)
+                writer = new HtmlMinifier(writer);
+        }
+        for (CharSequence segment : segments)
+            writer.append(segment);
+        spilledLength += segmentsLength + sb.length();
+        segments.clear();
+        segmentsLength = 0;
+        writer.append(sb);
+        sb.setLength(0);
+    }
+}
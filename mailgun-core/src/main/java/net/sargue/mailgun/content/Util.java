@@ -0,0 +1,63 @@
+package net.sargue.mailgun.content;
+
+import net.sargue.mailgun.MailgunException;
+
+class Util {
+    private Util() {}
+
+    /**
+     * Escapes a text for an HTML or XML text node.
+     * <p>
+     * The output is the same of serializing a DOM text node with the JDK
+     * identity transformer, which was used before: the markup characters,
+     * the control characters and the supplementary characters are escaped.
+     * Writing it directly is much faster and needs no reflection, so it also
+     * works on native images.
+     */
+    static String escapeXml(String target) {
+        int length = target.length();
+        int i = 0;
+        while (i < length && !needsEscape(target.charAt(i)))
+            i++;
+        if (i == length)
+            return target;
+
+        StringBuilder sb = new StringBuilder(length + 16);
+        sb.append(target, 0, i);
+        for (; i < length; i++) {
+            char c = target.charAt(i);
+            if (!needsEscape(c)) {
+                sb.append(c);
+            } else if (c == '&') {
+                sb.append("&amp;");
+            } else if (c == '<') {
+                sb.append("&lt;");
+            } else if (c == '>') {
+                sb.append("&gt;");
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                       && Character.isLowSurrogate(target.charAt(i + 1))) {
+                sb.append("&#").append(Character.toCodePoint(c, target.charAt(++i))).append(';');
+            } else if (Character.isLowSurrogate(c)) {
+                // the transformer let them pass
+                sb.append(c);
+            } else if (Character.isHighSurrogate(c)) {
+                // the transformer dropped a high surrogate at the end
+                if (i + 1 == length)
+                    break;
+                throw new MailgunException("Problem escaping XML, invalid UTF-16 surrogate "
+                                           + Integer.toHexString(c));
+            } else {
+                sb.append("&#").append((int) c).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean needsEscape(char c) {
+        if (c < 0x20)
+            return c != '\t' && c != '\n' && c != '\r' && c != 0;
+        if (c < 0x7f)
+            return c == '&' || c == '<' || c == '>';
+        return c <= 0x9f || Character.isSurrogate(c);
+    }
+}
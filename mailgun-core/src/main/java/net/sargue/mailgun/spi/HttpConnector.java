@@ -0,0 +1,63 @@
+package net.sargue.mailgun.spi;
+
+import java.io.IOException;
+
+/**
+ * Sends the requests of a {@link net.sargue.mailgun.MailgunTransport}.
+ * <p>
+ * Implementations must be thread safe. A connector is created on the first
+ * request of its transport and closed with it.
+ */
+public interface HttpConnector extends AutoCloseable {
+    /**
+     * Receives the outcome of an asynchronous request.
+     */
+    interface Callback {
+        /**
+         * Called when the response is received, whatever its status.
+         *
+         * @param response the response
+         */
+        void completed(HttpResponse response);
+
+        /**
+         * Called when the request fails.
+         *
+         * @param throwable the cause of the failure
+         */
+        void failed(Throwable throwable);
+    }
+
+    /**
+     * Sends a request and waits for the response.
+     *
+     * @param request the request
+     * @return the response
+     * @throws IOException if the request fails
+     */
+    HttpResponse post(HttpRequest request) throws IOException;
+
+    /**
+     * Sends a request in the background. The callback is called from
+     * another thread.
+     *
+     * @param request  the request
+     * @param callback the callback to call with the outcome
+     */
+    void postAsync(HttpRequest request, Callback callback);
+
+    /**
+     * Makes a {@code HEAD} request to the given URL, ignoring the response,
+     * to initialize the connector and open a connection ahead of time.
+     *
+     * @param url the URL to request
+     * @throws IOException if the request fails
+     */
+    void warmUp(String url) throws IOException;
+
+    /**
+     * Releases the resources of the connector.
+     */
+    @Override
+    void close();
+}
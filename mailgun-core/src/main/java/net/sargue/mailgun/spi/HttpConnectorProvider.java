@@ -0,0 +1,31 @@
+package net.sargue.mailgun.spi;
+
+/**
+ * Creates connectors. Implementations are registered as services, on
+ * {@code META-INF/services/net.sargue.mailgun.spi.HttpConnectorProvider}, and
+ * need a public no arguments constructor.
+ */
+public interface HttpConnectorProvider {
+    /**
+     * The name to choose this connector with
+     * {@link net.sargue.mailgun.MailgunTransport#MailgunTransport(String)}.
+     *
+     * @return the name of the connector
+     */
+    String name();
+
+    /**
+     * When there are several connectors on the classpath the one with the
+     * highest priority is used by default.
+     *
+     * @return the priority of the connector
+     */
+    int priority();
+
+    /**
+     * Creates a new connector.
+     *
+     * @return a new connector
+     */
+    HttpConnector create();
+}
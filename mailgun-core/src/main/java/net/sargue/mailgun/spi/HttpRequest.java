@@ -0,0 +1,61 @@
+package net.sargue.mailgun.spi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A POST request to the Mailgun API, with its credentials and timeouts.
+ */
+public interface HttpRequest {
+    /**
+     * The full URL of the resource.
+     *
+     * @return the URL of the request
+     */
+    String url();
+
+    /**
+     * The value of the {@code Authorization} header.
+     *
+     * @return the authorization header value
+     */
+    String authorization();
+
+    /**
+     * The value of the {@code Content-Type} header.
+     *
+     * @return the content type of the body
+     */
+    String contentType();
+
+    /**
+     * The length of the body in bytes, or -1 if it isn't known before
+     * writing it. It may encode the body, so call it when about to write.
+     *
+     * @return the length of the body or -1
+     */
+    long contentLength();
+
+    /**
+     * The connect timeout in milliseconds, zero meaning the connector
+     * default.
+     *
+     * @return the connect timeout
+     */
+    int connectTimeout();
+
+    /**
+     * The read timeout in milliseconds, zero meaning the connector default.
+     *
+     * @return the read timeout
+     */
+    int readTimeout();
+
+    /**
+     * Writes the body of the request. Doesn't close the stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,30 @@
+package net.sargue.mailgun.spi;
+
+import java.io.IOException;
+
+/**
+ * The response to a {@link HttpRequest}. Its body is read once, when asked.
+ */
+public interface HttpResponse {
+    /**
+     * The HTTP status code.
+     *
+     * @return the status code
+     */
+    int status();
+
+    /**
+     * The length of the body as announced by the server, or -1 if unknown.
+     *
+     * @return the length of the body or -1
+     */
+    long contentLength();
+
+    /**
+     * Reads the whole body as a string and releases the connection.
+     *
+     * @return the body, empty if there is none
+     * @throws IOException if reading the body fails
+     */
+    String body() throws IOException;
+}
@@ -0,0 +1,8 @@
+/**
+ * The interface between the library and the HTTP client doing the requests.
+ * <p>
+ * Connectors are found with a {@link java.util.ServiceLoader}, so adding a
+ * connector module to the classpath is enough. Only needed to write a new
+ * connector.
+ */
+package net.sargue.mailgun.spi;
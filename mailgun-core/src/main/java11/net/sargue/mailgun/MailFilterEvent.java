@@ -0,0 +1,40 @@
+package net.sargue.mailgun;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a {@link MailSendFilter} call.
+ */
+@Name("net.sargue.mailgun.MailFilter")
+@Label("Mailgun Filter")
+@Description("A call to the send filter of the configuration")
+@Category("Mailgun")
+@StackTrace(false)
+final class MailFilterEvent extends Event {
+    /**
+     * Registers the event type when first used, not while the event class
+     * is initialized.
+     */
+    private static final class Type {
+        static final EventType TYPE = EventType.getEventType(MailFilterEvent.class);
+    }
+
+    @Label("Domain")
+    String domain;
+
+    @Label("Accepted")
+    boolean accepted;
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return Type.TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,73 @@
+package net.sargue.mailgun;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a send, see {@link Mail#send()}.
+ */
+@Name("net.sargue.mailgun.MailSend")
+@Label("Mailgun Send")
+@Description("A mail sent to the Mailgun service")
+@Category("Mailgun")
+@StackTrace(false)
+final class MailSendEvent extends Event {
+    /**
+     * Registers the event type when first used, not while the event class
+     * is initialized.
+     */
+    private static final class Type {
+        static final EventType TYPE = EventType.getEventType(MailSendEvent.class);
+    }
+
+    @Label("Domain")
+    String domain;
+
+    @Label("Response Code")
+    int responseCode;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Response Size")
+    @DataAmount
+    long responseBytes;
+
+    @Label("Encode Time")
+    @Description("Time to encode the request body, zero if it was already encoded")
+    @Timespan
+    long encodeTime;
+
+    @Label("Queue Time")
+    @Description("Time waiting on the queue of an executor, zero if it didn't wait")
+    @Timespan
+    long queueTime;
+
+    @Label("Request Time")
+    @Description("From the start of the request to the response status")
+    @Timespan
+    long requestTime;
+
+    @Label("Response Time")
+    @Description("Time to read the response body")
+    @Timespan
+    long responseTime;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return Type.TYPE.isEnabled();
+    }
+}
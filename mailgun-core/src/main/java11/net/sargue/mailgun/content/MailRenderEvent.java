@@ -0,0 +1,47 @@
+package net.sargue.mailgun.content;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the rendering of a body, from the creation of
+ * the {@link Builder} to {@link Builder#build()}.
+ */
+@Name("net.sargue.mailgun.MailRender")
+@Label("Mailgun Render")
+@Description("A mail body rendered with the content builder, from its creation to build()")
+@Category("Mailgun")
+@StackTrace(false)
+final class MailRenderEvent extends Event {
+    /**
+     * Registers the event type when first used, not while the event class
+     * is initialized.
+     */
+    private static final class Type {
+        static final EventType TYPE = EventType.getEventType(MailRenderEvent.class);
+    }
+
+    @Label("HTML Length")
+    @Description("Characters of HTML rendered, before minification")
+    long htmlLength;
+
+    @Label("Text Length")
+    @Description("Characters of plain text rendered")
+    long textLength;
+
+    @Label("Spilled")
+    @Description("Whether the content was spilled to disk")
+    boolean spilled;
+
+    /**
+     * Tells if the event is enabled, without creating one.
+     */
+    static boolean enabled() {
+        return Type.TYPE.isEnabled();
+    }
+}
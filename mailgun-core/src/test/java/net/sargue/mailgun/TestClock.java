@@ -0,0 +1,52 @@
+package net.sargue.mailgun;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A clock for the tests, which only moves when told to. It starts at the
+ * current second, in nanoseconds since the epoch, and creates the classes
+ * that take a clock on their package private constructors.
+ */
+public final class TestClock implements LongSupplier {
+    private final AtomicLong nanos =
+        new AtomicLong(TimeUnit.SECONDS.toNanos(System.currentTimeMillis() / 1000));
+
+    @Override
+    public long getAsLong() {
+        return nanos.get();
+    }
+
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+    }
+
+    public void advance(long duration, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(duration));
+    }
+
+    public ConfigurationRegistry registry(Function<String, Configuration> factory,
+                                          long idleTimeout, TimeUnit unit)
+    {
+        return new ConfigurationRegistry(factory, idleTimeout, unit, this);
+    }
+
+    public DuplicateMailFilter duplicateFilter(long window, TimeUnit unit,
+                                               long expectedPerWindow, double falsePositiveRate)
+    {
+        return new DuplicateMailFilter(window, unit, expectedPerWindow, falsePositiveRate, this);
+    }
+
+    public MailScheduler scheduler(long tick, TimeUnit unit) {
+        return MailScheduler.create(tick, unit, this::millis);
+    }
+
+    public MailScheduler scheduler(long tick, TimeUnit unit, File file,
+                                   Function<String, Configuration> configurations)
+    {
+        return MailScheduler.create(tick, unit, file, configurations, this::millis);
+    }
+}
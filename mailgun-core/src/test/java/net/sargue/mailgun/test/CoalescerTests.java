@@ -0,0 +1,210 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailBuilder;
+import net.sargue.mailgun.MailCoalescer;
+import net.sargue.mailgun.content.Body;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CoalescerTests {
+    private static final MailCoalescer.Combiner COMBINER =
+        mails -> Body.builder().h1(mails.size() + " new comments").build();
+
+    private final BlockingQueue<Mail> sent = new LinkedBlockingQueue<>();
+    private Configuration configuration;
+    private MailCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        // the filter sees the mails sent and stops the request
+        configuration = new Configuration("example.org", "key-1234", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                sent.add(mail);
+                return false;
+            });
+    }
+
+    @After
+    public void tearDown() {
+        if (coalescer != null)
+            coalescer.close();
+        configuration.close();
+    }
+
+    @Test
+    public void digestsPerRecipientAndKey() throws InterruptedException {
+        coalescer = MailCoalescer.create(mail -> mail.getFirstValue("o:tag"), COMBINER,
+                                         200, TimeUnit.MILLISECONDS, 100);
+        coalescer.send(mail("a@example.com", "comments", "First"));
+        coalescer.send(mail("a@example.com", "comments", "Second"));
+        coalescer.send(mail("b@example.com", "comments", "Other"));
+        coalescer.send(mail("a@example.com", "likes", "Liked"));
+        coalescer.send(mail("a@example.com", "comments", "Third"));
+        coalescer.send(mail("a@example.com", null, "Untagged"));
+
+        assertEquals("Untagged", next().getFirstValue("subject"));
+        assertEquals(5, coalescer.waiting());
+        List<Mail> digests = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            digests.add(next());
+
+        Mail digest = digests.get(0);
+        assertEquals("a@example.com", digest.getFirstValue("to"));
+        assertEquals("Third", digest.getFirstValue("subject"));
+        assertTrue(digest.getFirstValue("html").contains("3 new comments"));
+        assertEquals("Other", digests.get(1).getFirstValue("subject"));
+        assertEquals("Hello", digests.get(1).getFirstValue("text"));
+        assertEquals("Liked", digests.get(2).getFirstValue("subject"));
+        assertEquals(0, coalescer.waiting());
+        assertEquals(6, coalescer.received());
+        assertEquals(4, coalescer.sent());
+    }
+
+    @Test
+    public void groupsBySenderAndAllRecipients() {
+        coalescer = MailCoalescer.create(mail -> "comments", COMBINER, 1, TimeUnit.HOURS, 100);
+        Configuration other = new Configuration("example.org", "key-5678", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                sent.add(mail);
+                return false;
+            });
+        coalescer.send(mail("a@example.com", null, "First"));
+        coalescer.send(MailBuilder.fromPrototype(mail("a@example.com", null, "Copied"))
+                                  .cc("boss@example.com")
+                                  .build());
+        coalescer.send(MailBuilder.fromPrototype(mail("a@example.com", null, "Hidden"))
+                                  .bcc("audit@example.com")
+                                  .build());
+        coalescer.send(MailBuilder.fromPrototype(mail("a@example.com", null, "Sender"))
+                                  .from("other@example.org")
+                                  .build());
+        coalescer.send(Mail.using(other).to("a@example.com").subject("Other").text("Hi").build());
+        coalescer.send(mail("a@example.com", null, "Second"));
+        coalescer.close();
+        other.close();
+
+        assertEquals(5, sent.size());
+        assertTrue(sent.poll().getFirstValue("html").contains("2 new comments"));
+        assertEquals(6, coalescer.received());
+    }
+
+    @Test
+    public void boundedMemory() {
+        coalescer = MailCoalescer.create(mail -> "comments", COMBINER, 1, TimeUnit.HOURS, 3);
+        coalescer.send(mail("a@example.com", null, "First"));
+        coalescer.send(mail("b@example.com", null, "First"));
+        coalescer.send(mail("a@example.com", null, "Second"));
+        assertTrue(sent.isEmpty());
+
+        // the oldest group leaves before its window ends
+        coalescer.send(mail("c@example.com", null, "First"));
+        assertEquals(1, sent.size());
+        assertTrue(sent.peek().getFirstValue("html").contains("2 new comments"));
+        assertEquals(2, coalescer.waiting());
+    }
+
+    @Test
+    public void closeSendsAll() {
+        coalescer = MailCoalescer.create(mail -> "comments", COMBINER, 1, TimeUnit.HOURS, 100);
+        coalescer.send(mail("a@example.com", null, "First"));
+        coalescer.send(mail("a@example.com", null, "Second"));
+        coalescer.send(mail("b@example.com", null, "First"));
+        coalescer.close();
+
+        assertEquals(2, sent.size());
+        assertEquals(3, coalescer.received());
+        assertEquals(2, coalescer.sent());
+        try {
+            coalescer.send(mail("a@example.com", null, "Late"));
+            fail("the coalescer is closed");
+        } catch (IllegalStateException e) {
+            assertEquals(2, sent.size());
+        }
+    }
+
+    @Test
+    public void failingCombinerSendsOneByOne() {
+        List<Mail> failed = new ArrayList<>();
+        List<RuntimeException> errors = new ArrayList<>();
+        coalescer = MailCoalescer.create(mail -> "comments", mails -> {
+            throw new IllegalArgumentException("broken template");
+        }, 1, TimeUnit.HOURS, 100).failureListener((mails, error) -> {
+            failed.addAll(mails);
+            errors.add(error);
+        });
+        coalescer.send(mail("a@example.com", null, "First"));
+        coalescer.send(mail("a@example.com", null, "Second"));
+        coalescer.close();
+
+        assertEquals(2, sent.size());
+        assertEquals(2, coalescer.sent());
+        assertEquals(1, coalescer.failures());
+        assertEquals(2, failed.size());
+        assertEquals("broken template", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void failingSendsAreReported() {
+        Configuration broken = new Configuration("example.org", "key-1234", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                throw new IllegalStateException("filter down");
+            });
+        List<RuntimeException> errors = new ArrayList<>();
+        coalescer = MailCoalescer.create(mail -> "comments", COMBINER, 1, TimeUnit.HOURS, 100)
+            .failureListener((mails, error) -> errors.add(error));
+        coalescer.send(Mail.using(broken).to("a@example.com").text("Hello").build());
+        coalescer.send(Mail.using(broken).to("a@example.com").text("Hello").build());
+        coalescer.close();
+        broken.close();
+
+        assertEquals(1, coalescer.failures());
+        assertEquals("filter down", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void digestBodyIsClosed() {
+        AtomicInteger closed = new AtomicInteger();
+        coalescer = MailCoalescer.create(mail -> "comments", mails -> new Body("<h1>Digest</h1>", "Digest") {
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+                super.close();
+            }
+        }, 1, TimeUnit.HOURS, 100);
+        coalescer.send(mail("a@example.com", null, "First"));
+        coalescer.send(mail("a@example.com", null, "Second"));
+        assertEquals(0, closed.get());
+        coalescer.close();
+
+        assertEquals(1, sent.size());
+        assertEquals(1, closed.get());
+    }
+
+    private Mail next() throws InterruptedException {
+        Mail mail = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no mail sent", mail);
+        return mail;
+    }
+
+    private Mail mail(String to, String tag, String subject) {
+        MailBuilder builder = Mail.using(configuration)
+                                  .to(to)
+                                  .subject(subject)
+                                  .text("Hello");
+        if (tag != null)
+            builder.parameter("o:tag", tag);
+        return builder.build();
+    }
+}
@@ -5,6 +5,7 @@ import net.sargue.mailgun.*;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -181,4 +182,32 @@ public class ConfigurationTests {
 
         assertEquals(0, configuration.readTimeout());
     }
+
+    @Test
+    public void testRegistryEvictsIdle() {
+        MailgunTransport transport = new MailgunTransport();
+        TestClock clock = new TestClock();
+        ConfigurationRegistry registry = clock.registry(
+            domain -> new Configuration(transport).domain(domain),
+            100, TimeUnit.MILLISECONDS);
+        Configuration a = registry.get("a.com");
+        assertSame(a, registry.get("a.com"));
+        assertEquals("a.com", a.domain());
+        registry.get("b.com");
+        assertEquals(2, registry.size());
+
+        clock.advance(60, TimeUnit.MILLISECONDS);
+        registry.get("b.com");
+        assertEquals(2, registry.size());
+        clock.advance(60, TimeUnit.MILLISECONDS);
+        registry.get("b.com");
+        assertEquals(1, registry.size());
+        assertNotSame(a, registry.get("a.com"));
+
+        clock.advance(150, TimeUnit.MILLISECONDS);
+        registry.evictIdle();
+        assertEquals(0, registry.size());
+        registry.close();
+        transport.close();
+    }
 }
@@ -0,0 +1,224 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.content.Body;
+import net.sargue.mailgun.content.ContentConverter;
+import net.sargue.mailgun.content.Converters;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.FormatStyle;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ContentTests {
+    static final String CRLF = "\r\n";
+    static final String PRE_HTML =
+        "<!DOCTYPE html><html><head>\r\n" +
+        "<meta name='viewport' content='width=device-width' />" +
+        "<meta http-equiv='Content-Type' " +
+        "content='text/html; charset=UTF-8' />" +
+        "</head><body>\r\n";
+    static final String POST_HTML = "\r\n<br></body></html>";
+
+    @Test
+    public void empty() {
+        Body content = Body.builder().build();
+        assertEquals(PRE_HTML + POST_HTML, content.html());
+        assertEquals("", content.text());
+    }
+
+    @Test
+    public void bodyContentOverride() {
+        Body content = Body.builder().build();
+        content.html("html override");
+        content.text("text override");
+        assertEquals("html override", content.html());
+        assertEquals("text override", content.text());
+    }
+
+    @Test
+    public void dateFormat() {
+        Date date = new GregorianCalendar(1985, 9, 26, 1, 22).getTime();
+
+        Configuration cfg = new Configuration();
+        ContentConverter<Date> converter = new ContentConverter<Date>() {
+            SimpleDateFormat df = new SimpleDateFormat("dd/MM/yyyy");
+
+            @Override
+            public String toString(Date value) {
+                return df.format(value);
+            }
+        };
+
+        cfg = cfg.registerConverter(converter, Date.class);
+
+        Body body = Body.builder(cfg)
+            .text(date)
+            .build();
+
+        assertEquals("26/10/1985", body.text());
+    }
+
+    @Test
+    public void dateSubclassFormat() {
+        Configuration cfg = new Configuration();
+        ContentConverter<Date> converter = new ContentConverter<Date>() {
+            SimpleDateFormat df = new SimpleDateFormat("dd/MM/yyyy");
+
+            @Override
+            public String toString(Date value) {
+                return df.format(value);
+            }
+        };
+
+        cfg.registerConverter(converter, Date.class);
+
+        Date date = new GregorianCalendar(1985, 9, 26, 1, 22).getTime();
+
+        Body body = Body.builder(cfg)
+                        .text(new Timestamp(date.getTime()))
+                        .build();
+
+        assertEquals("26/10/1985", body.text());
+    }
+
+    @Test
+    public void primitives() {
+        Body body = Body.builder()
+                        .text(42).text(' ').text(42L).text(' ')
+                        .text(0.5).text(' ').text(0.1f).text('<')
+                        .build();
+
+        assertEquals("42 42 0.5 0.1<", body.text());
+        assertEquals(PRE_HTML + "42 42 0.5 0.1&lt;" + POST_HTML, body.html());
+    }
+
+    @Test
+    public void primitivesWithConverter() {
+        Configuration cfg = new Configuration()
+            .registerConverter(Converters.number("000", Locale.US), Number.class);
+
+        Body body = Body.builder(cfg)
+                        .text(7)
+                        .text(' ')
+                        .text(8L)
+                        .build();
+
+        assertEquals("007 008", body.text());
+    }
+
+    @Test
+    public void shortAndByteUseTheirConverters() {
+        Configuration cfg = new Configuration()
+            .registerConverter(value -> "s" + value, Short.class)
+            .registerConverter(value -> "b" + value, Byte.class);
+
+        Body body = Body.builder(cfg)
+                        .text((short) 7)
+                        .text(' ')
+                        .text((byte) 8)
+                        .text(' ')
+                        .text(9)
+                        .table()
+                        .row()
+                        .cell((short) 1)
+                        .end()
+                        .end()
+                        .build();
+
+        assertTrue(body.text().startsWith("s7 b8 9"));
+        assertTrue(body.html().contains("<td>s1</td>"));
+    }
+
+    @Test
+    public void convertersRegisteredLaterApply() {
+        Configuration cfg = new Configuration();
+        assertFalse(cfg.hasConverter(Integer.class));
+
+        cfg.registerConverter(Converters.number("000", Locale.US), Number.class);
+        assertTrue(cfg.hasConverter(Integer.class));
+        assertEquals("007", Body.builder(cfg).text(7).build().text());
+    }
+
+    @Test
+    public void builtInConverters() {
+        assertEquals("1,234.5",
+                     Converters.number(Locale.US).toString(1234.5));
+        assertEquals("1.234,50",
+                     Converters.number("#,##0.00", Locale.GERMANY)
+                               .toString(new BigDecimal("1234.5")));
+        assertEquals("50%", Converters.percent(Locale.US).toString(0.5));
+        assertEquals("$3.50", Converters.currency(Locale.US).toString(3.5));
+        assertEquals("Oct 26, 1985",
+                     Converters.date(FormatStyle.MEDIUM, Locale.US)
+                               .toString(LocalDate.of(1985, 10, 26)));
+
+        Date date = new Date(LocalDate.of(1985, 10, 26)
+                                      .atStartOfDay(ZoneOffset.UTC)
+                                      .toInstant()
+                                      .toEpochMilli());
+        assertEquals("26/10/1985",
+                     Converters.date("dd/MM/yyyy", Locale.US, ZoneOffset.UTC)
+                               .toString(new Timestamp(date.getTime())));
+    }
+
+    @Test
+    public void basicText() {
+        Body content = Body.builder()
+                           .h1("This is the H1")
+                           .p("This is a P")
+                           .build();
+        assertEquals(PRE_HTML + "<h1>This is the H1</h1>" + CRLF +
+                     "<p>This is a P</p>" + CRLF + POST_HTML,
+                     content.html());
+        assertEquals("This is the H1" + CRLF + "This is a P" + CRLF,
+                     content.text());
+    }
+
+    @Test
+    public void spillToDisk() throws IOException {
+        Body inMemory = Body.builder()
+                            .h1("This is the H1")
+                            .p("This is a P")
+                            .build();
+        Body spilled = Body.builder()
+                           .spillToDisk(16)
+                           .h1("This is the H1")
+                           .p("This is a P")
+                           .build();
+
+        assertTrue(inMemory.inMemory());
+        assertFalse(spilled.inMemory());
+        assertEquals(inMemory.html(), spilled.html());
+        assertEquals(inMemory.text(), spilled.text());
+        assertEquals(inMemory.html(), read(spilled.htmlStream()));
+        assertEquals(inMemory.text(), read(spilled.textStream()));
+
+        inMemory.html("html override");
+        assertEquals("html override", read(inMemory.htmlStream()));
+        spilled.html("html override");
+        assertTrue(spilled.text() != null && !spilled.inMemory());
+        spilled.close();
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        for (int n; (n = is.read(buffer)) != -1; )
+            out.write(buffer, 0, n);
+        is.close();
+        return new String(out.toByteArray(), UTF_8);
+    }
+}
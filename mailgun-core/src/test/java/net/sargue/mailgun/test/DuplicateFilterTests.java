@@ -0,0 +1,183 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.DuplicateMailFilter;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailBuilder;
+import net.sargue.mailgun.Response;
+import net.sargue.mailgun.TestClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTests {
+    private MailgunSimulator simulator;
+    private Configuration configuration;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new MailgunSimulator().start();
+        configuration = new Configuration("example.org", "key-1234", "sender@example.org")
+            .apiUrl(simulator.apiUrl());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        configuration.close();
+        simulator.close();
+    }
+
+    @Test
+    public void suppressesRepeats() {
+        DuplicateMailFilter filter = register(
+            new DuplicateMailFilter(1, TimeUnit.HOURS, 1000, 0.001));
+
+        assertTrue(sent(mail("a@example.com", "Hello", "{\"n\":1}")));
+        assertFalse(sent(mail("a@example.com", "Hello", "{\"n\":1}")));
+        assertTrue(sent(mail("b@example.com", "Hello", "{\"n\":1}")));
+        assertTrue(sent(mail("a@example.com", "Bye", "{\"n\":1}")));
+        assertTrue(sent(mail("a@example.com", "Hello", "{\"n\":2}")));
+        // the text is not compared
+        assertFalse(sent(Mail.using(configuration)
+                             .to("a@example.com")
+                             .subject("Hello")
+                             .template("notification")
+                             .variables("{\"n\":2}")
+                             .text("Other text")
+                             .build()));
+
+        assertEquals(6, filter.checked());
+        assertEquals(2, filter.suppressed());
+        assertEquals(4, simulator.accepted());
+        assertEquals(filter.fingerprint(mail("a@example.com", "Hello", "{\"n\":1}")),
+                     filter.fingerprint(mail("a@example.com", "Hello", "{\"n\":1}")));
+        assertEquals(32, filter.fingerprint(mail("a@example.com", "Hello", "")).length());
+    }
+
+    @Test
+    public void customVariablesAreCompared() {
+        DuplicateMailFilter filter = register(
+            new DuplicateMailFilter(1, TimeUnit.HOURS, 1000, 0.001));
+        Mail prototype = mail("a@example.com", "Your order", "{}");
+
+        assertTrue(sent(MailBuilder.fromPrototype(prototype)
+                                   .parameter("v:order", "1")
+                                   .parameter("v:user", "marty")
+                                   .build()));
+        assertTrue(sent(MailBuilder.fromPrototype(prototype)
+                                   .parameter("v:order", "2")
+                                   .parameter("v:user", "marty")
+                                   .build()));
+        // the order of the variables doesn't matter
+        assertFalse(sent(MailBuilder.fromPrototype(prototype)
+                                    .parameter("v:user", "marty")
+                                    .parameter("v:order", "2")
+                                    .build()));
+        assertTrue(sent(MailBuilder.fromPrototype(prototype)
+                                   .parameter("recipient-variables",
+                                              "{\"a@example.com\":{\"id\":1}}")
+                                   .build()));
+        assertEquals(1, filter.suppressed());
+        assertEquals(3, simulator.accepted());
+    }
+
+    @Test
+    public void retriesAfterFailure() {
+        DuplicateMailFilter filter = register(
+            new DuplicateMailFilter(1, TimeUnit.HOURS, 1000, 0.001));
+        Mail mail = mail("a@example.com", "Hello", "{}");
+
+        simulator.errorRate(1);
+        assertFalse(mail.send().isOk());
+        simulator.errorRate(0);
+        assertTrue(mail.send().isOk());
+        assertNull(mail.send());
+
+        assertEquals(3, filter.checked());
+        assertEquals(1, filter.suppressed());
+        assertEquals(1, simulator.accepted());
+    }
+
+    @Test
+    public void forgetsAfterTheWindow() {
+        TestClock clock = new TestClock();
+        register(clock.duplicateFilter(200, TimeUnit.MILLISECONDS, 1000, 0.001));
+        Mail mail = mail("a@example.com", "Hello", "{}");
+
+        assertTrue(sent(mail));
+        assertFalse(sent(mail));
+        // the previous window is still remembered
+        clock.advance(300, TimeUnit.MILLISECONDS);
+        assertFalse(sent(mail));
+        clock.advance(150, TimeUnit.MILLISECONDS);
+        assertTrue(sent(mail));
+    }
+
+    @Test
+    public void fixedMemoryAndFalsePositiveRate() {
+        DuplicateMailFilter filter = register(
+            new DuplicateMailFilter(1, TimeUnit.HOURS, 2_000, 0.01));
+        long memory = filter.memoryBytes();
+        Mail prototype = mail("a@example.com", "Hello", "{}");
+
+        int suppressed = 0;
+        for (int i = 0; i < 2_000; i++) {
+            Mail mail = MailBuilder.fromPrototype(prototype)
+                                   .to("user" + i + "@example.com")
+                                   .build();
+            if (!sent(mail))
+                suppressed++;
+        }
+
+        assertEquals(memory, filter.memoryBytes());
+        assertTrue("suppressed " + suppressed, suppressed < 50);
+        assertTrue(filter.falsePositiveRate() < 0.01);
+        assertTrue(filter.falsePositiveRate() > 0.0001);
+    }
+
+    @Test
+    public void exactCheckConfirmsRepeats() {
+        // far too many mails for the filter, most new mails look like repeats
+        DuplicateMailFilter filter = register(
+            new DuplicateMailFilter(1, TimeUnit.HOURS, 4, 0.5)
+                .exactCheck(mail -> "repeat@example.com".equals(mail.getFirstValue("to"))));
+        Mail prototype = mail("a@example.com", "Hello", "{}");
+
+        for (int i = 0; i < 1000; i++)
+            assertTrue(sent(
+                MailBuilder.fromPrototype(prototype).to("user" + i + "@example.com").build()));
+        assertTrue(filter.falsePositives() > 0);
+        assertTrue(filter.falsePositiveRate() > 0.5);
+
+        Mail repeat = mail("repeat@example.com", "Hello", "{}");
+        repeat.send();
+        assertFalse(sent(repeat));
+        assertTrue(filter.suppressed() > 0);
+    }
+
+    private DuplicateMailFilter register(DuplicateMailFilter filter) {
+        return filter.register(configuration);
+    }
+
+    private static boolean sent(Mail mail) {
+        Response response = mail.send();
+        if (response == null)
+            return false;
+        assertTrue(response.isOk());
+        return true;
+    }
+
+    private Mail mail(String to, String subject, String variables) {
+        return Mail.using(configuration)
+                   .to(to)
+                   .subject(subject)
+                   .template("notification")
+                   .variables(variables)
+                   .build();
+    }
+}
@@ -0,0 +1,135 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailExecutor;
+import net.sargue.mailgun.MailRequestCallback;
+import net.sargue.mailgun.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class ExecutorTests {
+    private MailgunSimulator simulator;
+    private Configuration configuration;
+    private final List<MailgunSimulator.Message> messages = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new MailgunSimulator().onMessage(messages::add).start();
+        configuration = new Configuration("example.org", "key-1234", "sender@example.org")
+            .apiUrl(simulator.apiUrl());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        configuration.close();
+        simulator.close();
+    }
+
+    @Test
+    public void slowCallbacksDontStallSends() throws Exception {
+        MailExecutor io = new MailExecutor("test-io", 2, 100, MailExecutor.Rejection.ABORT);
+        final MailExecutor callbacks =
+            new MailExecutor("test-callback", 1, 100, MailExecutor.Rejection.ABORT);
+        final CountDownLatch dispatched = new CountDownLatch(5);
+        configuration.ioExecutor(io).callbackExecutor(task -> {
+            callbacks.execute(task);
+            dispatched.countDown();
+        });
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(5);
+        final Set<String> threads = ConcurrentHashMap.newKeySet();
+        MailRequestCallback slow = new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                threads.add(Thread.currentThread().getName());
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                // not expected
+            }
+        };
+        try {
+            for (int i = 0; i < 5; i++)
+                mail().sendAsync(slow);
+            // all sent while the first callback blocks the only callback thread
+            assertTrue(dispatched.await(5, SECONDS));
+            assertTrue(running.await(5, SECONDS));
+            assertEquals(5, messages.size());
+            assertEquals(4, callbacks.queueDepth());
+            assertEquals(1, callbacks.activeThreads());
+            release.countDown();
+            assertTrue(completed.await(5, SECONDS));
+            assertEquals(Collections.singleton("test-callback-1"), threads);
+        } finally {
+            release.countDown();
+            io.close();
+            callbacks.close();
+        }
+    }
+
+    @Test
+    public void rejectedSendsFail() throws Exception {
+        MailExecutor io = new MailExecutor("test-io", 1, 1, MailExecutor.Rejection.ABORT);
+        configuration.ioExecutor(io);
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(2);
+        // without a callback executor the callbacks hold the only I/O thread
+        MailRequestCallback callback = new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                try {
+                    release.await(5, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                failures.add(throwable);
+            }
+        };
+        try {
+            for (int i = 0; i < 3; i++)
+                mail().sendAsync(callback);
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0) instanceof RejectedExecutionException);
+            assertEquals(1, io.rejected());
+            release.countDown();
+            assertTrue(completed.await(5, SECONDS));
+            assertEquals(2, simulator.accepted());
+        } finally {
+            release.countDown();
+            io.close();
+        }
+    }
+
+    private Mail mail() {
+        return Mail.using(configuration).to("a@example.com").text("Hello").build();
+    }
+}
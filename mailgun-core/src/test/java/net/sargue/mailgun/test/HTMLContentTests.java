@@ -1,10 +1,20 @@
 package net.sargue.mailgun.test;
 
 import net.sargue.mailgun.content.Body;
+import net.sargue.mailgun.content.Column;
+import net.sargue.mailgun.content.Fragment;
 import org.junit.Test;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
 import static net.sargue.mailgun.test.ContentTests.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 public class HTMLContentTests {
     @Test
@@ -341,6 +351,46 @@ public class HTMLContentTests {
         assertEquals("cell header 1" + CRLF + CRLF, body.text());
     }
 
+    @Test
+    public void tableFromIterable() {
+        List<String> rows = Arrays.asList("one", "three");
+        Body body = Body.builder()
+                        .table(rows,
+                               Column.of("word", (String w) -> w),
+                               Column.of("length", String::length))
+                        .build();
+        assertEquals(PRE_HTML +
+                     "<table border='1' cellpadding='0' cellspacing='0'>" +
+                     "<tr><th>word</th><th>length</th></tr>" + CRLF +
+                     "<tr><td>one</td><td>3</td></tr>" + CRLF +
+                     "<tr><td>three</td><td>5</td></tr>" + CRLF +
+                     "</table>" +
+                     CRLF + POST_HTML,
+                     body.html());
+        assertEquals("word,length" + CRLF + "one,3" + CRLF + "three,5" + CRLF +
+                     CRLF, body.text());
+    }
+
+    @Test
+    public void tableFromStream() throws ReflectiveOperationException {
+        Body body = Body.builder()
+                        .table(IntStream.range(1, 3).boxed(),
+                               Column.of(null, (Integer i) -> i * 10,
+                                         i -> "#" + i),
+                               Column.of(null, MethodHandles.lookup().findVirtual(
+                                   Integer.class, "toString",
+                                   MethodType.methodType(String.class))))
+                        .build();
+        assertEquals(PRE_HTML +
+                     "<table border='1' cellpadding='0' cellspacing='0'>" +
+                     "<tr><td>#10</td><td>1</td></tr>" + CRLF +
+                     "<tr><td>#20</td><td>2</td></tr>" + CRLF +
+                     "</table>" +
+                     CRLF + POST_HTML,
+                     body.html());
+        assertEquals("#10,1" + CRLF + "#20,2" + CRLF + CRLF, body.text());
+    }
+
 
     @Test
     public void tableRowWithHeader() {
@@ -450,4 +500,70 @@ public class HTMLContentTests {
         assertEquals(PRE_HTML + POST_HTML, body.html());
         assertEquals("", body.text());
     }
+
+    @Test
+    public void fragment() {
+        Fragment footer = Fragment.builder()
+                                  .p("Legal & stuff")
+                                  .buildFragment();
+        assertEquals("<p>Legal &amp; stuff</p>" + CRLF, footer.html());
+        assertEquals("Legal & stuff" + CRLF, footer.text());
+
+        Body spliced = Body.builder()
+                           .h1("Hello")
+                           .fragment(footer)
+                           .text("bye")
+                           .fragment(footer)
+                           .build();
+        Body direct = Body.builder()
+                          .h1("Hello")
+                          .p("Legal & stuff")
+                          .text("bye")
+                          .p("Legal & stuff")
+                          .build();
+        assertEquals(direct.html(), spliced.html());
+        assertEquals(direct.text(), spliced.text());
+    }
+
+    @Test
+    public void fragmentSpilled() {
+        Fragment header = Fragment.of("<h1>Brand</h1>", "Brand");
+        Body body = Body.builder()
+                        .spillToDisk(4)
+                        .fragment(header)
+                        .p("text")
+                        .build();
+        assertEquals(PRE_HTML + "<h1>Brand</h1><p>text</p>" + CRLF + POST_HTML,
+                     body.html());
+        assertEquals("Brand" + "text" + CRLF, body.text());
+        body.close();
+    }
+
+    @Test
+    public void closedBodyCannotBeRead() {
+        Body body = Body.builder()
+                        .spillToDisk(4)
+                        .p("spilled text")
+                        .build();
+        assertFalse(body.inMemory());
+        body.close();
+        body.close();
+        try {
+            body.htmlStream();
+            fail("the body is closed");
+        } catch (IllegalStateException e) {
+            assertEquals("The body has been closed", e.getMessage());
+        }
+        try {
+            body.text();
+            fail("the body is closed");
+        } catch (IllegalStateException e) {
+            assertEquals("The body has been closed", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fragmentBuilderCannotBuildBody() {
+        Fragment.builder().build();
+    }
 }
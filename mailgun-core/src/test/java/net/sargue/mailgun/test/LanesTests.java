@@ -0,0 +1,182 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailLanes;
+import net.sargue.mailgun.MailRequestCallback;
+import net.sargue.mailgun.MailgunException;
+import net.sargue.mailgun.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class LanesTests {
+    private MailgunSimulator simulator;
+    private Configuration configuration;
+    private final List<MailgunSimulator.Message> messages = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new MailgunSimulator().onMessage(messages::add).start();
+        configuration = new Configuration("example.org", "key-1234", "sender@example.org")
+            .apiUrl(simulator.apiUrl());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        configuration.close();
+        simulator.close();
+    }
+
+    @Test
+    public void reservedLaneSkipsTheBacklog() throws Exception {
+        MailLanes lanes = new MailLanes("test-lane", 3, 100)
+            .lane("transactional", 4, 1)
+            .lane("bulk", 1, 0);
+        configuration.mailLanes(lanes);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(20);
+        // the callbacks hold the bulk request slots until released
+        MailRequestCallback held = new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                try {
+                    release.await(5, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                // not expected
+            }
+        };
+        try {
+            Mail bulk = Mail.using(configuration)
+                            .to("a@example.com")
+                            .subject("bulk")
+                            .text("Hello")
+                            .parameter("o:tag", "newsletter")
+                            .parameter("o:tag", "bulk")
+                            .build();
+            for (int i = 0; i < 20; i++)
+                bulk.sendAsync(held);
+            assertEquals(2, lanes.inFlight("bulk"));
+            assertEquals(18, lanes.queued("bulk"));
+
+            Response response = Mail.using(configuration)
+                                    .to("b@example.com")
+                                    .subject("reset")
+                                    .text("Hello")
+                                    .lane("transactional")
+                                    .build()
+                                    .send();
+            assertTrue(response.isOk());
+            assertEquals(2, lanes.inFlight("bulk"));
+            assertEquals(18, lanes.queued("bulk"));
+
+            release.countDown();
+            assertTrue(completed.await(10, SECONDS));
+        } finally {
+            release.countDown();
+            lanes.close();
+        }
+        // the slots are released after the callbacks return
+        assertTrue(lanes.awaitTermination(5, SECONDS));
+        assertEquals(0, lanes.inFlight("bulk"));
+        assertEquals(0, lanes.inFlight("transactional"));
+        assertEquals(21, messages.size());
+    }
+
+    @Test
+    public void lanesShareByWeight() throws Exception {
+        MailLanes lanes = new MailLanes("test-lane", 1, 100)
+            .lane("high", 3, 0)
+            .lane("low", 1, 0);
+        configuration.mailLanes(lanes);
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(17);
+        try {
+            // the callback of the first one holds the only request slot
+            // while the others queue
+            lane("high").sendAsync(new MailRequestCallback() {
+                @Override
+                public void completed(Response response) {
+                    try {
+                        first.await(5, SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completed.countDown();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    // not expected
+                }
+            });
+            for (int i = 0; i < 8; i++) {
+                lane("low").sendAsync(callback(completed));
+                lane("high").sendAsync(callback(completed));
+            }
+            assertEquals(8, lanes.queued("high"));
+            assertEquals(8, lanes.queued("low"));
+            first.countDown();
+            assertTrue(completed.await(10, SECONDS));
+            int high = 0;
+            for (MailgunSimulator.Message message : messages.subList(1, 9)) {
+                if ("high".equals(message.getFirst("subject")))
+                    high++;
+            }
+            assertEquals(6, high);
+        } finally {
+            first.countDown();
+            lanes.close();
+        }
+    }
+
+    @Test
+    public void unknownLaneFails() {
+        configuration.mailLanes(new MailLanes("test-lane", 1, 1).lane("bulk", 1, 0));
+        try {
+            lane("other").send();
+            fail("the lane doesn't exist");
+        } catch (MailgunException e) {
+            assertTrue(e.getMessage().contains("other"));
+        }
+        assertEquals(0, messages.size());
+    }
+
+    private Mail lane(String lane) {
+        return Mail.using(configuration)
+                   .to("a@example.com")
+                   .subject(lane)
+                   .text("Hello")
+                   .lane(lane)
+                   .build();
+    }
+
+    private static MailRequestCallback callback(final CountDownLatch completed) {
+        return new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                completed.countDown();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                // not expected
+            }
+        };
+    }
+}
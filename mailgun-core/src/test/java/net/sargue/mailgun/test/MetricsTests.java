@@ -0,0 +1,133 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailMetrics.Phase;
+import net.sargue.mailgun.MailMetricsRecorder;
+import net.sargue.mailgun.MailRequestCallback;
+import net.sargue.mailgun.Response;
+import net.sargue.mailgun.Response.ResponseType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTests {
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                   Math.abs(expected - actual) <= expected * 0.04);
+    }
+
+    @Test
+    public void percentiles() {
+        MailMetricsRecorder metrics = new MailMetricsRecorder();
+        for (int i = 1; i <= 100_000; i++)
+            metrics.phase("a.com", Phase.SEND, i * 1_000L);
+
+        MailMetricsRecorder.Latency latency = metrics.snapshot().latency(Phase.SEND);
+        assertEquals(100_000, latency.count());
+        assertNear(50_000_000, latency.p50());
+        assertNear(99_000_000, latency.p99());
+        assertNear(99_900_000, latency.p999());
+        assertNear(100_000_000, latency.max());
+        assertEquals(0, metrics.snapshot().latency(Phase.BUILD).count());
+        assertEquals(0, metrics.snapshot().latency(Phase.BUILD).p99());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        MailMetricsRecorder metrics = new MailMetricsRecorder();
+        metrics.phase("a.com", Phase.ENCODE, 3);
+        metrics.phase("a.com", Phase.ENCODE, 7);
+
+        MailMetricsRecorder.Latency latency = metrics.snapshot().latency(Phase.ENCODE);
+        assertEquals(3, latency.p50());
+        assertEquals(7, latency.max());
+    }
+
+    @Test
+    public void countersPerDomain() {
+        MailMetricsRecorder metrics = new MailMetricsRecorder();
+        metrics.sendStarted("a.com");
+        metrics.sendStarted("a.com");
+        metrics.sendStarted("b.com");
+        metrics.requestBytes("a.com", 100);
+        metrics.responseBytes("b.com", 10);
+        metrics.sendCompleted("a.com", ResponseType.OK);
+        metrics.sendFailed("b.com", new IOException("reset"));
+
+        MailMetricsRecorder.Snapshot total = metrics.snapshot();
+        assertEquals(1, total.inFlight());
+        assertEquals(1, total.responses(ResponseType.OK));
+        assertEquals(1, total.failures());
+        assertEquals(100, total.requestBytes());
+        assertEquals(10, total.responseBytes());
+
+        MailMetricsRecorder.Snapshot a = metrics.snapshot("a.com");
+        assertEquals(1, a.inFlight());
+        assertEquals(1, a.responses(ResponseType.OK));
+        assertEquals(0, a.failures());
+        assertEquals(0, a.latency(Phase.SEND).count());
+
+        MailMetricsRecorder.Snapshot b = metrics.snapshot("b.com");
+        assertEquals(0, b.inFlight());
+        assertEquals(1, b.failures());
+        assertEquals(0, metrics.snapshot("c.com").inFlight());
+        assertEquals(2, metrics.domains().size());
+    }
+
+    @Test
+    public void queueTimeIsNotRequestTime() throws IOException, InterruptedException {
+        MailMetricsRecorder metrics = new MailMetricsRecorder();
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        try (MailgunSimulator simulator = new MailgunSimulator().start()) {
+            Configuration configuration =
+                new Configuration("example.org", "key-1234", "sender@example.org")
+                    .apiUrl(simulator.apiUrl())
+                    .registerMailMetrics(metrics)
+                    .ioExecutor(io);
+            io.execute(() -> {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Mail.using(configuration)
+                .to("marty@mcfly.com")
+                .text("Hello")
+                .build()
+                .sendAsync(new MailRequestCallback() {
+                    @Override
+                    public void completed(Response response) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        done.countDown();
+                    }
+                });
+            Thread.sleep(200);
+            busy.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            configuration.close();
+        } finally {
+            io.shutdown();
+        }
+
+        MailMetricsRecorder.Snapshot total = metrics.snapshot();
+        assertEquals(1, total.latency(Phase.QUEUE).count());
+        assertTrue(total.latency(Phase.QUEUE).max() > TimeUnit.MILLISECONDS.toNanos(190));
+        assertTrue(total.latency(Phase.REQUEST).max() < total.latency(Phase.QUEUE).max());
+        assertTrue(total.latency(Phase.SEND).max() >= total.latency(Phase.QUEUE).max());
+    }
+}
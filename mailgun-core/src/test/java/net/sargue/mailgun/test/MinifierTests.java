@@ -0,0 +1,123 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.MailBuilder;
+import net.sargue.mailgun.content.Body;
+import net.sargue.mailgun.content.HtmlMinifier;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MinifierTests {
+    private static final String TEMPLATE =
+        "<!DOCTYPE html>\r\n" +
+        "<html>\r\n" +
+        "  <head>\r\n" +
+        "    <meta charset='UTF-8' />\r\n" +
+        "    <style>\r\n" +
+        "      p  { color: red; }\r\n" +
+        "    </style>\r\n" +
+        "  </head>\r\n" +
+        "  <body>\r\n" +
+        "    <!-- a comment to drop -->\r\n" +
+        "    <!--[if mso]><table><tr><td><![endif]-->\r\n" +
+        "    <table   border = \"0\"  class=\"a  b\">\r\n" +
+        "      <tr>\r\n" +
+        "        <td>Hello   <b>big</b>   world</td>\r\n" +
+        "      </tr>\r\n" +
+        "    </table>\r\n" +
+        "    <pre>  keep\r\n    this  </pre>\r\n" +
+        "  </body>\r\n" +
+        "</html>\r\n";
+
+    private static final String MINIFIED =
+        "<!DOCTYPE html><html><head><meta charset='UTF-8'/><style>\r\n" +
+        "      p  { color: red; }\r\n" +
+        "    </style></head><body>" +
+        "<!--[if mso]><table><tr><td><![endif]-->\n" +
+        "<table border=\"0\" class=\"a  b\"><tr><td>Hello <b>big</b> world</td>" +
+        "</tr></table><pre>  keep\r\n    this  </pre></body></html>";
+
+    @Test
+    public void minify() {
+        assertEquals(MINIFIED, HtmlMinifier.minify(TEMPLATE));
+    }
+
+    @Test
+    public void minifyIsIdempotent() {
+        assertEquals(MINIFIED, HtmlMinifier.minify(MINIFIED));
+    }
+
+    @Test
+    public void minifyNull() {
+        assertNull(HtmlMinifier.minify(null));
+    }
+
+    @Test
+    public void minifyStreaming() throws IOException {
+        StringWriter out = new StringWriter();
+        try (HtmlMinifier minifier = new HtmlMinifier(out)) {
+            for (int i = 0; i < TEMPLATE.length(); i += 3)
+                minifier.write(TEMPLATE, i, Math.min(3, TEMPLATE.length() - i));
+        }
+        assertEquals(MINIFIED, out.toString());
+    }
+
+    @Test
+    public void textKeepsSignificantSpaces() {
+        assertEquals("a <b>b</b> c\n<i>d</i> 1 < 2",
+                     HtmlMinifier.minify("  a  <b>b</b>  c \r\n <i>d</i> 1 < 2 "));
+    }
+
+    @Test
+    public void unquotedValueBeforeSelfClosing() {
+        assertEquals("<a href=x />", HtmlMinifier.minify("<a  href = x  />"));
+    }
+
+    @Test
+    public void builderMinified() {
+        Configuration configuration = new Configuration().minifyHtml(true);
+        Body body = Body.builder(configuration)
+                        .h1("Title")
+                        .p("Some  text")
+                        .build();
+        assertEquals("<!DOCTYPE html><html><head>" +
+                     "<meta name='viewport' content='width=device-width'/>" +
+                     "<meta http-equiv='Content-Type' " +
+                     "content='text/html; charset=UTF-8'/>" +
+                     "</head><body><h1>Title</h1><p>Some text</p><br></body>" +
+                     "</html>",
+                     body.html());
+        assertEquals("Title\r\nSome  text\r\n", body.text());
+    }
+
+    @Test
+    public void builderMinifiedSpilled() {
+        Configuration configuration = new Configuration().minifyHtml(true);
+        Body inMemory = Body.builder(configuration)
+                            .h1("Title")
+                            .p("Some  text")
+                            .build();
+        Body spilled = Body.builder(configuration)
+                           .spillToDisk(10)
+                           .h1("Title")
+                           .p("Some  text")
+                           .build();
+        assertEquals(inMemory.html(), spilled.html());
+        spilled.close();
+    }
+
+    @Test
+    public void mailBuilderHtmlMinified() {
+        Configuration configuration = new Configuration().minifyHtml(true);
+        String html = MailBuilder.using(configuration)
+                                 .html("<p>\r\n  Hello  </p>\r\n")
+                                 .build()
+                                 .getFirstValue("html");
+        assertEquals("<p>\nHello </p>", html);
+    }
+}
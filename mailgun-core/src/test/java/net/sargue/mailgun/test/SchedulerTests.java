@@ -0,0 +1,227 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailScheduler;
+import net.sargue.mailgun.MailgunException;
+import net.sargue.mailgun.TestClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SchedulerTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<Mail> sent = new LinkedBlockingQueue<>();
+    private final List<MailScheduler> schedulers = new ArrayList<>();
+    private Configuration configuration;
+
+    @Before
+    public void setUp() {
+        // the filter sees the mails when they are due and stops the request
+        configuration = new Configuration("example.org", "key-1234", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                sent.add(mail);
+                return false;
+            });
+    }
+
+    @After
+    public void tearDown() {
+        for (MailScheduler scheduler : schedulers)
+            scheduler.close();
+        configuration.close();
+    }
+
+    @Test
+    public void sendsInTimeOrder() throws InterruptedException {
+        TestClock clock = new TestClock();
+        configuration.mailScheduler(scheduler(clock.scheduler(10, TimeUnit.MILLISECONDS)));
+        Instant start = Instant.ofEpochMilli(clock.millis());
+        mail("third").sendAt(start.plusMillis(300));
+        mail("first").sendAt(start.plusMillis(100));
+        mail("second").sendAt(start.plusMillis(200));
+        assertEquals(3, configuration.mailScheduler().pending());
+
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals("first", next().getFirstValue("subject"));
+        assertTrue(sent.isEmpty());
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals("second", next().getFirstValue("subject"));
+        assertEquals(1, configuration.mailScheduler().pending());
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals("third", next().getFirstValue("subject"));
+        assertEquals(0, configuration.mailScheduler().pending());
+    }
+
+    @Test
+    public void pastTimesSendRightAway() throws InterruptedException {
+        configuration.mailScheduler(scheduler(MailScheduler.create(10, TimeUnit.MILLISECONDS)));
+        mail("late").sendAt(Instant.now().minus(1, ChronoUnit.DAYS));
+        assertEquals("late", next().getFirstValue("subject"));
+    }
+
+    @Test
+    public void soonerMailWakesTheScheduler() throws InterruptedException {
+        TestClock clock = new TestClock();
+        configuration.mailScheduler(scheduler(clock.scheduler(10, TimeUnit.MILLISECONDS)));
+        Instant start = Instant.ofEpochMilli(clock.millis());
+        // the scheduler sleeps until the far mail, the near one wakes it up
+        mail("far").sendAt(start.plus(1, ChronoUnit.HOURS));
+        clock.advance(150, TimeUnit.MILLISECONDS);
+        mail("near").sendAt(start.plusMillis(150));
+
+        assertEquals("near", next().getFirstValue("subject"));
+        assertEquals(1, configuration.mailScheduler().pending());
+    }
+
+    @Test
+    public void failingSendsAreReported() throws InterruptedException {
+        Configuration broken = new Configuration("example.org", "key-1234", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                throw new IllegalStateException("filter down");
+            });
+        BlockingQueue<RuntimeException> errors = new LinkedBlockingQueue<>();
+        MailScheduler scheduler = scheduler(MailScheduler.create(10, TimeUnit.MILLISECONDS))
+            .failureListener((mails, error) -> errors.add(error));
+        broken.mailScheduler(scheduler);
+        Mail.using(broken).to("marty@mcfly.com").text("Hello").build().sendAt(Instant.now());
+
+        RuntimeException error = errors.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no failure reported", error);
+        assertEquals("filter down", error.getMessage());
+        assertEquals(1, scheduler.failures());
+        broken.close();
+    }
+
+    @Test
+    public void millionsPending() {
+        MailScheduler scheduler = scheduler(MailScheduler.create(1, TimeUnit.SECONDS));
+        configuration.mailScheduler(scheduler);
+        Mail mail = mail("reminder");
+        Instant start = Instant.now().plus(1, ChronoUnit.HOURS);
+        for (int i = 0; i < 1_000_000; i++)
+            mail.sendAt(start.plusSeconds(i * 31L));
+        assertEquals(1_000_000, scheduler.pending());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void durableFile() throws InterruptedException, IOException {
+        File file = new File(folder.getRoot(), "scheduled.log");
+        TestClock clock = new TestClock();
+        MailScheduler scheduler = clock.scheduler(10, TimeUnit.MILLISECONDS, file,
+                                                  domain -> configuration);
+        configuration.mailScheduler(scheduler);
+        Instant start = Instant.ofEpochMilli(clock.millis());
+        Mail.using(configuration)
+            .to("marty@mcfly.com")
+            .subject("soon")
+            .text("Caf\u00e9")
+            .lane("transactional")
+            .build()
+            .sendAt(start.plusMillis(300));
+        mail("later").sendAt(start.plus(30, ChronoUnit.DAYS));
+        scheduler.close();
+        assertTrue(file.length() > 0);
+
+        // due while the scheduler is down
+        clock.advance(400, TimeUnit.MILLISECONDS);
+        assertTrue(sent.isEmpty());
+        scheduler = scheduler(clock.scheduler(10, TimeUnit.MILLISECONDS, file,
+                                              domain -> configuration));
+        // the mails already due expire on the next tick
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        Mail soon = next();
+        assertEquals("soon", soon.getFirstValue("subject"));
+        assertEquals("marty@mcfly.com", soon.getFirstValue("to"));
+        assertEquals("Caf\u00e9", soon.getFirstValue("text"));
+        assertEquals("sender@example.org", soon.getFirstValue("from"));
+        assertEquals(1, soon.getValues("from").size());
+        assertEquals("transactional", soon.lane());
+        assertEquals(1, scheduler.pending());
+        scheduler.close();
+
+        scheduler = scheduler(clock.scheduler(10, TimeUnit.MILLISECONDS, file,
+                                              domain -> configuration));
+        assertEquals(1, scheduler.pending());
+    }
+
+    @Test
+    public void rejectedMailsAreSentAfterRestart() throws InterruptedException {
+        File file = new File(folder.getRoot(), "scheduled.log");
+        Configuration broken = new Configuration("example.org", "key-1234", "sender@example.org")
+            .registerMailSendFilter(mail -> {
+                throw new IllegalStateException("filter down");
+            });
+        BlockingQueue<RuntimeException> errors = new LinkedBlockingQueue<>();
+        MailScheduler scheduler = MailScheduler.create(10, TimeUnit.MILLISECONDS, file,
+                                                       domain -> broken);
+        scheduler.failureListener((mails, error) -> errors.add(error));
+        broken.mailScheduler(scheduler);
+        Mail.using(broken).to("marty@mcfly.com").subject("retried").build().sendAt(Instant.now());
+        assertNotNull("no failure reported", errors.poll(5, TimeUnit.SECONDS));
+        scheduler.close();
+        broken.close();
+
+        scheduler(MailScheduler.create(10, TimeUnit.MILLISECONDS, file, domain -> configuration));
+        assertEquals("retried", next().getFirstValue("subject"));
+    }
+
+    @Test
+    public void durableFileNeedsFormMails() throws IOException {
+        File file = new File(folder.getRoot(), "scheduled.log");
+        configuration.mailScheduler(scheduler(
+            MailScheduler.create(1, TimeUnit.SECONDS, file, domain -> configuration)));
+        Mail mail = Mail.using(configuration)
+                        .to("marty@mcfly.com")
+                        .multipart()
+                        .attachment(folder.newFile("report.csv"))
+                        .build();
+        try {
+            mail.sendAt(Instant.now().plusSeconds(60));
+            fail("attachments can't be stored");
+        } catch (MailgunException e) {
+            assertEquals(0, configuration.mailScheduler().pending());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noScheduler() {
+        mail("lost").sendAt(Instant.now());
+    }
+
+    private MailScheduler scheduler(MailScheduler scheduler) {
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    private Mail next() throws InterruptedException {
+        Mail mail = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no mail sent", mail);
+        return mail;
+    }
+
+    private Mail mail(String subject) {
+        return Mail.using(configuration)
+                   .to("marty@mcfly.com")
+                   .subject(subject)
+                   .text("Hello")
+                   .build();
+    }
+}
@@ -0,0 +1,118 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpConnectorProvider;
+import net.sargue.mailgun.spi.HttpRequest;
+import net.sargue.mailgun.spi.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A connector for the core tests, on {@link HttpURLConnection}, to send to
+ * the {@link MailgunSimulator} without depending on a connector module.
+ */
+public final class UrlConnectorProvider implements HttpConnectorProvider {
+    @Override
+    public String name() {
+        return "url";
+    }
+
+    @Override
+    public int priority() {
+        return 0;
+    }
+
+    @Override
+    public HttpConnector create() {
+        return new UrlConnector();
+    }
+
+    private static final class UrlConnector implements HttpConnector {
+        private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "url-connector");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        @Override
+        public HttpResponse post(HttpRequest request) throws IOException {
+            HttpURLConnection connection =
+                (HttpURLConnection) new URL(request.url()).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(request.connectTimeout());
+            connection.setReadTimeout(request.readTimeout());
+            connection.setRequestProperty("Authorization", request.authorization());
+            connection.setRequestProperty("Content-Type", request.contentType());
+            if (request.contentLength() >= 0)
+                connection.setFixedLengthStreamingMode(request.contentLength());
+            else
+                connection.setChunkedStreamingMode(8192);
+            try (OutputStream out = connection.getOutputStream()) {
+                request.writeTo(out);
+            }
+            int status = connection.getResponseCode();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = status >= 400
+                                  ? connection.getErrorStream()
+                                  : connection.getInputStream())
+            {
+                if (in != null) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                        body.write(buffer, 0, read);
+                }
+            }
+            return new HttpResponse() {
+                @Override
+                public int status() {
+                    return status;
+                }
+
+                @Override
+                public long contentLength() {
+                    return body.size();
+                }
+
+                @Override
+                public String body() {
+                    return new String(body.toByteArray(), UTF_8);
+                }
+            };
+        }
+
+        @Override
+        public void postAsync(HttpRequest request, Callback callback) {
+            executor.execute(() -> {
+                HttpResponse response;
+                try {
+                    response = post(request);
+                } catch (IOException | RuntimeException e) {
+                    callback.failed(e);
+                    return;
+                }
+                callback.completed(response);
+            });
+        }
+
+        @Override
+        public void warmUp(String url) throws IOException {
+            ((HttpURLConnection) new URL(url).openConnection()).getResponseCode();
+        }
+
+        @Override
+        public void close() {
+            executor.shutdown();
+        }
+    }
+}
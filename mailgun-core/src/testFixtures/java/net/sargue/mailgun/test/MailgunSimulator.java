@@ -0,0 +1,894 @@
+package net.sargue.mailgun.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * In-process simulator of the Mailgun messages API, for load and chaos
+ * testing.
+ * <p>
+ * It accepts {@code POST /v3/<domain>/messages} and
+ * {@code /v3/<domain>/messages.mime} with form or multipart bodies, checks
+ * the required parameters and answers with a JSON id like Mailgun does.
+ * Responses can be delayed following a {@link Latency} distribution and a
+ * share of the requests can be answered with a server error or a 429, or
+ * have their connection reset. Some requests can be read slowly, to push
+ * back on the client while it writes them.
+ * <p>
+ * A single thread serves all the connections with a selector and delays
+ * are timers on that same thread, so it keeps up with tens of thousands of
+ * requests per second and the measures are about the client. The message
+ * listener is called on that thread too, it must be quick.
+ * <p>
+ * Settings can be changed while running, they apply to the next requests.
+ */
+public class MailgunSimulator implements Closeable {
+    /**
+     * A distribution of response delays.
+     */
+    public interface Latency {
+        Latency NONE = random -> 0;
+
+        /**
+         * Returns the delay for the next response.
+         *
+         * @param random the random source to use
+         * @return the delay in nanoseconds
+         */
+        long nanos(Random random);
+
+        static Latency fixed(long millis) {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+            return random -> nanos;
+        }
+
+        static Latency uniform(long minMillis, long maxMillis) {
+            long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+            long range = TimeUnit.MILLISECONDS.toNanos(maxMillis) - min;
+            return random -> min + (long) (random.nextDouble() * range);
+        }
+
+        /**
+         * A log-normal distribution, the usual shape of service latencies:
+         * most responses near the median and a long tail. A sigma of 0.5
+         * puts the 99th percentile at about 3 times the median.
+         *
+         * @param medianMillis the median delay
+         * @param sigma        the standard deviation of the log of the delay
+         * @return the distribution
+         */
+        static Latency logNormal(double medianMillis, double sigma) {
+            double median = TimeUnit.MILLISECONDS.toNanos(1) * medianMillis;
+            return random -> (long) (median * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+
+    /**
+     * An uploaded file of a multipart request.
+     */
+    public static final class Part {
+        private final String filename;
+        private final String contentType;
+        private final byte[] content;
+
+        Part(String filename, String contentType, byte[] content) {
+            this.filename = filename;
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        public String filename() {
+            return filename;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public byte[] content() {
+            return content;
+        }
+    }
+
+    /**
+     * A message accepted by the simulator.
+     */
+    public static final class Message {
+        private final String domain;
+        private final boolean mime;
+        private final String id;
+        private final Map<String, List<String>> parameters;
+        private final Map<String, List<Part>> parts;
+
+        Message(String domain, boolean mime, String id,
+                Map<String, List<String>> parameters, Map<String, List<Part>> parts)
+        {
+            this.domain = domain;
+            this.mime = mime;
+            this.id = id;
+            this.parameters = parameters;
+            this.parts = parts;
+        }
+
+        public String domain() {
+            return domain;
+        }
+
+        /**
+         * Tells if it was sent to the {@code messages.mime} endpoint.
+         *
+         * @return true for MIME messages
+         */
+        public boolean mime() {
+            return mime;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String getFirst(String name) {
+            List<String> values = parameters.get(name);
+            return values == null ? null : values.get(0);
+        }
+
+        public List<String> getAll(String name) {
+            List<String> values = parameters.get(name);
+            return values == null ? Collections.<String>emptyList() : values;
+        }
+
+        public List<Part> parts(String name) {
+            List<Part> values = parts.get(name);
+            return values == null ? Collections.<Part>emptyList() : values;
+        }
+    }
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] HEADERS_END = {'\r', '\n', '\r', '\n'};
+    private static final DateTimeFormatter ID_TIMESTAMP =
+        DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private volatile Latency latency = Latency.NONE;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+    private volatile double resetRate;
+    private volatile double slowReadRate;
+    private volatile int slowReadBytesPerSecond;
+    private volatile Consumer<Message> listener;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+
+    // owned by the selector thread
+    private final Random random = new Random();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private long sequence;
+    private long idSecond = -1;
+    private String idTimestamp;
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Sets the distribution of the response delays. No delay by default.
+     *
+     * @param latency the distribution of the delays
+     * @return this simulator
+     */
+    public MailgunSimulator latency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests answered with a 500 error.
+     *
+     * @param rate from 0 to 1
+     * @return this simulator
+     */
+    public MailgunSimulator errorRate(double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests answered with a 429, as Mailgun does when
+     * the sending rate is over the limits.
+     *
+     * @param rate from 0 to 1
+     * @return this simulator
+     */
+    public MailgunSimulator throttleRate(double rate) {
+        this.throttleRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests whose connection is reset once read,
+     * instead of answered.
+     *
+     * @param rate from 0 to 1
+     * @return this simulator
+     */
+    public MailgunSimulator resetRate(double rate) {
+        this.resetRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the share of requests that are read slowly, at the given speed.
+     *
+     * @param rate           from 0 to 1
+     * @param bytesPerSecond the reading speed of those requests
+     * @return this simulator
+     */
+    public MailgunSimulator slowReads(double rate, int bytesPerSecond) {
+        if (bytesPerSecond <= 0)
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        this.slowReadBytesPerSecond = bytesPerSecond;
+        this.slowReadRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets a listener for the accepted messages. It is called on the
+     * simulator thread before answering, so it must be quick.
+     *
+     * @param listener the listener, null to remove it
+     * @return this simulator
+     */
+    public MailgunSimulator onMessage(Consumer<Message> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Starts listening on a free local port.
+     *
+     * @return this simulator
+     * @throws IOException if the port can't be opened
+     */
+    public MailgunSimulator start() throws IOException {
+        if (running)
+            throw new IllegalStateException("Already started");
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::loop, "mailgun-simulator");
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the API URL to set on the configuration.
+     *
+     * @return the URL of the simulated API
+     */
+    public String apiUrl() {
+        return "http://127.0.0.1:" + port() + "/v3";
+    }
+
+    /**
+     * Returns the number of complete requests read.
+     *
+     * @return the number of requests
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of messages queued, answered with a 200.
+     *
+     * @return the number of accepted messages
+     */
+    public long accepted() {
+        return accepted.get();
+    }
+
+    /**
+     * Returns the number of invalid requests, answered with a 4xx other
+     * than 429.
+     *
+     * @return the number of invalid requests
+     */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    public long resets() {
+        return resets.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (selector == null)
+            return;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys())
+            key.channel().close();
+        selector.close();
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                long timeout = runTimers();
+                if (timeout == 0)
+                    selector.selectNow();
+                else
+                    selector.select(timeout < 0 ? 0 : timeout);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else
+                        ((Connection) key.attachment()).ready(key);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Simulator failed", e);
+        }
+    }
+
+    /**
+     * Runs the due timers and returns the milliseconds to the next one, 0
+     * for right away or -1 if there are none.
+     */
+    private long runTimers() {
+        long now = System.nanoTime();
+        Timer timer;
+        while ((timer = timers.peek()) != null && timer.due - now <= 0) {
+            timers.poll();
+            timer.connection.fire(timer.respond);
+        }
+        if (timer == null)
+            return -1;
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(timer.due - now), 1);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private boolean chance(double rate) {
+        return rate > 0 && (rate >= 1 || random.nextDouble() < rate);
+    }
+
+    private static final class Timer implements Comparable<Timer> {
+        final long due;
+        final Connection connection;
+        final boolean respond;
+
+        Timer(long due, Connection connection, boolean respond) {
+            this.due = due;
+            this.connection = connection;
+            this.respond = respond;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            return Long.compare(due - other.due, 0);
+        }
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        int bytesPerSecond;
+        byte[] buffer = new byte[16384];
+        int length;
+        ByteBuffer response;
+        boolean closeAfterResponse;
+        boolean waiting;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void ready(SelectionKey key) {
+            try {
+                if (key.isWritable())
+                    write();
+                else if (key.isReadable())
+                    read();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void fire(boolean respond) {
+            if (!channel.isOpen())
+                return;
+            waiting = false;
+            if (!respond) {
+                // a pending response enables reading again once written
+                if (response == null)
+                    key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            try {
+                write();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void read() throws IOException {
+            if (length == 0)
+                // a new request
+                bytesPerSecond = chance(slowReadRate) ? slowReadBytesPerSecond : 0;
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            int limit = buffer.length - length;
+            if (bytesPerSecond > 0)
+                limit = Math.min(limit, Math.max(bytesPerSecond / 20, 1));
+            int read = channel.read(ByteBuffer.wrap(buffer, length, limit));
+            if (read < 0) {
+                close();
+                return;
+            }
+            length += read;
+            if (bytesPerSecond > 0 && read > 0) {
+                // pause reading for as long as those bytes take at this speed
+                key.interestOps(0);
+                waiting = true;
+                timers.add(new Timer(System.nanoTime()
+                                     + read * 1_000_000_000L / bytesPerSecond,
+                                     this, false));
+            }
+            process();
+        }
+
+        private void process() throws IOException {
+            if (response != null || !channel.isOpen())
+                return;
+            int headersEnd = indexOf(buffer, 0, length, HEADERS_END);
+            if (headersEnd < 0)
+                return;
+            Request request = Request.parse(buffer, headersEnd);
+            if (request == null) {
+                respond(Response.BAD_REQUEST, true, 0);
+                return;
+            }
+            int bodyStart = headersEnd + HEADERS_END.length;
+            byte[] body;
+            int end;
+            if (request.chunked) {
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                end = dechunk(buffer, bodyStart, length, decoded);
+                if (end < 0)
+                    return;
+                body = decoded.toByteArray();
+            } else {
+                if (request.contentLength > Integer.MAX_VALUE - bodyStart) {
+                    respond(Response.BAD_REQUEST, true, 0);
+                    return;
+                }
+                end = bodyStart + (int) request.contentLength;
+                if (length < end)
+                    return;
+                body = Arrays.copyOfRange(buffer, bodyStart, end);
+            }
+            System.arraycopy(buffer, end, buffer, 0, length - end);
+            length -= end;
+            requests.incrementAndGet();
+
+            if (chance(resetRate)) {
+                resets.incrementAndGet();
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+                close();
+                return;
+            }
+            respond(handle(request, body), !request.keepAlive, latency.nanos(random));
+        }
+
+        private void respond(byte[] bytes, boolean close, long delay) throws IOException {
+            response = ByteBuffer.wrap(bytes);
+            closeAfterResponse = close;
+            if (delay <= 0 && !waiting) {
+                write();
+            } else {
+                key.interestOps(0);
+                waiting = true;
+                timers.add(new Timer(System.nanoTime() + Math.max(delay, 0), this, true));
+            }
+        }
+
+        private void write() throws IOException {
+            channel.write(response);
+            if (response.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            response = null;
+            if (closeAfterResponse) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            // there may be a pipelined request already read
+            process();
+        }
+
+        private void close() {
+            try {
+                key.cancel();
+                channel.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private byte[] handle(Request request, byte[] body) {
+        String[] path = request.path.split("/");
+        // "", "v3", domain, "messages" or "messages.mime"
+        if (path.length != 4 || !"v3".equals(path[1])
+            || !("messages".equals(path[3]) || "messages.mime".equals(path[3])))
+        {
+            rejected.incrementAndGet();
+            return Response.NOT_FOUND;
+        }
+        if (!"POST".equals(request.method)) {
+            rejected.incrementAndGet();
+            return Response.NOT_ALLOWED;
+        }
+        if (request.authorization == null || !request.authorization.startsWith("Basic ")) {
+            rejected.incrementAndGet();
+            return Response.UNAUTHORIZED;
+        }
+        if (chance(throttleRate)) {
+            throttled.incrementAndGet();
+            return Response.TOO_MANY_REQUESTS;
+        }
+        if (chance(errorRate)) {
+            errors.incrementAndGet();
+            return Response.SERVER_ERROR;
+        }
+
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        Map<String, List<Part>> parts = new LinkedHashMap<>();
+        String contentType = request.contentType == null
+                             ? ""
+                             : request.contentType.toLowerCase(Locale.ROOT);
+        if (contentType.startsWith("application/x-www-form-urlencoded"))
+            parseForm(body, parameters);
+        else if (contentType.startsWith("multipart/form-data"))
+            parseMultipart(body, boundary(request.contentType), parameters, parts);
+
+        boolean mime = path[3].endsWith(".mime");
+        String missing = !parameters.containsKey("to") ? "to"
+                         : mime && !parts.containsKey("message") ? "message"
+                         : !mime && !parameters.containsKey("from") ? "from"
+                         : null;
+        if (missing != null) {
+            rejected.incrementAndGet();
+            return Response.json(400, "Bad Request",
+                                 "{\"message\":\"'" + missing + "' parameter is missing\"}");
+        }
+
+        String id = nextId(path[2]);
+        Consumer<Message> listener = this.listener;
+        if (listener != null)
+            listener.accept(new Message(path[2], mime, id, parameters, parts));
+        accepted.incrementAndGet();
+        return Response.json(200, "OK",
+                             "{\"id\":\"" + id + "\",\"message\":\"Queued. Thank you.\"}");
+    }
+
+    private String nextId(String domain) {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != idSecond) {
+            idSecond = second;
+            idTimestamp = ID_TIMESTAMP.format(LocalDateTime.ofEpochSecond(second, 0,
+                                                                          ZoneOffset.UTC));
+        }
+        return "<" + idTimestamp + "." + (++sequence) + "."
+               + Long.toHexString(random.nextLong()).toUpperCase(Locale.ROOT)
+               + "@" + domain + ">";
+    }
+
+    private static final class Request {
+        String method;
+        String path;
+        String contentType;
+        String authorization;
+        long contentLength;
+        boolean chunked;
+        boolean keepAlive;
+
+        static Request parse(byte[] buffer, int headersEnd) {
+            String[] lines = new String(buffer, 0, headersEnd, ISO_8859_1).split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3)
+                return null;
+            Request request = new Request();
+            request.method = requestLine[0];
+            int query = requestLine[1].indexOf('?');
+            request.path = query < 0 ? requestLine[1] : requestLine[1].substring(0, query);
+            request.keepAlive = "HTTP/1.1".equals(requestLine[2]);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon < 0)
+                    return null;
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length":
+                        try {
+                            request.contentLength = Long.parseLong(value);
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        break;
+                    case "transfer-encoding":
+                        request.chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                        break;
+                    case "content-type":
+                        request.contentType = value;
+                        break;
+                    case "authorization":
+                        request.authorization = value;
+                        break;
+                    case "connection":
+                        if ("close".equalsIgnoreCase(value))
+                            request.keepAlive = false;
+                        else if ("keep-alive".equalsIgnoreCase(value))
+                            request.keepAlive = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return request.contentLength < 0 ? null : request;
+        }
+    }
+
+    private static final class Response {
+        static final byte[] BAD_REQUEST =
+            json(400, "Bad Request", "{\"message\":\"Malformed request\"}");
+        static final byte[] UNAUTHORIZED = raw(401, "Unauthorized", "text/plain", "Forbidden");
+        static final byte[] NOT_FOUND =
+            json(404, "Not Found", "{\"message\":\"Not Found\"}");
+        static final byte[] NOT_ALLOWED =
+            json(405, "Method Not Allowed", "{\"message\":\"Method Not Allowed\"}");
+        static final byte[] TOO_MANY_REQUESTS =
+            json(429, "Too Many Requests", "{\"message\":\"Too many requests\"}");
+        static final byte[] SERVER_ERROR =
+            json(500, "Internal Server Error", "{\"message\":\"Internal Server Error\"}");
+
+        static byte[] json(int status, String reason, String body) {
+            return raw(status, reason, "application/json", body);
+        }
+
+        static byte[] raw(int status, String reason, String contentType, String body) {
+            byte[] content = body.getBytes(UTF_8);
+            byte[] head = ("HTTP/1.1 " + status + " " + reason + "\r\n"
+                           + "Content-Type: " + contentType + "\r\n"
+                           + "Content-Length: " + content.length + "\r\n\r\n")
+                .getBytes(ISO_8859_1);
+            byte[] response = Arrays.copyOf(head, head.length + content.length);
+            System.arraycopy(content, 0, response, head.length, content.length);
+            return response;
+        }
+    }
+
+    /**
+     * Decodes a chunked body. Returns the end of the body on the buffer or
+     * -1 if it is not complete yet.
+     */
+    private static int dechunk(byte[] buffer, int from, int to, ByteArrayOutputStream out) {
+        int position = from;
+        while (true) {
+            int lineEnd = indexOf(buffer, position, to, CRLF);
+            if (lineEnd < 0)
+                return -1;
+            String sizeLine = new String(buffer, position, lineEnd - position, ISO_8859_1);
+            int extension = sizeLine.indexOf(';');
+            int size = Integer.parseInt((extension < 0 ? sizeLine
+                                                        : sizeLine.substring(0, extension))
+                                            .trim(), 16);
+            position = lineEnd + CRLF.length;
+            if (size == 0) {
+                // optional trailers, then an empty line
+                int end = position + CRLF.length <= to
+                          && buffer[position] == '\r' && buffer[position + 1] == '\n'
+                          ? position
+                          : indexOf(buffer, position, to, HEADERS_END);
+                if (end < 0)
+                    return -1;
+                return end == position ? end + CRLF.length : end + HEADERS_END.length;
+            }
+            if (to - position < size + CRLF.length)
+                return -1;
+            out.write(buffer, position, size);
+            position += size + CRLF.length;
+        }
+    }
+
+    private static void parseForm(byte[] body, Map<String, List<String>> parameters) {
+        try {
+            for (String pair : new String(body, ISO_8859_1).split("&")) {
+                if (pair.isEmpty())
+                    continue;
+                int equals = pair.indexOf('=');
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals),
+                                                "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1),
+                                                                   "UTF-8");
+                parameters.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String boundary(String contentType) {
+        for (String attribute : contentType.split(";")) {
+            attribute = attribute.trim();
+            if (attribute.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String boundary = attribute.substring("boundary=".length());
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\""))
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                return boundary;
+            }
+        }
+        return null;
+    }
+
+    private static void parseMultipart(byte[] body, String boundary,
+                                       Map<String, List<String>> parameters,
+                                       Map<String, List<Part>> parts)
+    {
+        if (boundary == null)
+            return;
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(ISO_8859_1);
+        // the first delimiter may lack the leading line break
+        int position = indexOf(body, 0, body.length,
+                               Arrays.copyOfRange(delimiter, 2, delimiter.length));
+        if (position < 0)
+            return;
+        position += delimiter.length - 2;
+        while (position + 2 <= body.length
+               && !(body[position] == '-' && body[position + 1] == '-'))
+        {
+            int headersStart = indexOf(body, position, body.length, CRLF);
+            int headersEnd = indexOf(body, headersStart, body.length, HEADERS_END);
+            if (headersStart < 0 || headersEnd < 0)
+                return;
+            int contentStart = headersEnd + HEADERS_END.length;
+            int contentEnd = indexOf(body, contentStart, body.length, delimiter);
+            if (contentEnd < 0)
+                return;
+
+            String name = null;
+            String filename = null;
+            String contentType = null;
+            String headers = headersEnd > headersStart
+                             ? new String(body, headersStart + CRLF.length,
+                                          headersEnd - headersStart - CRLF.length, UTF_8)
+                             : "";
+            for (String header : headers.split("\r\n")) {
+                int colon = header.indexOf(':');
+                if (colon < 0)
+                    continue;
+                String headerName = header.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = header.substring(colon + 1).trim();
+                if ("content-disposition".equals(headerName)) {
+                    name = dispositionAttribute(value, "name");
+                    filename = dispositionAttribute(value, "filename");
+                } else if ("content-type".equals(headerName)) {
+                    contentType = value;
+                }
+            }
+            if (name != null) {
+                byte[] content = Arrays.copyOfRange(body, contentStart, contentEnd);
+                if (filename == null && (contentType == null
+                                         || contentType.toLowerCase(Locale.ROOT)
+                                                       .startsWith("text/plain")))
+                    parameters.computeIfAbsent(name, k -> new ArrayList<>(1))
+                              .add(new String(content, UTF_8));
+                else
+                    parts.computeIfAbsent(name, k -> new ArrayList<>(1))
+                         .add(new Part(filename, contentType, content));
+            }
+            position = contentEnd + delimiter.length;
+        }
+    }
+
+    private static String dispositionAttribute(String disposition, String attribute) {
+        for (String item : disposition.split(";")) {
+            item = item.trim();
+            int equals = item.indexOf('=');
+            if (equals < 0 || !item.substring(0, equals).trim().equalsIgnoreCase(attribute))
+                continue;
+            String value = item.substring(equals + 1).trim();
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\""))
+                value = value.substring(1, value.length() - 1);
+            // the escapes of the HTML form submission algorithm
+            return value.replace("%22", "\"").replace("%0D", "\r").replace("%0A", "\n");
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] array, int from, int to, byte[] pattern) {
+        if (from < 0)
+            return -1;
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++)
+                if (array[i + j] != pattern[j])
+                    continue outer;
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,162 @@
+package net.sargue.mailgun.jdkhttp;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpRequest;
+import net.sargue.mailgun.spi.HttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sends the requests with the {@link HttpURLConnection} of the JDK, which
+ * keeps the connections alive for reuse. Asynchronous requests are made on
+ * a bounded pool of daemon threads, created when first needed, and wait on
+ * its queue when all of them are busy.
+ * <p>
+ * The body is always streamed, never buffered by the connection: a buffered
+ * POST is sent again by the JDK when a reused connection fails while
+ * reading the response, which could deliver a mail twice.
+ */
+final class JdkHttpConnector implements HttpConnector {
+    private static final int MAX_THREADS = 16;
+
+    private final Object lock = new Object();
+    private ExecutorService executor;
+    private boolean closed;
+
+    @Override
+    public HttpResponse post(HttpRequest request) throws IOException {
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(request.url()).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(request.connectTimeout());
+        connection.setReadTimeout(request.readTimeout());
+        connection.setRequestProperty("Authorization", request.authorization());
+        connection.setRequestProperty("Content-Type", request.contentType());
+        connection.setRequestProperty("Accept", "application/json");
+        long length = request.contentLength();
+        if (length < 0)
+            connection.setChunkedStreamingMode(8192);
+        else
+            connection.setFixedLengthStreamingMode(length);
+        try (OutputStream out = connection.getOutputStream()) {
+            request.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            // the connection is left half written, it can't be reused
+            connection.disconnect();
+            throw e;
+        }
+        connection.getResponseCode();
+        return new JdkHttpResponse(connection);
+    }
+
+    @Override
+    public void postAsync(final HttpRequest request, final Callback callback) {
+        executor().execute(() -> {
+            HttpResponse response;
+            try {
+                response = post(request);
+            } catch (IOException | RuntimeException e) {
+                callback.failed(e);
+                return;
+            }
+            callback.completed(response);
+        });
+    }
+
+    @Override
+    public void warmUp(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("HEAD");
+        connection.getResponseCode();
+        new JdkHttpResponse(connection).body();
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    private ExecutorService executor() {
+        synchronized (lock) {
+            if (closed)
+                throw new IllegalStateException("The connector has been closed");
+            if (executor == null) {
+                AtomicInteger count = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    task -> {
+                        Thread thread = new Thread(task, "mailgun-jdkhttp-"
+                                                         + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+            }
+            return executor;
+        }
+    }
+
+    private static final class JdkHttpResponse implements HttpResponse {
+        private final HttpURLConnection connection;
+
+        JdkHttpResponse(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public int status() {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                // already read when the response was created
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public long contentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        /**
+         * Reads the body until the end, so the connection goes back to the
+         * keep alive cache.
+         */
+        @Override
+        public String body() throws IOException {
+            InputStream in = status() >= 400 ? connection.getErrorStream()
+                                             : connection.getInputStream();
+            if (in == null)
+                return "";
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            try {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0)
+                    out.write(buffer, 0, read);
+            } finally {
+                in.close();
+            }
+            return new String(out.toByteArray(), UTF_8);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.sargue.mailgun.jdkhttp;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpConnectorProvider;
+
+/**
+ * Provides the {@code "jdkhttp"} connector, which uses the HTTP client of
+ * the JDK and has no dependencies.
+ */
+public final class JdkHttpConnectorProvider implements HttpConnectorProvider {
+    @Override
+    public String name() {
+        return "jdkhttp";
+    }
+
+    @Override
+    public int priority() {
+        return 0;
+    }
+
+    @Override
+    public HttpConnector create() {
+        return new JdkHttpConnector();
+    }
+}
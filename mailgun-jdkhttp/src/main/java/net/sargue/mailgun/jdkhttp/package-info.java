@@ -0,0 +1,5 @@
+/**
+ * The connector using the HTTP client of the JDK, for a small classpath
+ * and a fast startup.
+ */
+package net.sargue.mailgun.jdkhttp;
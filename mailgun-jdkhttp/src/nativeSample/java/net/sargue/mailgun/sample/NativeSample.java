@@ -0,0 +1,108 @@
+package net.sargue.mailgun.sample;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailRequestCallback;
+import net.sargue.mailgun.Response;
+import net.sargue.mailgun.content.Body;
+import net.sargue.mailgun.content.Builder;
+import net.sargue.mailgun.test.MailgunSimulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A short lived sender, to check the library on a native image: it renders
+ * a mail, sends it as a form, as a multipart and asynchronously to a local
+ * {@link MailgunSimulator}, and prints the time to the first response and
+ * the peak resident memory. It exits with a non zero status on failure.
+ */
+public final class NativeSample {
+    private NativeSample() {}
+
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        List<MailgunSimulator.Message> messages = new CopyOnWriteArrayList<>();
+        try (MailgunSimulator simulator = new MailgunSimulator().onMessage(messages::add).start()) {
+            Configuration configuration =
+                new Configuration("example.org", "key-1234", "Sender <sender@example.org>")
+                    .apiUrl(simulator.apiUrl());
+            try {
+                Body body = new Builder(configuration)
+                    .h1("Daily report")
+                    .p("Orders & returns for <today>")
+                    .text(1234.5)
+                    .build();
+                check(Mail.using(configuration)
+                          .to("a@example.com")
+                          .subject("Report")
+                          .content(body)
+                          .build()
+                          .send());
+                long firstResponse = System.nanoTime() - start;
+
+                check(Mail.using(configuration)
+                          .to("a@example.com")
+                          .text("See attached")
+                          .multipart()
+                          .attachment(new ByteArrayInputStream(new byte[10_000]), "data.bin")
+                          .build()
+                          .send());
+
+                CompletableFuture<Response> done = new CompletableFuture<>();
+                Mail.using(configuration)
+                    .to("b@example.com")
+                    .text("Async")
+                    .build()
+                    .sendAsync(new MailRequestCallback() {
+                        @Override
+                        public void completed(Response response) {
+                            done.complete(response);
+                        }
+
+                        @Override
+                        public void failed(Throwable throwable) {
+                            done.completeExceptionally(throwable);
+                        }
+                    });
+                check(done.get(10, TimeUnit.SECONDS));
+
+                if (messages.size() != 3
+                    || !messages.get(0).getFirst("html").contains("&lt;today&gt;"))
+                    throw new IllegalStateException("Unexpected messages " + messages.size());
+                System.out.printf("sent %d mails, first response after %d ms, peak RSS %s%n",
+                                  messages.size(),
+                                  TimeUnit.NANOSECONDS.toMillis(firstResponse),
+                                  peakRss());
+            } finally {
+                configuration.close();
+            }
+        }
+    }
+
+    private static void check(Response response) {
+        if (!response.isOk())
+            throw new IllegalStateException("Send failed: " + response.responseCode()
+                                            + " " + response.responseMessage());
+    }
+
+    /**
+     * The peak resident set size, from {@code /proc} on Linux.
+     */
+    private static String peakRss() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.exists(status))
+            return "unknown";
+        for (String line : Files.readAllLines(status))
+            if (line.startsWith("VmHWM:"))
+                return line.substring(6).trim();
+        return "unknown";
+    }
+}
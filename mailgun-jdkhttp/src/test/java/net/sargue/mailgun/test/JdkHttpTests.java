@@ -0,0 +1,173 @@
+package net.sargue.mailgun.test;
+
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.MailRequestCallback;
+import net.sargue.mailgun.MailgunException;
+import net.sargue.mailgun.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JdkHttpTests {
+    private static final String DOMAIN = "example.org";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MailgunSimulator simulator;
+    private Configuration configuration;
+    private final List<MailgunSimulator.Message> messages = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new MailgunSimulator().onMessage(messages::add).start();
+        configuration = new Configuration(DOMAIN, "key-1234", "sender@example.org")
+            .apiUrl(simulator.apiUrl());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        configuration.close();
+        simulator.close();
+    }
+
+    @Test
+    public void sendForm() {
+        Response response = Mail.using(configuration)
+                                .to("a@example.com")
+                                .subject("Caf\u00e9 & more")
+                                .text("Hello")
+                                .build()
+                                .send();
+
+        assertTrue(response.isOk());
+        MailgunSimulator.Message message = messages.get(0);
+        assertTrue(response.responseMessage().contains(message.id()));
+        assertEquals("a@example.com", message.getFirst("to"));
+        assertEquals("Caf\u00e9 & more", message.getFirst("subject"));
+        assertEquals("sender@example.org", message.getFirst("from"));
+    }
+
+    @Test
+    public void sendStreamedFile() throws IOException {
+        byte[] content = new byte[100_000];
+        Arrays.fill(content, (byte) 'x');
+        File file = folder.newFile("report.csv");
+        Files.write(file.toPath(), content);
+
+        for (int i = 0; i < 2; i++) {
+            Response response = Mail.using(configuration)
+                                    .to("a@example.com")
+                                    .multipart()
+                                    .attachment(file)
+                                    .build()
+                                    .send();
+            assertTrue(response.isOk());
+        }
+
+        assertEquals(2, messages.size());
+        MailgunSimulator.Part part = messages.get(1).parts("attachment").get(0);
+        assertEquals("report.csv", part.filename());
+        assertArrayEquals(content, part.content());
+    }
+
+    @Test
+    public void sendAsync() throws Exception {
+        final CompletableFuture<Response> done = new CompletableFuture<>();
+        mail().sendAsync(new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                done.complete(response);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+        });
+
+        assertTrue(done.get(10, TimeUnit.SECONDS).isOk());
+        assertEquals(1, messages.size());
+    }
+
+    @Test
+    public void asyncBurstIsBounded() throws Exception {
+        simulator.latency(MailgunSimulator.Latency.fixed(200));
+        CountDownLatch done = new CountDownLatch(40);
+        AtomicInteger ok = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            mail().sendAsync(new MailRequestCallback() {
+                @Override
+                public void completed(Response response) {
+                    if (response.isOk())
+                        ok.incrementAndGet();
+                    done.countDown();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    done.countDown();
+                }
+            });
+        }
+        long threads = Thread.getAllStackTraces().keySet().stream()
+                             .filter(thread -> thread.getName().startsWith("mailgun-jdkhttp-"))
+                             .count();
+
+        assertTrue("threads " + threads, threads <= 16);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(40, ok.get());
+        assertEquals(40, messages.size());
+    }
+
+    @Test
+    public void errorResponses() {
+        simulator.throttleRate(1);
+        assertEquals(429, mail().send().responseCode());
+        simulator.throttleRate(0);
+
+        Response response = Mail.using(configuration).subject("Nobody").build().send();
+        assertEquals(Response.ResponseType.BAD_REQUEST, response.responseType());
+        assertTrue(response.responseMessage().contains("'to' parameter is missing"));
+        assertTrue(mail().send().isOk());
+    }
+
+    @Test
+    public void readTimeout() {
+        simulator.latency(MailgunSimulator.Latency.fixed(2000));
+        configuration.readTimeout(100);
+        try {
+            mail().send();
+            fail("the read should time out");
+        } catch (MailgunException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    public void warmUp() throws Exception {
+        configuration.warmUp().get(10, TimeUnit.SECONDS);
+        assertTrue(mail().send().isOk());
+    }
+
+    private Mail mail() {
+        return Mail.using(configuration).to("a@example.com").text("Hello").build();
+    }
+}
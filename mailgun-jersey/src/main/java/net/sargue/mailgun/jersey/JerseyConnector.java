@@ -0,0 +1,95 @@
+package net.sargue.mailgun.jersey;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.client.InvocationCallback;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpRequest;
+import net.sargue.mailgun.spi.HttpResponse;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+
+import static org.glassfish.jersey.client.ClientProperties.CONNECT_TIMEOUT;
+import static org.glassfish.jersey.client.ClientProperties.READ_TIMEOUT;
+
+/**
+ * Sends the requests with a Jersey JAX-RS client. Its failures are the
+ * unchecked {@link jakarta.ws.rs.ProcessingException} of JAX-RS.
+ */
+final class JerseyConnector implements HttpConnector {
+    private final Client client = JerseyClientBuilder.newClient()
+                                                     .register(RequestWriter.class);
+
+    @Override
+    public HttpResponse post(HttpRequest request) {
+        return new JerseyResponse(invocation(request).post(entity(request)));
+    }
+
+    @Override
+    public void postAsync(HttpRequest request, final Callback callback) {
+        invocation(request)
+                .async()
+                .post(entity(request), new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(Response response) {
+                        callback.completed(new JerseyResponse(response));
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        callback.failed(throwable);
+                    }
+                });
+    }
+
+    @Override
+    public void warmUp(String url) {
+        client.target(url).request().head().close();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    private Invocation.Builder invocation(HttpRequest request) {
+        Invocation.Builder invocation = client.target(request.url())
+                                              .request()
+                                              .header(HttpHeaders.AUTHORIZATION,
+                                                      request.authorization());
+        if (request.connectTimeout() != 0)
+            invocation.property(CONNECT_TIMEOUT, request.connectTimeout());
+        if (request.readTimeout() != 0)
+            invocation.property(READ_TIMEOUT, request.readTimeout());
+        return invocation;
+    }
+
+    private static Entity<HttpRequest> entity(HttpRequest request) {
+        return Entity.entity(request, request.contentType());
+    }
+
+    private static final class JerseyResponse implements HttpResponse {
+        private final Response response;
+
+        JerseyResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int status() {
+            return response.getStatus();
+        }
+
+        @Override
+        public long contentLength() {
+            return response.getLength();
+        }
+
+        @Override
+        public String body() {
+            return response.readEntity(String.class);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.sargue.mailgun.jersey;
+
+import net.sargue.mailgun.spi.HttpConnector;
+import net.sargue.mailgun.spi.HttpConnectorProvider;
+
+/**
+ * Provides the {@code "jersey"} connector, which uses a Jersey JAX-RS
+ * client. It is preferred over other connectors on the classpath.
+ */
+public final class JerseyConnectorProvider implements HttpConnectorProvider {
+    @Override
+    public String name() {
+        return "jersey";
+    }
+
+    @Override
+    public int priority() {
+        return 10;
+    }
+
+    @Override
+    public HttpConnector create() {
+        return new JerseyConnector();
+    }
+}
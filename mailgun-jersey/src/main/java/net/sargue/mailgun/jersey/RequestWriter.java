@@ -0,0 +1,35 @@
+package net.sargue.mailgun.jersey;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import net.sargue.mailgun.spi.HttpRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * JAX-RS writer for the body of a mail {@link HttpRequest}. It replaces the
+ * generic form and multipart providers of Jersey.
+ */
+@Produces({MediaType.APPLICATION_FORM_URLENCODED, MediaType.MULTIPART_FORM_DATA})
+class RequestWriter implements MessageBodyWriter<HttpRequest> {
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType,
+                               Annotation[] annotations, MediaType mediaType)
+    {
+        return HttpRequest.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(HttpRequest request, Class<?> type, Type genericType,
+                        Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException
+    {
+        request.writeTo(entityStream);
+    }
+}
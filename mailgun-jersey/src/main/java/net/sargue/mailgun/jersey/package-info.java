@@ -0,0 +1,4 @@
+/**
+ * The Jersey connector, the default one when present on the classpath.
+ */
+package net.sargue.mailgun.jersey;
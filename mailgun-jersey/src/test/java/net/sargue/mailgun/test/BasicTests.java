@@ -0,0 +1,1052 @@
+package net.sargue.mailgun.test;
+
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.RequestPatternBuilder;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import net.sargue.mailgun.*;
+import net.sargue.mailgun.content.Body;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class BasicTests {
+    private static final String DOMAIN = "somedomain.com";
+    private static final int PORT = 8124;
+    private static final String FROM_EMAIL = "mockingyou@somedomain.com";
+    private static final String FROM_NAME = "Test account";
+    private static Configuration configuration;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+    private static String expectedAuthHeader;
+
+    private static Configuration buildConfiguration() {
+        return new Configuration()
+            .apiUrl("http://localhost:" + PORT + "/api")
+            .domain(DOMAIN)
+            .apiKey("key-thisisagibberishlongstring")
+            .from(FROM_NAME, FROM_EMAIL);
+    }
+
+    @BeforeClass
+    public static void init() {
+        configuration = buildConfiguration();
+        String userpass = "api:" + configuration.apiKey();
+        expectedAuthHeader = Base64.encodeBase64String(userpass.getBytes());
+    }
+
+    @AfterClass
+    public static void cleanUp() {
+        configuration.close();
+    }
+
+    private MappingBuilder expectedBasicPost() {
+        return post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+            .withHeader("Authorization", equalTo("Basic " + expectedAuthHeader))
+            .withHeader("Content-Type",
+                        equalTo("application/x-www-form-urlencoded"));
+    }
+
+    private String mail(String name, String email) {
+        return name + " <" + email + ">";
+    }
+
+    private BasicNameValuePair param(String name, String value) {
+        return new BasicNameValuePair(name, value);
+    }
+
+    private void verifyMessageSent(List<NameValuePair> parametersList) {
+        List<NameValuePair> parameters = new ArrayList<>(parametersList);
+        boolean fromFound = false;
+        for (int i = 0; i < parameters.size() && !fromFound; i++)
+            fromFound = parameters.get(i).getName().equals("from");
+        if (!fromFound)
+            parameters.add(param("from", mail(FROM_NAME, FROM_EMAIL)));
+        String form = URLEncodedUtils.format(parameters, "UTF-8");
+        verify(postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                   .withRequestBody(equalTo(form)));
+    }
+
+    private void verifyMessageSent(NameValuePair... parameters) {
+        verifyMessageSent(Arrays.asList(parameters));
+    }
+
+    @Test
+    public void basicText() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        String to = "marty@mcfly.com";
+        Mail mail = MailBuilder.using(configuration)
+                               .to(to)
+                               .subject("This is a plain text test")
+                               .text("Hello world!")
+                               .build();
+        Response response = mail.send();
+
+        assertEquals(mail.getFirstValue("to"), to);
+        assertEquals(mail.getValues("to"), newArrayList(to));
+        assertTrue(response.isOk());
+        assertEquals(Response.ResponseType.OK, response.responseType());
+        assertEquals(200, response.responseCode());
+
+        verifyMessageSent(
+            param("to", to),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!")
+        );
+    }
+
+    @Test
+    public void encodedCharacters() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        String subject = "Ol\u00e9 \u2603 \ud83d\ude00 a+b&c=d ~!*'()";
+        Response response = MailBuilder.using(configuration)
+                                       .to("marty@mcfly.com")
+                                       .subject(subject)
+                                       .text("Line 1\r\nLine 2\t%")
+                                       .build()
+                                       .send();
+
+        assertTrue(response.isOk());
+
+        verifyMessageSent(
+            param("to", "marty@mcfly.com"),
+            param("subject", subject),
+            param("text", "Line 1\r\nLine 2\t%")
+        );
+    }
+
+    @Test
+    public void withCustomHeader() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+            .to("marty@mcfly.com")
+            .subject("This is a plain text test")
+            .text("Hello world!")
+            .parameter("h:CustomHeader", "The header value")
+            .build()
+            .send();
+
+        assertTrue(response.isOk());
+        assertEquals(Response.ResponseType.OK,
+                     response.responseType());
+        assertEquals(200, response.responseCode());
+
+        verifyMessageSent(
+            param("to", "marty@mcfly.com"),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!"),
+            param("h:CustomHeader", "The header value")
+        );
+    }
+
+    @Test
+    public void withDefaultParameter() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration()
+            .addDefaultParameter("h:sender", "from@default.com");
+
+        Response response = MailBuilder.using(cfg)
+                                       .to("marty@mcfly.com")
+                                       .subject("This is a plain text test")
+                                       .text("Hello world!")
+                                       .build()
+                                       .send();
+
+        cfg.close();
+
+        assertTrue(response.isOk());
+        assertEquals(Response.ResponseType.OK,
+                     response.responseType());
+        assertEquals(200, response.responseCode());
+
+        verifyMessageSent(
+            param("to", "marty@mcfly.com"),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!"),
+            param("h:sender", "from@default.com")
+        );
+    }
+
+    @Test
+    public void withDefaultParameterOverridden() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration()
+            .addDefaultParameter("h:sender", "from@default.com");
+
+        Response response = MailBuilder.using(cfg)
+                                       .to("marty@mcfly.com")
+                                       .subject("This is a plain text test")
+                                       .text("Hello world!")
+                                       .parameter("h:sender",
+                                                  "from@specific.com")
+                                       .build()
+                                       .send();
+
+        cfg.close();
+
+        assertTrue(response.isOk());
+        assertEquals(Response.ResponseType.OK,
+                     response.responseType());
+        assertEquals(200, response.responseCode());
+
+        verifyMessageSent(
+            param("to", "marty@mcfly.com"),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!"),
+            param("h:sender", "from@specific.com")
+        );
+    }
+
+    @Test
+    public void withDefaultParameterSentTwice() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration()
+            .addDefaultParameter("h:sender", "from@default.com");
+
+        Mail mail = MailBuilder.using(cfg)
+                               .to("marty@mcfly.com")
+                               .text("Hello world!")
+                               .build();
+        cfg.clearDefaultParameter("h:sender");
+
+        assertTrue(mail.send().isOk());
+        assertTrue(mail.send().isOk());
+
+        cfg.close();
+
+        assertEquals("from@default.com", mail.getFirstValue("h:sender"));
+        assertEquals(newArrayList("from@default.com"),
+                     mail.getValues("h:sender"));
+        String form = URLEncodedUtils.format(Arrays.<NameValuePair>asList(
+            param("to", "marty@mcfly.com"),
+            param("text", "Hello world!"),
+            param("h:sender", "from@default.com"),
+            param("from", mail(FROM_NAME, FROM_EMAIL))
+        ), "UTF-8");
+        verify(2, postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                      .withRequestBody(equalTo(form)));
+    }
+
+    @Test
+    public void withCustomFrom() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+            .from("Doc Brown", "doc@delorean.com")
+            .to("marty@mcfly.com")
+            .subject("This is a plain text test")
+            .text("Hello world!")
+            .build()
+            .send();
+
+        assertTrue(response.isOk());
+
+        verifyMessageSent(
+            param("from", mail("Doc Brown", "doc@delorean.com")),
+            param("to", "marty@mcfly.com"),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!")
+        );
+    }
+
+    @Test
+    public void withNullName() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+            .from(null, "doc@delorean.com")
+            .to("marty@mcfly.com")
+            .subject("This is a plain text test")
+            .text("Hello world!")
+            .build()
+            .send();
+
+        assertTrue(response.isOk());
+
+        verifyMessageSent(
+            param("from", "doc@delorean.com"),
+            param("to", "marty@mcfly.com"),
+            param("subject", "This is a plain text test"),
+            param("text", "Hello world!")
+        );
+    }
+
+    @Test
+    public void sendBasicTestMode() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        String to = "doc@delorean.com";
+        String cc1 = "onecc@example.com";
+        String cc2Name = "Named CC";
+        String cc2Mail = "another@example.com";
+        String bcc1 = "noone@example.com";
+        String bcc2Name = "Named BCC";
+        String bcc2Mail = "nobody@example.com";
+        Mail mail = MailBuilder.using(configuration)
+                               .from("firstrandom@address.com")
+                               .from("Random account", "random@domain.com")
+                               .to(to)
+                               .cc(cc1)
+                               .cc(cc2Name, cc2Mail)
+                               .bcc(bcc1)
+                               .bcc(bcc2Name, bcc2Mail)
+                               .parameter("o:testmode", "yes")
+                               .build();
+        Response response = mail.send();
+
+        assertEquals(mail.getFirstValue("to"), to);
+        assertEquals(mail.getValues("to"), newArrayList(to));
+        assertEquals(mail.getFirstValue("cc"), cc1);
+        assertEquals(mail.getValues("cc"),
+                     newArrayList(cc1, cc2Name + " <" + cc2Mail + ">"));
+        assertEquals(mail.getFirstValue("bcc"), bcc1);
+        assertEquals(mail.getValues("bcc"),
+                     newArrayList(bcc1, bcc2Name + " <" + bcc2Mail + ">"));
+        assertTrue(response.isOk());
+
+        verifyMessageSent(
+            param("from", "firstrandom@address.com"),
+            param("from", mail("Random account", "random@domain.com")),
+            param("to", to),
+            param("cc", cc1),
+            param("cc", mail(cc2Name, cc2Mail)),
+            param("bcc", bcc1),
+            param("bcc", mail(bcc2Name, bcc2Mail)),
+            param("o:testmode", "yes")
+        );
+    }
+
+    @Test
+    public void sendBasicHTML() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .replyTo(configuration.from())
+            .subject("This is a text and HTML message")
+            .text("Hello world!")
+            .html("Hello <strong>world</strong>!")
+            .build()
+            .send();
+        assertTrue(response.isOk());
+
+        verifyMessageSent(
+            param("to", "doc@delorean.com"),
+            param("h:Reply-To", mail(FROM_NAME, FROM_EMAIL)),
+            param("subject", "This is a text and HTML message"),
+            param("text", "Hello world!"),
+            param("html", "Hello <strong>world</strong>!")
+        );
+    }
+
+    @Test
+    public void sendWithAttachment() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Authorization",
+                                equalTo("Basic " + expectedAuthHeader))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .subject("This message has an text attachment")
+            .text("Please find attached some text.")
+            .multipart()
+            .attachment("This is the content of the attachment",
+                        "readme.txt")
+            .build()
+            .send();
+        assertTrue(response.isOk());
+
+        verify(postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                   .withRequestBody(containing(
+                       "Content-Disposition: form-data; name=\"to\"\r\n" +
+                       "Content-Type: text/plain; charset=UTF-8\r\n\r\n" +
+                       "doc@delorean.com\r\n"))
+                   .withRequestBody(containing(
+                       "Content-Disposition: form-data; name=\"from\"\r\n" +
+                       "Content-Type: text/plain; charset=UTF-8\r\n\r\n" +
+                       mail(FROM_NAME, FROM_EMAIL) + "\r\n"))
+                   .withRequestBody(containing(
+                       "Content-Disposition: form-data; name=\"attachment\"; " +
+                       "filename=\"readme.txt\"\r\n" +
+                       "Content-Type: application/octet-stream\r\n\r\n" +
+                       "This is the content of the attachment\r\n")));
+    }
+
+    @Test
+    public void resendStreamAttachment() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Mail mail = MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .text("See attached.")
+            .multipart()
+            .attachment(new ByteArrayInputStream("MockBytes".getBytes()),
+                        "mock.bin")
+            .build();
+        assertTrue(mail.send().isOk());
+        assertTrue(mail.send().isOk());
+
+        verify(2, postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                      .withRequestBody(containing("MockBytes")));
+    }
+
+    @Test
+    public void resendSpooledAttachment() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration().spoolThreshold(4);
+        Mail mail = MailBuilder.using(cfg)
+            .to("doc@delorean.com")
+            .text("See attached.")
+            .multipart()
+            .attachment(new ByteArrayInputStream("Bytes spooled to disk".getBytes()),
+                        "spooled.bin")
+            .build();
+        assertTrue(mail.send().isOk());
+        assertTrue(mail.send().isOk());
+        cfg.close();
+
+        verify(2, postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                      .withRequestBody(containing("Bytes spooled to disk")));
+    }
+
+    @Test
+    public void closeRemovesSpooledAttachment() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration().spoolThreshold(4);
+        Mail mail = MailBuilder.using(cfg)
+            .to("doc@delorean.com")
+            .text("See attached.")
+            .multipart()
+            .attachment(new ByteArrayInputStream("Bytes spooled to disk".getBytes()),
+                        "spooled.bin")
+            .build();
+        assertTrue(mail.send().isOk());
+        int spooled = spoolFiles();
+        mail.close();
+        assertEquals(spooled - 1, spoolFiles());
+        try {
+            mail.send();
+            fail("the attachment is closed");
+        } catch (RuntimeException e) {
+            assertEquals("The attachment has been closed", readFailure(e).getMessage());
+        } finally {
+            cfg.close();
+        }
+    }
+
+    @Test
+    public void failedSpoolFailsAgain() {
+        Configuration cfg = buildConfiguration().spoolThreshold(4);
+        final IOException broken = new IOException("Disk unplugged");
+        Mail mail = MailBuilder.using(cfg)
+            .to("doc@delorean.com")
+            .text("See attached.")
+            .multipart()
+            .attachment(new InputStream() {
+                private int count;
+
+                @Override
+                public int read() throws IOException {
+                    if (count++ < 10)
+                        return 'x';
+                    throw broken;
+                }
+            }, "broken.bin")
+            .build();
+        try {
+            mail.send();
+            fail("the attachment can't be read");
+        } catch (RuntimeException e) {
+            assertSame(broken, readFailure(e));
+        }
+        try {
+            mail.send();
+            fail("the attachment can't be read again");
+        } catch (RuntimeException e) {
+            assertEquals("The attachment stream failed on a previous read",
+                         readFailure(e).getMessage());
+            assertSame(broken, readFailure(e).getCause());
+        } finally {
+            cfg.close();
+        }
+        verify(0, postRequestedFor(urlEqualTo("/api/somedomain.com/messages")));
+    }
+
+    /**
+     * Returns the cause of the MailgunException the connector may wrap.
+     */
+    private static Throwable readFailure(RuntimeException e) {
+        Throwable cause = e;
+        while (!(cause instanceof MailgunException))
+            cause = cause.getCause();
+        return cause.getCause();
+    }
+
+    private static int spoolFiles() {
+        String[] files = new File(System.getProperty("java.io.tmpdir"))
+            .list((dir, name) -> name.startsWith("mailgun-") && name.endsWith(".tmp"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void sendWithMetrics() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)
+                                                          .withBody("{}")));
+
+        MailMetricsRecorder metrics = new MailMetricsRecorder();
+        Configuration cfg = buildConfiguration().registerMailMetrics(metrics);
+        Mail mail = MailBuilder.using(cfg)
+                               .to("marty@mcfly.com")
+                               .text("Hello world!")
+                               .build();
+        assertTrue(mail.send().isOk());
+        assertTrue(mail.send().isOk());
+        cfg.close();
+
+        MailMetricsRecorder.Snapshot snapshot = metrics.snapshot(DOMAIN);
+        assertEquals(2, snapshot.responses(Response.ResponseType.OK));
+        assertEquals(0, snapshot.inFlight());
+        assertEquals(2 * mailForm(mail).length(), snapshot.requestBytes());
+        assertEquals(4, snapshot.responseBytes());
+        MailMetricsRecorder.Snapshot total = metrics.snapshot();
+        assertEquals(1, total.latency(MailMetrics.Phase.BUILD).count());
+        assertEquals(1, total.latency(MailMetrics.Phase.ENCODE).count());
+        assertEquals(2, total.latency(MailMetrics.Phase.REQUEST).count());
+        assertEquals(2, total.latency(MailMetrics.Phase.SEND).count());
+    }
+
+    private String mailForm(Mail mail) {
+        return URLEncodedUtils.format(Arrays.<NameValuePair>asList(
+            param("to", mail.getFirstValue("to")),
+            param("text", mail.getFirstValue("text")),
+            param("from", mail.getFirstValue("from"))
+        ), "UTF-8");
+    }
+
+    @Test
+    public void sendWithInterceptors() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        Configuration cfg = buildConfiguration()
+            .addMailSendInterceptor(recording("a", calls))
+            .addMailSendInterceptor(recording("b", calls));
+        Mail mail = MailBuilder.using(cfg)
+                               .to("marty@mcfly.com")
+                               .text("Hello world!")
+                               .build();
+        assertTrue(mail.send().isOk());
+        long size = mailForm(mail).length();
+        assertEquals(Arrays.asList("a before", "b before",
+                                   "a encoded " + size, "b encoded " + size,
+                                   "b completed 200", "a completed 200"),
+                     calls);
+
+        calls.clear();
+        final AtomicBoolean callbackCalled = new AtomicBoolean(false);
+        mail.sendAsync(new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                callbackCalled.set(calls.size() == 6);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                // not expected
+            }
+        });
+        await().atMost(5, TimeUnit.SECONDS).untilTrue(callbackCalled);
+        assertEquals("a completed 200", calls.get(5));
+        cfg.close();
+
+        calls.clear();
+        cfg = buildConfiguration().apiUrl("http://127.0.0.1:1/api")
+                                  .addMailSendInterceptor(recording("a", calls));
+        try {
+            MailBuilder.using(cfg).to("marty@mcfly.com").text("Hello").build().send();
+            fail("connection expected to fail");
+        } catch (RuntimeException e) {
+            assertEquals("a failed " + e.getClass().getSimpleName(), calls.get(2));
+        }
+        cfg.close();
+    }
+
+    private static MailSendInterceptor recording(final String name, final List<String> calls) {
+        return new MailSendInterceptor() {
+            @Override
+            public void beforeSend(Mail mail) {
+                calls.add(name + " before");
+            }
+
+            @Override
+            public void encoded(Mail mail, long bytes) {
+                calls.add(name + " encoded " + bytes);
+            }
+
+            @Override
+            public void completed(Mail mail, Response response) {
+                calls.add(name + " completed " + response.responseCode());
+            }
+
+            @Override
+            public void failed(Mail mail, Throwable error) {
+                calls.add(name + " failed " + error.getClass().getSimpleName());
+            }
+        };
+    }
+
+    @Test
+    public void sharedTransport() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+        String otherAuthHeader = "Basic " + Base64.encodeBase64String("api:key-other".getBytes());
+        stubFor(post(urlEqualTo("/api/other.com/messages"))
+                    .withHeader("Authorization", equalTo(otherAuthHeader))
+                    .willReturn(aResponse().withStatus(200)));
+
+        MailgunTransport transport = new MailgunTransport();
+        Configuration first = new Configuration(transport)
+            .apiUrl("http://localhost:" + PORT + "/api")
+            .domain(DOMAIN)
+            .apiKey("key-thisisagibberishlongstring")
+            .from(FROM_NAME, FROM_EMAIL);
+        Configuration second = new Configuration(transport)
+            .apiUrl("http://localhost:" + PORT + "/api")
+            .domain("other.com")
+            .apiKey("key-other")
+            .from(FROM_NAME, FROM_EMAIL);
+
+        assertTrue(MailBuilder.using(first).to("marty@mcfly.com").text("1").build().send().isOk());
+        first.close();
+        assertTrue(MailBuilder.using(second).to("marty@mcfly.com").text("2").build().send().isOk());
+        second.close();
+        transport.close();
+
+        verify(postRequestedFor(urlEqualTo("/api/" + DOMAIN + "/messages")));
+        verify(postRequestedFor(urlEqualTo("/api/other.com/messages")));
+    }
+
+    @Test
+    public void warmUp() throws Exception {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Configuration cfg = buildConfiguration();
+        cfg.warmUp().get(10, TimeUnit.SECONDS);
+        assertTrue(MailBuilder.using(cfg).to("marty@mcfly.com").text("Hi").build().send().isOk());
+        cfg.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedTransport() {
+        MailgunTransport transport = new MailgunTransport();
+        Configuration cfg = new Configuration(transport)
+            .apiUrl("http://localhost:" + PORT + "/api")
+            .domain(DOMAIN)
+            .apiKey("key-thisisagibberishlongstring");
+        transport.close();
+        MailBuilder.using(cfg).to("marty@mcfly.com").text("Hello").build().send();
+    }
+
+    @Test
+    public void readTimeout() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)
+                                                          .withFixedDelay(2000)));
+
+        MailgunTransport transport = new MailgunTransport();
+        Configuration cfg = new Configuration(transport)
+            .apiUrl("http://localhost:" + PORT + "/api")
+            .domain(DOMAIN)
+            .apiKey("key-thisisagibberishlongstring")
+            .readTimeout(100);
+        try {
+            MailBuilder.using(cfg).to("marty@mcfly.com").text("Hello").build().send();
+            fail("read timeout expected");
+        } catch (jakarta.ws.rs.ProcessingException e) {
+            assertTrue(e.getCause() instanceof java.net.SocketTimeoutException);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void sendConcurrently() throws Exception {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        final Mail mail = MailBuilder.using(configuration)
+                                     .to("marty@mcfly.com")
+                                     .subject("Sent many times")
+                                     .text("Hello world!")
+                                     .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Response>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            responses.add(executor.submit(mail::send));
+        for (Future<Response> response : responses)
+            assertTrue(response.get().isOk());
+        executor.shutdown();
+
+        String form = URLEncodedUtils.format(Arrays.<NameValuePair>asList(
+            param("to", "marty@mcfly.com"),
+            param("subject", "Sent many times"),
+            param("text", "Hello world!"),
+            param("from", mail(FROM_NAME, FROM_EMAIL))
+        ), "UTF-8");
+        verify(8, postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                      .withRequestBody(equalTo(form)));
+    }
+
+    @Test
+    public void prototypeVariants() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        Mail prototype = MailBuilder.using(configuration)
+                                    .to("nobody@mcfly.com")
+                                    .subject("Hello %recipient.name%")
+                                    .text("Same for everyone")
+                                    .parameter("v:kind", "newsletter")
+                                    .build();
+        Mail marty = MailBuilder.fromPrototype(prototype)
+                                .to("marty@mcfly.com")
+                                .build();
+        Mail doc = MailBuilder.fromPrototype(marty)
+                              .to("doc@delorean.com")
+                              .to("emmett@delorean.com")
+                              .parameter("v:kind", "invention")
+                              .build();
+
+        assertEquals("marty@mcfly.com", marty.getFirstValue("to"));
+        assertEquals("Same for everyone", marty.getFirstValue("text"));
+        assertEquals(newArrayList("doc@delorean.com", "emmett@delorean.com"),
+                     doc.getValues("to"));
+        assertEquals("invention", doc.getFirstValue("v:kind"));
+        assertEquals("nobody@mcfly.com", prototype.getFirstValue("to"));
+
+        assertTrue(marty.send().isOk());
+        assertTrue(doc.send().isOk());
+        assertTrue(prototype.send().isOk());
+
+        verifyMessageSent(
+            param("subject", "Hello %recipient.name%"),
+            param("text", "Same for everyone"),
+            param("v:kind", "newsletter"),
+            param("from", mail(FROM_NAME, FROM_EMAIL)),
+            param("to", "marty@mcfly.com")
+        );
+        verifyMessageSent(
+            param("subject", "Hello %recipient.name%"),
+            param("text", "Same for everyone"),
+            param("from", mail(FROM_NAME, FROM_EMAIL)),
+            param("to", "doc@delorean.com"),
+            param("to", "emmett@delorean.com"),
+            param("v:kind", "invention")
+        );
+        verifyMessageSent(
+            param("to", "nobody@mcfly.com"),
+            param("subject", "Hello %recipient.name%"),
+            param("text", "Same for everyone"),
+            param("v:kind", "newsletter")
+        );
+    }
+
+    @Test
+    public void prototypeMultipartVariant() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Mail prototype = MailBuilder.using(configuration)
+                                    .to("nobody@mcfly.com")
+                                    .text("See attached.")
+                                    .build();
+        Mail variant = MailBuilder.fromPrototype(prototype)
+                                  .to("doc@delorean.com")
+                                  .multipart()
+                                  .attachment("The attached text", "a.txt")
+                                  .build();
+
+        assertEquals("doc@delorean.com", variant.getFirstValue("to"));
+        assertEquals("See attached.", variant.getFirstValue("text"));
+        assertTrue(variant.send().isOk());
+
+        verify(postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                   .withRequestBody(containing("doc@delorean.com"))
+                   .withRequestBody(containing("See attached."))
+                   .withRequestBody(containing("The attached text"))
+                   .withRequestBody(notMatching("(?s).*nobody@mcfly.com.*")));
+    }
+
+    @Test
+    public void multipartValues() {
+        Mail mail = MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .to("marty@mcfly.com")
+            .content(Body.builder(configuration).spillToDisk(1).p("Hi").build())
+            .multipart()
+            .attachment("content", "readme.txt")
+            .build();
+
+        assertEquals("doc@delorean.com", mail.getFirstValue("to"));
+        assertEquals(newArrayList("doc@delorean.com", "marty@mcfly.com"),
+                     mail.getValues("to"));
+        assertEquals(mail(FROM_NAME, FROM_EMAIL), mail.getFirstValue("from"));
+        assertNull(mail.getFirstValue("subject"));
+        assertTrue(mail.getValues("subject").isEmpty());
+        try {
+            mail.getFirstValue("attachment");
+            fail("attachments are not simple parameters");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void sendWithInlineAttachment() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                .withHeader("Authorization",
+                            equalTo("Basic " + expectedAuthHeader))
+                .withHeader("Content-Type",
+                            containing("multipart/form-data"))
+                .willReturn(aResponse().withStatus(200)));
+
+        Response response = MailBuilder.using(configuration)
+                .to("doc@delorean.com")
+                .subject("This message has an text attachment")
+                .html("<html>Inline image here: <img src=\"cid:cartman.jpg\"></html>")
+                .multipart()
+                .inline(new ByteArrayInputStream("MockBytes".getBytes()), "cartman.jpg")
+                .build()
+                .send();
+        assertTrue(response.isOk());
+
+        //TODO proper content checking
+    }
+
+    @Test
+    public void sendStreamedContent() {
+        stubFor(post(urlEqualTo("/api/" + DOMAIN + "/messages"))
+                    .withHeader("Authorization",
+                                equalTo("Basic " + expectedAuthHeader))
+                    .withHeader("Content-Type",
+                                containing("multipart/form-data"))
+                    .willReturn(aResponse().withStatus(200)));
+
+        Body body = Body.builder(configuration)
+                        .spillToDisk(8)
+                        .h1("A rather big report")
+                        .build();
+        Response response = MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .subject("This message has a content streamed from disk")
+            .content(body)
+            .build()
+            .send();
+        body.close();
+        assertTrue(response.isOk());
+
+        verify(postRequestedFor(urlEqualTo("/api/somedomain.com/messages"))
+                   .withRequestBody(containing("<h1>A rather big report</h1>")));
+    }
+
+    @Test
+    public void sendAsync() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+
+        MailBuilder.using(configuration)
+            .to("doc@delorean.com")
+            .subject("This is a plain text test")
+            .text("Hello world!")
+            .build()
+            .sendAsync(new MailRequestCallback() {
+                @Override
+                public void completed(Response response) {
+                    assertEquals(Response.ResponseType.OK,
+                                 response.responseType());
+
+                    verifyMessageSent(
+                        param("to", "doc@delorean.com"),
+                        param("subject", "This is a plain text test"),
+                        param("text", "Hello world!")
+                    );
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    fail(throwable.getMessage());
+                }
+            });
+    }
+
+    @Test
+    public void sendAsyncFireAndForget() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+        MailBuilder.using(configuration)
+                   .to("doc@delorean.com")
+                   .subject("This is a plain text test")
+                   .text("Hello world!")
+                   .build()
+                   .sendAsync();
+
+        final RequestPatternBuilder postRequestedFor = postRequestedFor(
+            urlEqualTo("/api/somedomain.com/messages"));
+        await().atMost(5, TimeUnit.SECONDS).until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return !wireMockRule.findAll(postRequestedFor).isEmpty();
+            }
+        });
+
+        verify(postRequestedFor);
+    }
+
+    @Test
+    public void sendAsyncDefaultCallback() {
+        stubFor(expectedBasicPost().willReturn(aResponse().withStatus(200)));
+        final AtomicBoolean callbackCalled = new AtomicBoolean(false);
+
+        final String to = "doc@delorean.com";
+        final String subject = "This is a plain text test";
+        final String textBody = "Hello world!";
+        final MailRequestCallback callback = new MailRequestCallback() {
+            @Override
+            public void completed(Response response) {
+                callbackCalled.set(true);
+                assertEquals(Response.ResponseType.OK,
+                             response.responseType());
+
+                verifyMessageSent(
+                    param("to", to),
+                    param("subject", subject),
+                    param("text", textBody)
+                );
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                fail(throwable.getMessage());
+            }
+        };
+
+        configuration.registerMailRequestCallbackFactory(new MailRequestCallbackFactory() {
+            @Override
+            public MailRequestCallback create(Mail mail) {
+                assertEquals(mail.getFirstValue("to"), to);
+                assertEquals(mail.getFirstValue("subject"), subject);
+                assertEquals(mail.getFirstValue("text"), textBody);
+
+                return callback;
+            }
+        });
+
+        MailBuilder.using(configuration)
+                   .to(to)
+                   .subject(subject)
+                   .text(textBody)
+                   .build()
+                   .sendAsync();
+
+        await().until(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return callbackCalled.get();
+            }
+        });
+    }
+
+    @Test
+    public void responsePayloadTest() {
+        String responseMessage =
+            "{ \"id\": \"" +
+            "<20160902095021.16212.7900.87F2C8F1@mydomain.com>" + "\", " +
+            "\"message\": \"" + "Queued. Thank you." + "\" }";
+        stubFor(expectedBasicPost().willReturn(
+            aResponse()
+                .withStatus(200)
+                .withBody(responseMessage)
+        ));
+
+        Response response = MailBuilder
+            .using(configuration)
+            .to("doc@delorean.com")
+            .subject("This is a plain text test")
+            .text("Hello world!")
+            .build()
+            .send();
+
+        assertEquals(responseMessage, response.responseMessage());
+    }
+
+    @Test
+    public void testFilteredSend() {
+        final AtomicBoolean filterExecuted = new AtomicBoolean(false);
+
+        Configuration configuration = new Configuration()
+            .registerMailSendFilter(new MailSendFilter() {
+                @Override
+                public boolean filter(Mail mail) {
+                    filterExecuted.set(true);
+                    return false;
+                }
+            });
+
+        Response response = MailBuilder
+            .using(configuration)
+            .build()
+            .send();
+
+        assertNull(response);
+        assertTrue(filterExecuted.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterClose() {
+        Configuration configuration = new Configuration();
+        configuration.close();
+        MailBuilder.using(configuration).build().send();
+    }
+}
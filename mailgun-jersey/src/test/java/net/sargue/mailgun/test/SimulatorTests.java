@@ -0,0 +1,221 @@
+package net.sargue.mailgun.test;
+
+import jakarta.ws.rs.ProcessingException;
+import net.sargue.mailgun.Configuration;
+import net.sargue.mailgun.Mail;
+import net.sargue.mailgun.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class SimulatorTests {
+    private static final String DOMAIN = "example.org";
+
+    private MailgunSimulator simulator;
+    private Configuration configuration;
+    private final List<MailgunSimulator.Message> messages = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new MailgunSimulator().onMessage(messages::add).start();
+        configuration = new Configuration(DOMAIN, "key-1234", "sender@example.org")
+            .apiUrl(simulator.apiUrl());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        configuration.close();
+        simulator.close();
+    }
+
+    @Test
+    public void sendForm() {
+        Response response = Mail.using(configuration)
+                                .to("a@example.com")
+                                .to("b@example.com")
+                                .subject("Caf\u00e9 & more")
+                                .text("Hello")
+                                .build()
+                                .send();
+
+        assertTrue(response.isOk());
+        assertEquals(1, messages.size());
+        MailgunSimulator.Message message = messages.get(0);
+        assertTrue(response.responseMessage().contains(message.id()));
+        assertTrue(message.id().endsWith("@" + DOMAIN + ">"));
+        assertEquals(DOMAIN, message.domain());
+        assertFalse(message.mime());
+        assertEquals(Arrays.asList("a@example.com", "b@example.com"), message.getAll("to"));
+        assertEquals("Caf\u00e9 & more", message.getFirst("subject"));
+        assertEquals(1, simulator.accepted());
+    }
+
+    @Test
+    public void sendMultipart() {
+        byte[] content = new byte[50_000];
+        Arrays.fill(content, (byte) 'x');
+        Response response = Mail.using(configuration)
+                                .to("a@example.com")
+                                .subject("Report")
+                                .text("See attached")
+                                .multipart()
+                                .attachment(new ByteArrayInputStream(content), "report.csv")
+                                .build()
+                                .send();
+
+        assertTrue(response.isOk());
+        MailgunSimulator.Message message = messages.get(0);
+        assertEquals("Report", message.getFirst("subject"));
+        MailgunSimulator.Part part = message.parts("attachment").get(0);
+        assertEquals("report.csv", part.filename());
+        assertArrayEquals(content, part.content());
+    }
+
+    @Test
+    public void missingParameters() throws IOException {
+        Response response = Mail.using(configuration).subject("Nobody").build().send();
+        assertEquals(400, response.responseCode());
+        assertTrue(response.responseMessage().contains("'to' parameter is missing"));
+
+        assertEquals(400, post("messages.mime", "application/x-www-form-urlencoded",
+                               "to=a%40example.com".getBytes(UTF_8)));
+        assertEquals(2, simulator.rejected());
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void sendMime() throws IOException {
+        String body = "--b1\r\n"
+                      + "Content-Disposition: form-data; name=\"to\"\r\n\r\n"
+                      + "a@example.com\r\n"
+                      + "--b1\r\n"
+                      + "Content-Disposition: form-data; name=\"message\"; filename=\"message.mime\"\r\n"
+                      + "Content-Type: message/rfc822\r\n\r\n"
+                      + "Subject: Hi\r\n\r\nHello\r\n"
+                      + "--b1--\r\n";
+        assertEquals(200, post("messages.mime", "multipart/form-data; boundary=b1",
+                               body.getBytes(UTF_8)));
+
+        MailgunSimulator.Message message = messages.get(0);
+        assertTrue(message.mime());
+        assertEquals("a@example.com", message.getFirst("to"));
+        assertEquals("Subject: Hi\r\n\r\nHello",
+                     new String(message.parts("message").get(0).content(), UTF_8));
+    }
+
+    @Test
+    public void throttlingAndErrors() {
+        simulator.throttleRate(1);
+        assertEquals(429, mail().send().responseCode());
+        simulator.throttleRate(0).errorRate(1);
+        assertEquals(Response.ResponseType.SERVER_ERROR, mail().send().responseType());
+        simulator.errorRate(0);
+        assertTrue(mail().send().isOk());
+
+        assertEquals(1, simulator.throttled());
+        assertEquals(1, simulator.errors());
+        assertEquals(1, simulator.accepted());
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void connectionReset() {
+        simulator.resetRate(1);
+        try {
+            mail().send();
+        } finally {
+            assertTrue(simulator.resets() >= 1);
+            assertEquals(0, simulator.accepted());
+        }
+    }
+
+    @Test
+    public void latencyAndSlowReads() {
+        simulator.latency(MailgunSimulator.Latency.fixed(200));
+        long start = System.nanoTime();
+        assertTrue(mail().send().isOk());
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+
+        byte[] content = new byte[20_000];
+        simulator.latency(MailgunSimulator.Latency.NONE).slowReads(1, 50_000);
+        start = System.nanoTime();
+        Response response = Mail.using(configuration)
+                                .to("a@example.com")
+                                .multipart()
+                                .attachment(new ByteArrayInputStream(content), "data.bin")
+                                .build()
+                                .send();
+        assertTrue(response.isOk());
+        assertTrue(System.nanoTime() - start >= 300_000_000L);
+        assertArrayEquals(content, messages.get(1).parts("attachment").get(0).content());
+    }
+
+    @Test
+    public void concurrentLoad() throws Exception {
+        final int threads = 4;
+        final int requests = 2_000;
+        final byte[] body = "from=a%40example.org&to=b%40example.org&text=hi".getBytes(UTF_8);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+                results.add(executor.submit(() -> {
+                    int ok = 0;
+                    for (int i = 0; i < requests; i++)
+                        if (post("messages", "application/x-www-form-urlencoded", body) == 200)
+                            ok++;
+                    return ok;
+                }));
+            for (Future<Integer> result : results)
+                assertEquals(requests, (int) result.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(threads * requests, simulator.accepted());
+        assertEquals(threads * requests, messages.size());
+    }
+
+    private Mail mail() {
+        return Mail.using(configuration).to("a@example.com").text("Hello").build();
+    }
+
+    private int post(String endpoint, String contentType, byte[] body) throws IOException {
+        URL url = new URL(simulator.apiUrl() + "/" + DOMAIN + "/" + endpoint);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setRequestProperty(
+            "Authorization",
+            "Basic " + Base64.getEncoder().encodeToString("api:key".getBytes(UTF_8)));
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream()
+                                           : connection.getErrorStream()) {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) >= 0) {
+                // drain so the connection is reused
+            }
+        }
+        return status;
+    }
+}